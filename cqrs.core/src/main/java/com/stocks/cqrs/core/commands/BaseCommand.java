@@ -4,11 +4,20 @@ import com.distributedinventory.cqrs.core.messages.Message;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data
 @NoArgsConstructor
 public abstract class BaseCommand extends Message {
 
+    // Point after which nobody is waiting for the outcome any more; null means no deadline
+    private Instant deadline;
+
     public BaseCommand(String id) {
         super(id);
     }
+
+    public boolean isExpired(Instant now) {
+        return deadline != null && now.isAfter(deadline);
+    }
 }
@@ -3,5 +3,5 @@ package com.distributedinventory.cqrs.core.commands;
 //
 @FunctionalInterface
 public interface CommandHandlerMethod<T extends BaseCommand> {
-    void handle(T command);
+    CommandResult handle(T command);
 }
@@ -0,0 +1,15 @@
+package com.distributedinventory.cqrs.core.commands;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CommandResult {
+    private String aggregateId;
+    private int version;
+}
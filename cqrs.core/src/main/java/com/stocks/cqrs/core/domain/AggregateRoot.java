@@ -2,19 +2,19 @@ package com.distributedinventory.cqrs.core.domain;
 
 import com.distributedinventory.cqrs.core.events.BaseEvent;
 
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class AggregateRoot {
 
     protected String id;
     private int version = -1;
+    // An instance is created to be loaded or to be saved for the first time
+    private final long createdAtMillis = System.currentTimeMillis();
 
     private final List<BaseEvent> changes = new ArrayList<>();
-    private final Logger logger = Logger.getLogger(AggregateRoot.class.getName());
 
     public String getId() {
         return this.id;
@@ -28,6 +28,22 @@ public abstract class AggregateRoot {
         this.version = version;
     }
 
+    /**
+     * When this instance was created, which is when the aggregate was loaded into memory or, for
+     * a new aggregate, just before it was first saved
+     */
+    public long getCreatedAtMillis() {
+        return this.createdAtMillis;
+    }
+
+    /**
+     * Rough retained size in bytes, which the aggregate cache budgets against. Aggregates whose
+     * state varies in size should override it.
+     */
+    public int estimatedSize() {
+        return 256;
+    }
+
     public List<BaseEvent> getUncommittedChanges() {
         return this.changes;
     }
@@ -36,19 +52,14 @@ public abstract class AggregateRoot {
         this.changes.clear();
     }
 
+    /**
+     * Dispatch the event to this aggregate's {@code apply} method for its type. A missing handler
+     * or a failing one throws, and the event is then not recorded as a change.
+     */
     protected void applyChange(BaseEvent event, Boolean isNewEvent) {
-        try {
-            var method = getClass().getDeclaredMethod("apply", event.getClass());
-            method.setAccessible(true);
-            method.invoke(this, event);
-        } catch (NoSuchMethodException e) {
-            logger.log(Level.WARNING, MessageFormat.format("The apply method was not found in the aggregate for {0}", event.getClass().getName()));
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error applying event to aggregate", e);
-        } finally {
-            if (isNewEvent) {
-                changes.add(event);
-            }
+        EventHandlers.of(getClass()).apply(this, event);
+        if (isNewEvent) {
+            changes.add(event);
         }
     }
 
@@ -59,4 +70,21 @@ public abstract class AggregateRoot {
     public void replayEvents(Iterable<BaseEvent> events) {
         events.forEach(event -> applyChange(event, false));
     }
+
+    /**
+     * Resolve the aggregate's handlers and check that every given event type has one, so a
+     * missing {@code apply} method stops startup instead of surfacing on replay
+     * @throws IllegalStateException listing the event types without a handler
+     */
+    @SafeVarargs
+    public static void verifyHandlers(Class<? extends AggregateRoot> aggregateType, Class<? extends BaseEvent>... eventTypes) {
+        var handlers = EventHandlers.of(aggregateType);
+        String missing = Stream.of(eventTypes)
+                .filter(eventType -> !handlers.handles(eventType))
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(", "));
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException(aggregateType.getSimpleName() + " has no apply method for: " + missing);
+        }
+    }
 }
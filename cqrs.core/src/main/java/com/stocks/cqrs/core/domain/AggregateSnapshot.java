@@ -0,0 +1,19 @@
+package com.distributedinventory.cqrs.core.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AggregateSnapshot {
+    private String aggregateIdentifier;
+    private int version;
+    private Date timeStamp;
+    private Object state;
+}
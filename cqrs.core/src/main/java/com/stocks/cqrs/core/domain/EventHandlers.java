@@ -0,0 +1,103 @@
+package com.distributedinventory.cqrs.core.domain;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dispatch table for one aggregate class: its {@code apply(SomeEvent)} methods, private or not,
+ * resolved once into method handles. Methods declared on a subclass win over inherited ones.
+ */
+final class EventHandlers {
+
+    private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, AggregateRoot.class, BaseEvent.class);
+
+    private static final ClassValue<EventHandlers> CACHE = new ClassValue<>() {
+        @Override
+        protected EventHandlers computeValue(Class<?> aggregateType) {
+            return new EventHandlers(aggregateType);
+        }
+    };
+
+    private final Class<?> aggregateType;
+    private final Map<Class<?>, MethodHandle> handlers;
+
+    private EventHandlers(Class<?> aggregateType) {
+        this.aggregateType = aggregateType;
+        Map<Class<?>, MethodHandle> found = new HashMap<>();
+        for (Class<?> type = aggregateType; type != AggregateRoot.class && type != null; type = type.getSuperclass()) {
+            MethodHandles.Lookup lookup;
+            try {
+                lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access the apply methods of " + type.getName(), e);
+            }
+            for (Method method : type.getDeclaredMethods()) {
+                if (!isHandler(method)) {
+                    continue;
+                }
+                Class<?> eventType = method.getParameterTypes()[0];
+                if (found.containsKey(eventType)) {
+                    continue;
+                }
+                try {
+                    found.put(eventType, lookup.unreflect(method).asType(HANDLER_TYPE));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException("Cannot access " + type.getSimpleName() + ".apply(" + eventType.getSimpleName() + ")", e);
+                }
+            }
+        }
+        this.handlers = Map.copyOf(found);
+    }
+
+    static EventHandlers of(Class<?> aggregateType) {
+        return CACHE.get(aggregateType);
+    }
+
+    void apply(AggregateRoot aggregate, BaseEvent event) {
+        MethodHandle handler = handlers.get(event.getClass());
+        if (handler == null) {
+            handler = inheritedHandler(event.getClass());
+        }
+        if (handler == null) {
+            throw new IllegalStateException(aggregateType.getSimpleName() + " has no apply(" + event.getClass().getSimpleName() + ") method");
+        }
+        try {
+            handler.invokeExact(aggregate, event);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Error applying " + event.getClass().getSimpleName() + " to " + aggregateType.getSimpleName(), e);
+        }
+    }
+
+    boolean handles(Class<?> eventType) {
+        return handlers.containsKey(eventType) || inheritedHandler(eventType) != null;
+    }
+
+    // Events are normally dispatched on their exact class; this covers handlers for a supertype
+    private MethodHandle inheritedHandler(Class<?> eventType) {
+        for (Class<?> type = eventType.getSuperclass(); type != null && type != Object.class; type = type.getSuperclass()) {
+            MethodHandle handler = handlers.get(type);
+            if (handler != null) {
+                return handler;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isHandler(Method method) {
+        return method.getName().equals("apply")
+                && method.getParameterCount() == 1
+                && method.getReturnType() == void.class
+                && !Modifier.isStatic(method.getModifiers())
+                && !method.isSynthetic()
+                && BaseEvent.class.isAssignableFrom(method.getParameterTypes()[0]);
+    }
+}
@@ -0,0 +1,11 @@
+package com.distributedinventory.cqrs.core.domain;
+
+/**
+ * Implemented by aggregates whose state can be captured and restored without replaying
+ * their full event history.
+ * @param <S> The snapshot state type; should be an immutable copy of the aggregate fields
+ */
+public interface Snapshottable<S> {
+    S takeSnapshot();
+    void restoreFromSnapshot(S snapshot);
+}
@@ -13,10 +13,14 @@ import java.util.Date;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "event_store")
+// The unique (aggregate_identifier, version) index doubles as optimistic locking and as the
+// access path for reading one aggregate's stream in version order
+@Table(name = "event_store", uniqueConstraints = @UniqueConstraint(
+        name = "uk_event_store_aggregate_version", columnNames = {"aggregate_identifier", "version"}))
 public class EventModel {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_store_seq")
+    @SequenceGenerator(name = "event_store_seq", sequenceName = "event_store_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "timestamp")
@@ -34,6 +38,7 @@ public class EventModel {
     @Column(name = "event_type")
     private String eventType;
     
-    @Column(name = "event_data", columnDefinition = "TEXT")
-    private String eventData;
+    // Payload from the EventSerializer; the same bytes are published to Kafka unchanged
+    @Column(name = "event_data", length = 65536)
+    private byte[] eventData;
 }
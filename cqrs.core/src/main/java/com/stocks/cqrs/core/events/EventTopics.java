@@ -0,0 +1,44 @@
+package com.distributedinventory.cqrs.core.events;
+
+/**
+ * Kafka topics and record headers shared by the event publishers and the projections
+ */
+public final class EventTopics {
+    
+    public static final String STOCK_EVENTS = "stock-events";
+    public static final String RESERVATION_EVENTS = "reservation-events";
+    public static final String TRANSFER_EVENTS = "transfer-events";
+    public static final String DEFAULT_EVENTS = "default-events";
+    
+    // Simple class name of the event, used by consumers to pick the type to deserialize
+    public static final String TYPE_HEADER = "event-type";
+    // Version of the event within its aggregate's stream
+    public static final String VERSION_HEADER = "event-version";
+    // Epoch millis at which the event was appended to the event store
+    public static final String COMMITTED_AT_HEADER = "event-committed-at";
+    
+    private EventTopics() {
+    }
+    
+    /**
+     * Map an event type to its topic. Every topic is keyed by aggregate id, so the events of
+     * one aggregate stay in order on one partition.
+     */
+    public static String forEventType(String eventType) {
+        switch (eventType) {
+            case "ProductCreatedEvent":
+            case "StockUpdatedEvent":
+                return STOCK_EVENTS;
+            case "ReservationCreatedEvent":
+            case "ReservationConfirmedEvent":
+            case "ReservationCancelledEvent":
+                return RESERVATION_EVENTS;
+            case "TransferInitiatedEvent":
+            case "TransferCompletedEvent":
+            case "TransferFailedEvent":
+                return TRANSFER_EVENTS;
+            default:
+                return DEFAULT_EVENTS;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.distributedinventory.cqrs.core.events;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.util.Date;
+
+/**
+ * Pending-publication marker for an event_store row, inserted in the same transaction as the
+ * event and deleted once the broker has acknowledged it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "event_outbox")
+public class OutboxModel implements Persistable<Long> {
+    @Id
+    @Column(name = "event_id")
+    private Long eventId;
+    
+    @Column(name = "created_at")
+    private Date createdAt;
+    
+    @Override
+    public Long getId() {
+        return eventId;
+    }
+    
+    // The id is assigned, not generated; rows are only ever inserted, so skip the merge lookup
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -0,0 +1,11 @@
+package com.distributedinventory.cqrs.core.exceptions;
+
+/**
+ * The command was never applied because the service is saturated: its queue was full or its
+ * deadline passed while it waited. Safe to retry later.
+ */
+public class CommandRejectedException extends RuntimeException {
+    public CommandRejectedException(String message) {
+        super(message);
+    }
+}
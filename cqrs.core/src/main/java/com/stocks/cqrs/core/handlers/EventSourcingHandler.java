@@ -2,8 +2,16 @@ package com.distributedinventory.cqrs.core.handlers;
 
 import com.distributedinventory.cqrs.core.domain.AggregateRoot;
 
+import java.util.function.Supplier;
+
 public interface EventSourcingHandler<T> {
     void save(AggregateRoot aggregate);
+    /**
+     * Load an aggregate, possibly the cached live instance. Only the aggregate's command lane may
+     * call this: the instance is shared with the cache and is not safe to use from other threads.
+     * @return The aggregate, or null if it has no events
+     */
     T getById(String id);
     void republishEvents();
-}
\ No newline at end of file
+    void registerAggregateFactory(Supplier<T> factory);
+}
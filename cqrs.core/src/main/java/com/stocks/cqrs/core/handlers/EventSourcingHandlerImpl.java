@@ -1,17 +1,24 @@
 package com.distributedinventory.cqrs.core.handlers;
 
 import com.distributedinventory.cqrs.core.domain.AggregateRoot;
+import com.distributedinventory.cqrs.core.domain.AggregateSnapshot;
+import com.distributedinventory.cqrs.core.domain.Snapshottable;
 import com.distributedinventory.cqrs.core.events.BaseEvent;
 import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.events.EventTopics;
+import com.distributedinventory.cqrs.core.infrastructure.AggregateCache;
 import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import com.distributedinventory.cqrs.core.infrastructure.GroupCommitter;
+import com.distributedinventory.cqrs.core.infrastructure.SnapshotStore;
 import com.distributedinventory.cqrs.core.producers.EventProducer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 @Slf4j
@@ -21,42 +28,101 @@ public class EventSourcingHandlerImpl<T extends AggregateRoot> implements EventS
     
     private final EventStore eventStore;
     private final EventProducer eventProducer;
+    private final SnapshotStore snapshotStore;
+    private final AggregateCache aggregateCache;
+    private final GroupCommitter groupCommitter;
     
-    // Factory for creating aggregates - this would be more sophisticated in production
-    private final Map<String, Supplier<T>> aggregateFactories = new ConcurrentHashMap<>();
+    // Take a snapshot once this many events have been appended since the last one...
+    @Value("${inventory.snapshot.every-events:100}")
+    private int snapshotEveryEvents;
+    
+    // ...or when the last snapshot is older than this and the aggregate has changed since. Without
+    // a snapshot the interval counts from when the aggregate was loaded or first saved.
+    @Value("${inventory.snapshot.interval-seconds:60}")
+    private long snapshotIntervalSeconds;
+    
+    // With the outbox on, the store records pending events and a relay publishes them
+    @Value("${inventory.outbox.enabled:false}")
+    private boolean outboxEnabled;
+    
+    // Factory for creating empty aggregates before they are rehydrated
+    private volatile Supplier<T> aggregateFactory;
+    
+    @Override
+    public void registerAggregateFactory(Supplier<T> factory) {
+        this.aggregateFactory = factory;
+    }
     
     @Override
     public void save(AggregateRoot aggregate) {
-        // Save events to event store
-        eventStore.saveEvents(aggregate.getId(), aggregate.getUncommittedChanges(), aggregate.getVersion());
+        List<BaseEvent> changes = aggregate.getUncommittedChanges();
+        int eventCount = changes.size();
         
-        // Publish events directly to Kafka (simplified for Phase 3)
-        for (BaseEvent event : aggregate.getUncommittedChanges()) {
-            String topic = determineTopic(event);
-            eventProducer.produce(topic, event);
+        // Save events to event store, possibly sharing a flush with concurrent commands
+        try {
+            groupCommitter.saveEvents(aggregate.getId(), changes, aggregate.getVersion());
+        } catch (RuntimeException e) {
+            aggregateCache.invalidate(aggregate.getId());
+            throw e;
         }
         
+        // Without the outbox, publish directly to Kafka (simplified for Phase 3)
+        if (!outboxEnabled) {
+            for (BaseEvent event : changes) {
+                eventProducer.produce(EventTopics.forEventType(event.getClass().getSimpleName()), event);
+            }
+        }
+        
+        aggregate.setVersion(aggregate.getVersion() + eventCount);
         aggregate.markChangesAsCommitted();
+        aggregateCache.put(aggregate);
         
-        log.info("Saved and published events for aggregate: {} with {} events", 
-                aggregate.getId(), aggregate.getUncommittedChanges().size());
+        takeSnapshotIfDue(aggregate);
+        
+        log.info("Saved events for aggregate: {} with {} events", 
+                aggregate.getId(), eventCount);
     }
     
     @Override
     @SuppressWarnings("unchecked")
     public T getById(String id) {
-        List<BaseEvent> events = eventStore.getEvents(id);
+        Supplier<T> factory = aggregateFactory;
+        if (factory == null) {
+            throw new IllegalStateException("No aggregate factory was registered!");
+        }
         
-        if (events.isEmpty()) {
+        // Hot aggregates are served from memory; every append goes through save(), which keeps
+        // the cached instance current or drops it
+        AggregateRoot cached = aggregateCache.get(id);
+        if (cached != null) {
+            return (T) cached;
+        }
+        
+        T aggregate = factory.get();
+        int fromVersion = 0;
+        
+        // Start from the latest snapshot so only the tail of the stream has to be replayed
+        Optional<AggregateSnapshot> snapshot = snapshotStore.getLatestSnapshot(id);
+        if (snapshot.isPresent() && aggregate instanceof Snapshottable) {
+            ((Snapshottable<Object>) aggregate).restoreFromSnapshot(snapshot.get().getState());
+            aggregate.setVersion(snapshot.get().getVersion());
+            fromVersion = snapshot.get().getVersion() + 1;
+        }
+        
+        List<BaseEvent> events = eventStore.getEvents(id, fromVersion);
+        
+        if (fromVersion == 0 && events.isEmpty()) {
             log.warn("No events found for aggregate: {}", id);
             return null;
         }
         
-        log.info("Reconstructing aggregate: {} from {} events", id, events.size());
+        log.debug("Reconstructing aggregate: {} from version {} with {} events", id, fromVersion, events.size());
+        
+        aggregate.replayEvents(events);
+        aggregate.setVersion(fromVersion + events.size() - 1);
+        aggregateCache.put(aggregate);
         
-        // For now, return null to avoid casting issues
-        // In production, you'd have proper aggregate reconstruction logic
-        return null;
+        return aggregate;
     }
     
     @Override
@@ -67,9 +133,8 @@ public class EventSourcingHandlerImpl<T extends AggregateRoot> implements EventS
         
         for (EventModel eventModel : eventModels) {
             try {
-                // Deserialize and republish to Kafka
-                BaseEvent event = deserializeEvent(eventModel);
-                eventProducer.produce(eventModel.getEventType(), event);
+                // The stored payload is already the wire format
+                eventProducer.produce(EventTopics.forEventType(eventModel.getEventType()), eventModel);
                 log.debug("Republished event: {} for aggregate: {}", 
                         eventModel.getEventType(), eventModel.getAggregateIdentifier());
             } catch (Exception e) {
@@ -80,31 +145,26 @@ public class EventSourcingHandlerImpl<T extends AggregateRoot> implements EventS
         log.info("Completed republishing {} events", eventModels.size());
     }
     
-    private String determineTopic(BaseEvent event) {
-        // Map event types to Kafka topics based on the OpenAPI spec
-        String eventType = event.getClass().getSimpleName();
-        
-        switch (eventType) {
-            case "ProductCreatedEvent":
-            case "StockUpdatedEvent":
-                return "stock-events";
-            case "ReservationCreatedEvent":
-            case "ReservationConfirmedEvent":
-            case "ReservationCancelledEvent":
-                return "reservation-events";
-            case "TransferInitiatedEvent":
-            case "TransferCompletedEvent":
-            case "TransferFailedEvent":
-                return "transfer-events";
-            default:
-                log.warn("Unknown event type: {}, using default topic", eventType);
-                return "default-events";
+    private void takeSnapshotIfDue(AggregateRoot aggregate) {
+        if (!(aggregate instanceof Snapshottable<?> snapshottable)) {
+            return;
+        }
+        
+        Optional<AggregateSnapshot> latest = snapshotStore.getLatestSnapshot(aggregate.getId());
+        int eventsSinceSnapshot = aggregate.getVersion() - latest.map(AggregateSnapshot::getVersion).orElse(-1);
+        // Otherwise an aggregate that changes slowly would never get its first snapshot
+        long since = latest.map(snapshot -> snapshot.getTimeStamp().getTime()).orElse(aggregate.getCreatedAtMillis());
+        boolean stale = eventsSinceSnapshot > 0
+                && System.currentTimeMillis() - since >= snapshotIntervalSeconds * 1000;
+        
+        if (eventsSinceSnapshot >= snapshotEveryEvents || stale) {
+            snapshotStore.saveSnapshot(AggregateSnapshot.builder()
+                    .aggregateIdentifier(aggregate.getId())
+                    .version(aggregate.getVersion())
+                    .timeStamp(new Date())
+                    .state(snapshottable.takeSnapshot())
+                    .build());
+            log.debug("Saved snapshot for aggregate: {} at version: {}", aggregate.getId(), aggregate.getVersion());
         }
-    }
-    
-    private BaseEvent deserializeEvent(EventModel eventModel) {
-        // This would be implemented in the concrete implementation
-        // For now, return null as this is just the interface
-        return null;
     }
 }
@@ -0,0 +1,89 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.domain.AggregateRoot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of live aggregates on the command side. The command service is the single
+ * writer, and every command for an aggregate runs on that aggregate's lane, so after a
+ * successful append the in-memory aggregate is the latest state and can serve the next command
+ * without a replay. A cached aggregate is mutable and not thread-safe: it may only be handed to
+ * the aggregate's lane, which is the only thread that loads, changes and saves it.
+ * <p>
+ * The bound is an estimate of the cached aggregates' size in bytes, from
+ * {@link AggregateRoot#estimatedSize()}, and eviction is the {@link ClockCache}'s.
+ */
+@Component
+public class AggregateCache {
+
+    private final ClockCache<String, AggregateRoot> aggregates;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxBytes Estimated size of the cached aggregates; 0 turns the cache off
+     */
+    public AggregateCache(@Value("${inventory.aggregate-cache.max-bytes:33554432}") long maxBytes) {
+        this.aggregates = new ClockCache<>(maxBytes);
+    }
+
+    /**
+     * Get a cached aggregate. Only call this from the aggregate's lane.
+     * @param aggregateId The aggregate identifier
+     * @return The cached aggregate, or null on a miss
+     */
+    public AggregateRoot get(String aggregateId) {
+        AggregateRoot aggregate = aggregates.get(aggregateId);
+        if (aggregate == null) {
+            misses.increment();
+            return null;
+        }
+
+        // Pending changes mean a command failed halfway through, so the instance can't be trusted
+        if (!aggregate.getUncommittedChanges().isEmpty()) {
+            invalidate(aggregateId);
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return aggregate;
+    }
+
+    /**
+     * Store an aggregate whose state matches what has been persisted. Only call this from the
+     * aggregate's lane.
+     * @param aggregate The aggregate, with no uncommitted changes
+     */
+    public void put(AggregateRoot aggregate) {
+        if (!aggregates.isEnabled()) {
+            return;
+        }
+        aggregates.put(aggregate.getId(), aggregate, aggregate.estimatedSize());
+    }
+
+    public void invalidate(String aggregateId) {
+        if (aggregates.remove(aggregateId)) {
+            invalidations.increment();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", aggregates.size());
+        stats.put("bytes", aggregates.bytes());
+        stats.put("max_bytes", aggregates.maxBytes());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("evictions", aggregates.evictions());
+        stats.put("invalidations", invalidations.sum());
+        return stats;
+    }
+}
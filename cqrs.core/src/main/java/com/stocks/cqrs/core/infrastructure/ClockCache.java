@@ -0,0 +1,156 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Map bounded by an estimate of its values' size in bytes. Eviction is CLOCK: a hit marks its
+ * entry, and when the map is over its size the hand passes over marked entries, clearing the
+ * mark, and evicts the first unmarked one, so entries that were put but never read go first.
+ * <p>
+ * Reads take no lock. Puts, removals and eviction are serialized. Values are handed out as they
+ * were put; whether a caller may share or change one is up to the cache built on top.
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class ClockCache<K, V> {
+
+    private final long maxBytes;
+
+    private final Map<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    // Guarded by itself, as are bytes and every store into entries
+    private final ArrayDeque<Entry<K, V>> clock = new ArrayDeque<>();
+    private long bytes;
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes Estimated size the cached values may add up to; 0 turns the cache off
+     */
+    public ClockCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get a value, marking its entry as used
+     * @return The value, or null if the key isn't cached
+     */
+    public V get(K key) {
+        Entry<K, V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Get a value without marking its entry as used
+     * @return The value, or null if the key isn't cached
+     */
+    public V peek(K key) {
+        Entry<K, V> entry = entries.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Store a value, then evict until the cache is within its size again. Replacing a key's value
+     * keeps the entry's place on the clock and its mark.
+     * @param weight Estimated size of the value in bytes
+     */
+    public void put(K key, V value, int weight) {
+        if (maxBytes <= 0) {
+            return;
+        }
+        Entry<K, V> entry = entries.get(key);
+        // Putting back what is already cached is common and leaves nothing to update
+        if (entry != null && entry.value == value && entry.weight == weight) {
+            return;
+        }
+
+        synchronized (clock) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry<>(key, value, weight);
+                entries.put(key, entry);
+                clock.addLast(entry);
+                bytes += weight;
+            } else {
+                bytes += weight - entry.weight;
+                entry.value = value;
+                entry.weight = weight;
+            }
+            evictOverflow();
+        }
+    }
+
+    /**
+     * @return false if the key wasn't cached
+     */
+    public boolean remove(K key) {
+        synchronized (clock) {
+            Entry<K, V> entry = entries.remove(key);
+            if (entry == null) {
+                return false;
+            }
+            // Rare enough that walking the clock for it costs nothing that matters
+            clock.remove(entry);
+            bytes -= entry.weight;
+            return true;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long bytes() {
+        synchronized (clock) {
+            return bytes;
+        }
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // Caller holds the clock lock
+    private void evictOverflow() {
+        while (bytes > maxBytes && !clock.isEmpty()) {
+            Entry<K, V> entry = clock.pollFirst();
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.addLast(entry);
+                continue;
+            }
+            entries.remove(entry.key);
+            bytes -= entry.weight;
+            evictions.increment();
+        }
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile int weight;
+        private volatile boolean referenced;
+
+        private Entry(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -2,9 +2,19 @@ package com.distributedinventory.cqrs.core.infrastructure;
 
 import com.distributedinventory.cqrs.core.commands.BaseCommand;
 import com.distributedinventory.cqrs.core.commands.CommandHandlerMethod;
+import com.distributedinventory.cqrs.core.commands.CommandResult;
+
+import java.util.concurrent.CompletableFuture;
 
 // Mediator
 public interface CommandDispatcher {
     <T extends BaseCommand> void registerHandler(Class<T> type, CommandHandlerMethod<T> handler);
     void send(BaseCommand command);
+    /**
+     * Queue a command without blocking the caller
+     * @param command The command to run
+     * @return A future completed with the aggregate version after the command was applied, or
+     *         failed with CommandRejectedException when the command could not be queued or expired
+     */
+    CompletableFuture<CommandResult> sendAsync(BaseCommand command);
 }
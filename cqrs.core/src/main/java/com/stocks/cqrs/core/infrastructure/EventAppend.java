@@ -0,0 +1,20 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One aggregate's worth of new events, as passed to {@link EventStore#saveEventsBatch}
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventAppend {
+    private String aggregateId;
+    private List<BaseEvent> events;
+    private int expectedVersion;
+}
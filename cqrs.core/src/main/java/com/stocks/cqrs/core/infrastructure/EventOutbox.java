@@ -0,0 +1,22 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.EventModel;
+
+import java.util.List;
+
+/**
+ * Events that were appended to the store but not yet published. Event stores implement this
+ * next to {@link EventStore} so the outbox entry is written atomically with the append.
+ */
+public interface EventOutbox {
+    /**
+     * @param maxEvents Maximum number of events to return
+     * @return The oldest undispatched events in append order, so each aggregate's events stay in version order
+     */
+    List<EventModel> fetchPending(int maxEvents);
+    /**
+     * Mark events returned by {@link #fetchPending} as dispatched
+     * @param events A prefix of the last fetched batch whose delivery the broker acknowledged
+     */
+    void markDispatched(List<EventModel> events);
+}
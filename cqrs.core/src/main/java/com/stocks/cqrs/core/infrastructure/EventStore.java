@@ -3,11 +3,38 @@ package com.distributedinventory.cqrs.core.infrastructure;
 import com.distributedinventory.cqrs.core.events.BaseEvent;
 import com.distributedinventory.cqrs.core.events.EventModel;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public interface EventStore {
     void saveEvents(String aggregateId, Iterable<BaseEvent> events, int expectedVersion);
+    /**
+     * Persist several appends at once, each with its own optimistic version check. Stores
+     * that can should make the whole batch durable with a single flush or commit; the
+     * default simply saves them one by one.
+     * @param appends The appends, applied in order
+     * @return One entry per append: null if it was persisted, otherwise the exception it failed with
+     */
+    default List<RuntimeException> saveEventsBatch(List<EventAppend> appends) {
+        List<RuntimeException> failures = new ArrayList<>(appends.size());
+        for (EventAppend append : appends) {
+            try {
+                saveEvents(append.getAggregateId(), append.getEvents(), append.getExpectedVersion());
+                failures.add(null);
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        return failures;
+    }
     List<BaseEvent> getEvents(String aggregateId);
+    /**
+     * Read the tail of an aggregate's stream, starting at the given version (inclusive)
+     * @param aggregateId The aggregate identifier
+     * @param fromVersion First version to return; 0 returns the full stream
+     * @return The events with version >= fromVersion, in version order
+     */
+    List<BaseEvent> getEvents(String aggregateId, int fromVersion);
     List<String> getAggregateIds();
     List<EventModel> findAll();
     List<EventModel> findByAggregateIdentifier(String aggregateId);
@@ -0,0 +1,232 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit in front of the event store. Concurrent appends are queued for a single
+ * committer thread, which gathers them for up to max-wait-micros (or until max-batch-size)
+ * and persists them with one {@link EventStore#saveEventsBatch} call, so a whole batch
+ * shares one flush or transaction commit. Each append keeps its own version check and
+ * fails on its own. When disabled, appends go straight to {@link EventStore#saveEvents}.
+ * Either way every append's latency and the size of every store write are metered.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GroupCommitter {
+    
+    private final EventStore eventStore;
+    private final MeterRegistry meterRegistry;
+    
+    @Value("${inventory.event-store.group-commit.enabled:false}")
+    private boolean enabled;
+    
+    @Value("${inventory.event-store.group-commit.max-wait-micros:200}")
+    private long maxWaitMicros;
+    
+    @Value("${inventory.event-store.group-commit.max-batch-size:256}")
+    private int maxBatchSize;
+    
+    private final BlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>();
+    // Time from the call to the events being persisted, group commit wait included
+    private Timer appendTimer;
+    // Appends persisted by each event store write: always 1 without group commit
+    private DistributionSummary batchSizes;
+    private Timer waitTimer;
+    private Timer commitTimer;
+    
+    private volatile boolean running;
+    private Thread committer;
+    
+    @PostConstruct
+    public void start() {
+        appendTimer = Timer.builder("inventory.event.store.append")
+                .description("Time to persist one aggregate's events, including any wait for a group commit")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("inventory.event.store.batch.size")
+                .description("Appends persisted by one event store write")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("inventory.event.store.group.commit.wait")
+                .description("Time an append waits in the group commit queue")
+                .register(meterRegistry);
+        commitTimer = Timer.builder("inventory.event.store.group.commit.write")
+                .description("Time to persist one group commit batch")
+                .register(meterRegistry);
+        Gauge.builder("inventory.event.store.group.commit.queued", queue, BlockingQueue::size)
+                .description("Appends waiting for the group committer")
+                .register(meterRegistry);
+        
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        committer = new Thread(this::run, "event-group-committer");
+        committer.setDaemon(true);
+        committer.start();
+        log.info("Event store group commit enabled (max wait {}us, max batch {})", maxWaitMicros, maxBatchSize);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (committer == null) {
+            return;
+        }
+        running = false;
+        committer.interrupt();
+        committer.join(TimeUnit.SECONDS.toMillis(5));
+        
+        // The committer drains the queue on its way out; whatever it left, or didn't get to, is failed
+        List<PendingAppend> leftover = new ArrayList<>();
+        queue.drainTo(leftover);
+        for (PendingAppend pending : leftover) {
+            pending.result.completeExceptionally(new IllegalStateException("Group committer stopped"));
+        }
+    }
+    
+    /**
+     * Append events for one aggregate, returning once they are persisted
+     * @throws RuntimeException Whatever the event store raised for this append, e.g. a ConcurrencyException
+     */
+    public void saveEvents(String aggregateId, List<BaseEvent> events, int expectedVersion) {
+        long start = System.nanoTime();
+        if (!running) {
+            saveDirectly(aggregateId, events, expectedVersion, start);
+            return;
+        }
+        
+        PendingAppend pending = new PendingAppend(new EventAppend(aggregateId, events, expectedVersion), start);
+        queue.add(pending);
+        // If we stopped meanwhile the committer may be gone without having seen the append. Taking
+        // it back out means nobody else will complete it; otherwise the committer or stop() will.
+        if (!running && queue.remove(pending)) {
+            saveDirectly(aggregateId, events, expectedVersion, start);
+            return;
+        }
+        try {
+            pending.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("max_wait_micros", maxWaitMicros);
+        stats.put("max_batch_size", maxBatchSize);
+        stats.put("queue_depth", queue.size());
+        stats.put("append", MeterStats.timer(appendTimer));
+        stats.put("batch_size", MeterStats.summary(batchSizes));
+        stats.put("wait", MeterStats.timer(waitTimer));
+        stats.put("commit", MeterStats.timer(commitTimer));
+        return stats;
+    }
+    
+    private void saveDirectly(String aggregateId, List<BaseEvent> events, int expectedVersion, long start) {
+        eventStore.saveEvents(aggregateId, events, expectedVersion);
+        batchSizes.record(1);
+        appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    
+    private void run() {
+        List<PendingAppend> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (running) {
+                PendingAppend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                
+                // The window opens with the first append; anything already queued past it is taken without waiting
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingAppend next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                
+                commit(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Don't strand callers that were queued when we were asked to stop
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            commit(batch);
+        }
+    }
+    
+    private void commit(List<PendingAppend> batch) {
+        long start = System.nanoTime();
+        List<EventAppend> appends = new ArrayList<>(batch.size());
+        for (PendingAppend pending : batch) {
+            appends.add(pending.append);
+            waitTimer.record(start - pending.enqueuedAt, TimeUnit.NANOSECONDS);
+        }
+        
+        List<RuntimeException> failures;
+        try {
+            failures = eventStore.saveEventsBatch(appends);
+        } catch (RuntimeException e) {
+            log.error("Group commit of {} appends failed: {}", batch.size(), e.getMessage());
+            for (PendingAppend pending : batch) {
+                pending.result.completeExceptionally(e);
+            }
+            return;
+        }
+        
+        batchSizes.record(batch.size());
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        
+        for (int i = 0; i < batch.size(); i++) {
+            RuntimeException failure = failures.get(i);
+            if (failure == null) {
+                batch.get(i).result.complete(null);
+            } else {
+                batch.get(i).result.completeExceptionally(failure);
+            }
+        }
+    }
+    
+    private static final class PendingAppend {
+        private final EventAppend append;
+        private final long enqueuedAt;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        
+        private PendingAppend(EventAppend append, long enqueuedAt) {
+            this.append = append;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
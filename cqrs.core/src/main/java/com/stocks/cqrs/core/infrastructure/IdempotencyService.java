@@ -1,88 +1,149 @@
 package com.distributedinventory.cqrs.core.infrastructure;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.stereotype.Service;
-
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-@Service
-@RequiredArgsConstructor
-public class IdempotencyService {
-    
-    // In-memory storage for demo purposes
-    // In production, this should be stored in a persistent database
-    private final Map<String, IdempotencyResult> idempotencyStore = new ConcurrentHashMap<>();
-    
+
+/**
+ * Idempotency keys and the results stored against them. Keys are claimed atomically, expire
+ * after a TTL that depends on whether the request is still processing or has completed, and
+ * the number of keys held is capped. The backend is chosen with inventory.idempotency.store.
+ */
+public interface IdempotencyService {
+
+    /**
+     * Claim an idempotency key for a new request, or find out what already happened to it.
+     * Of any number of concurrent claims for the same key exactly one is granted ownership.
+     * @param key The idempotency key
+     * @param requestHash Hash of the request, kept so a reuse of the key for a different request can be told apart
+     * @return An owned claim (the key is now PROCESSING), the existing result, or a rejection
+     * when the key limit is reached and nothing can be evicted
+     */
+    Claim claim(String key, long requestHash);
+
     /**
      * Check if an idempotency key has already been processed
      * @param key The idempotency key
      * @return The stored result if exists, null otherwise
      */
-    public IdempotencyResult getResult(String key) {
-        return idempotencyStore.get(key);
-    }
-    
+    IdempotencyResult getResult(String key);
+
     /**
      * Store the result of an idempotent operation
      * @param key The idempotency key
      * @param result The operation result
      */
-    public void storeResult(String key, IdempotencyResult result) {
-        idempotencyStore.put(key, result);
-    }
-    
+    void storeResult(String key, IdempotencyResult result);
+
     /**
-     * Check if an operation is currently being processed (to prevent duplicate processing)
+     * Forget an idempotency key so a retry with the same key is processed again
+     * (used when the command was rejected before it was applied)
      * @param key The idempotency key
-     * @return true if currently processing, false otherwise
      */
-    public boolean isProcessing(String key) {
-        IdempotencyResult result = idempotencyStore.get(key);
-        return result != null && result.getStatus() == IdempotencyStatus.PROCESSING;
-    }
-    
+    void release(String key);
+
+    Map<String, Object> getStats();
+
     /**
-     * Mark an operation as currently being processed
-     * @param key The idempotency key
+     * Outcome of {@link #claim(String, long)}
      */
-    public void markAsProcessing(String key) {
-        idempotencyStore.put(key, IdempotencyResult.processing());
+    final class Claim {
+        private static final Claim OWNED = new Claim(true, null);
+        private static final Claim REJECTED = new Claim(false, null);
+
+        private final boolean owned;
+        private final IdempotencyResult existing;
+
+        private Claim(boolean owned, IdempotencyResult existing) {
+            this.owned = owned;
+            this.existing = existing;
+        }
+
+        public static Claim owned() {
+            return OWNED;
+        }
+
+        public static Claim existing(IdempotencyResult result) {
+            return new Claim(false, result);
+        }
+
+        public static Claim rejected() {
+            return REJECTED;
+        }
+
+        /** The caller now owns the key and must store a result for it or release it */
+        public boolean isOwned() { return owned; }
+
+        /** The key limit was reached with only in-flight keys held, so nothing was claimed */
+        public boolean isRejected() { return !owned && existing == null; }
+
+        /** What an earlier request with this key produced, or PROCESSING if it is still running */
+        public IdempotencyResult getExisting() { return existing; }
     }
-    
-    public static class IdempotencyResult {
+
+    /**
+     * A request's outcome as it was sent: status, content type, the headers a client may act on
+     * (such as the ETag) and the exact body bytes, so a replay is a single write with nothing to
+     * serialize
+     */
+    class IdempotencyResult {
         private final IdempotencyStatus status;
         private final int httpStatusCode;
-        private final Object responseBody;
-        private final String errorMessage;
-        
-        private IdempotencyResult(IdempotencyStatus status, int httpStatusCode, Object responseBody, String errorMessage) {
+        private final String contentType;
+        private final Map<String, String> headers;
+        private final byte[] responseBody;
+        private final long requestHash;
+
+        private IdempotencyResult(IdempotencyStatus status, int httpStatusCode, String contentType,
+                                  Map<String, String> headers, byte[] responseBody, long requestHash) {
             this.status = status;
             this.httpStatusCode = httpStatusCode;
+            this.contentType = contentType;
+            this.headers = headers;
             this.responseBody = responseBody;
-            this.errorMessage = errorMessage;
+            this.requestHash = requestHash;
         }
-        
-        public static IdempotencyResult success(int httpStatusCode, Object responseBody) {
-            return new IdempotencyResult(IdempotencyStatus.SUCCESS, httpStatusCode, responseBody, null);
+
+        public static IdempotencyResult completed(int httpStatusCode, String contentType, byte[] responseBody, long requestHash) {
+            return completed(httpStatusCode, contentType, Map.of(), responseBody, requestHash);
         }
-        
-        public static IdempotencyResult error(int httpStatusCode, String errorMessage) {
-            return new IdempotencyResult(IdempotencyStatus.ERROR, httpStatusCode, null, errorMessage);
+
+        public static IdempotencyResult completed(int httpStatusCode, String contentType, Map<String, String> headers,
+                                                  byte[] responseBody, long requestHash) {
+            IdempotencyStatus status = httpStatusCode < 400 ? IdempotencyStatus.SUCCESS : IdempotencyStatus.ERROR;
+            return new IdempotencyResult(status, httpStatusCode, contentType, Map.copyOf(headers), responseBody, requestHash);
+        }
+
+        public static IdempotencyResult processing(long requestHash) {
+            return new IdempotencyResult(IdempotencyStatus.PROCESSING, 0, null, Map.of(), null, requestHash);
+        }
+
+        /** The result, its strings, headers and body */
+        public int estimatedSize() {
+            int size = 64 + length(contentType) + (responseBody == null ? 0 : 16 + responseBody.length);
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                size += 32 + length(header.getKey()) + length(header.getValue());
+            }
+            return size;
         }
-        
-        public static IdempotencyResult processing() {
-            return new IdempotencyResult(IdempotencyStatus.PROCESSING, 0, null, null);
+
+        private static int length(String value) {
+            return value == null ? 0 : 40 + 2 * value.length();
+        }
+
+        /** Whether this was recorded for the same request, and not another one reusing the key */
+        public boolean matches(long requestHash) {
+            return this.requestHash == requestHash;
         }
-        
+
         // Getters
         public IdempotencyStatus getStatus() { return status; }
         public int getHttpStatusCode() { return httpStatusCode; }
-        public Object getResponseBody() { return responseBody; }
-        public String getErrorMessage() { return errorMessage; }
+        public String getContentType() { return contentType; }
+        public Map<String, String> getHeaders() { return headers; }
+        public byte[] getResponseBody() { return responseBody; }
+        public long getRequestHash() { return requestHash; }
     }
-    
-    public enum IdempotencyStatus {
+
+    enum IdempotencyStatus {
         PROCESSING,
         SUCCESS,
         ERROR
@@ -0,0 +1,241 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Heap-backed idempotency store; keys are lost on restart.
+ * <p>
+ * Every entry with a given status gets the same TTL, so entries expire in the order they were
+ * written. Each status therefore has a FIFO expiry queue and expiring is a matter of popping
+ * its head; the map itself is never scanned. Queue entries whose key has since been rewritten
+ * or released are dropped when they reach the head, or in a compaction pass if they pile up
+ * faster than they expire.
+ * <p>
+ * The store is bounded by the estimated size of its entries, cached response bodies included,
+ * as well as by their number. Completed entries closest to expiry are evicted to make room; in-flight
+ * ones never are.
+ */
+@Service
+@ConditionalOnProperty(name = "inventory.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    // In-memory storage for demo purposes
+    // In production, this should be stored in a persistent database
+    private final Map<String, Entry> idempotencyStore = new ConcurrentHashMap<>();
+    private final Queue<Entry> processingExpiry = new ConcurrentLinkedQueue<>();
+    private final Queue<Entry> completedExpiry = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock expiryLock = new ReentrantLock();
+    private final AtomicInteger queuedEntries = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final int maxKeys;
+    private final long maxBytes;
+    private final long processingTtlNanos;
+    private final long completedTtlNanos;
+
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public IdempotencyServiceImpl(@Value("${inventory.idempotency.max-keys:100000}") int maxKeys,
+                                  @Value("${inventory.idempotency.max-bytes:67108864}") long maxBytes,
+                                  @Value("${inventory.idempotency.processing-ttl-seconds:60}") long processingTtlSeconds,
+                                  @Value("${inventory.idempotency.completed-ttl-seconds:86400}") long completedTtlSeconds) {
+        this.maxKeys = maxKeys;
+        this.maxBytes = maxBytes;
+        this.processingTtlNanos = TimeUnit.SECONDS.toNanos(processingTtlSeconds);
+        this.completedTtlNanos = TimeUnit.SECONDS.toNanos(completedTtlSeconds);
+    }
+
+    @Override
+    public Claim claim(String key, long requestHash) {
+        long now = System.nanoTime();
+        expire(now);
+        Entry found = idempotencyStore.get(key);
+        if (found != null && !found.isExpired(now)) {
+            // A retry; making room first could evict the very result it is asking for
+            return Claim.existing(found.result);
+        }
+        var created = new Entry(key, IdempotencyResult.processing(requestHash), now + processingTtlNanos);
+        // Only a new key needs room; an expired one is replaced in place
+        while (found == null && (idempotencyStore.size() >= maxKeys || bytes.get() + created.size > maxBytes)) {
+            if (!evictCompleted(null)) {
+                // Only in-flight keys are left; dropping one would let its retry run twice
+                rejected.increment();
+                return Claim.rejected();
+            }
+        }
+
+        Entry current = idempotencyStore.compute(key, (k, existing) -> {
+            if (existing != null && !existing.isExpired(now)) {
+                return existing;
+            }
+            bytes.addAndGet(created.size - (existing == null ? 0 : existing.size));
+            return created;
+        });
+        if (current != created) {
+            return Claim.existing(current.result);
+        }
+        enqueue(processingExpiry, created);
+        return Claim.owned();
+    }
+
+    @Override
+    public IdempotencyResult getResult(String key) {
+        Entry entry = idempotencyStore.get(key);
+        return entry == null || entry.isExpired(System.nanoTime()) ? null : entry.result;
+    }
+
+    @Override
+    public void storeResult(String key, IdempotencyResult result) {
+        long now = System.nanoTime();
+        boolean processing = result.getStatus() == IdempotencyStatus.PROCESSING;
+        var entry = new Entry(key, result, now + (processing ? processingTtlNanos : completedTtlNanos));
+        Entry previous = idempotencyStore.put(key, entry);
+        bytes.addAndGet(entry.size - (previous == null ? 0 : previous.size));
+        enqueue(processing ? processingExpiry : completedExpiry, entry);
+        expire(now);
+        // A response larger than everything else put together stays; it's evicted first next time
+        while (bytes.get() > maxBytes) {
+            if (!evictCompleted(entry)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void release(String key) {
+        Entry removed = idempotencyStore.remove(key);
+        if (removed != null) {
+            bytes.addAndGet(-removed.size);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        return Map.of(
+                "store", "memory",
+                "size", idempotencyStore.size(),
+                "max_keys", maxKeys,
+                "bytes", bytes.get(),
+                "max_bytes", maxBytes,
+                "processing_ttl_seconds", TimeUnit.NANOSECONDS.toSeconds(processingTtlNanos),
+                "completed_ttl_seconds", TimeUnit.NANOSECONDS.toSeconds(completedTtlNanos),
+                "expired", expired.sum(),
+                "evicted", evicted.sum(),
+                "rejected", rejected.sum()
+        );
+    }
+
+    private void enqueue(Queue<Entry> queue, Entry entry) {
+        queue.add(entry);
+        // Rewriting a key leaves its old queue entry behind; don't let those outgrow the map
+        if (queuedEntries.incrementAndGet() > 2 * Math.max(maxKeys, 1024)) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        expiryLock.lock();
+        try {
+            if (queuedEntries.get() > 2 * Math.max(maxKeys, 1024)) {
+                processingExpiry.removeIf(this::isStale);
+                completedExpiry.removeIf(this::isStale);
+                queuedEntries.set(processingExpiry.size() + completedExpiry.size());
+            }
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    private boolean isStale(Entry entry) {
+        return idempotencyStore.get(entry.key) != entry;
+    }
+
+    /**
+     * Drop entries whose TTL has passed. Only one thread sweeps at a time; the others carry on,
+     * since whoever holds the lock is already doing the work.
+     */
+    private void expire(long now) {
+        if (!expiryLock.tryLock()) {
+            return;
+        }
+        try {
+            expireHead(processingExpiry, now);
+            expireHead(completedExpiry, now);
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    private void expireHead(Queue<Entry> queue, long now) {
+        for (Entry head = queue.peek(); head != null && head.isExpired(now); head = queue.peek()) {
+            queue.poll();
+            queuedEntries.decrementAndGet();
+            if (remove(head)) {
+                expired.increment();
+            }
+        }
+    }
+
+    private boolean remove(Entry entry) {
+        if (idempotencyStore.remove(entry.key, entry)) {
+            bytes.addAndGet(-entry.size);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Make room by removing the completed entry closest to expiry
+     * @param keep Entry to leave in place should it be the closest to expiry, or null
+     * @return false if there is no completed entry left to remove
+     */
+    private boolean evictCompleted(Entry keep) {
+        expiryLock.lock();
+        try {
+            for (Entry head = completedExpiry.peek(); head != null && head != keep; head = completedExpiry.peek()) {
+                completedExpiry.poll();
+                queuedEntries.decrementAndGet();
+                if (remove(head)) {
+                    evicted.increment();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final IdempotencyResult result;
+        private final long expiresAtNanos;
+        // The map node, this entry, its queue node and the key, on top of the result
+        private final int size;
+
+        private Entry(String key, IdempotencyResult result, long expiresAtNanos) {
+            this.key = key;
+            this.result = result;
+            this.expiresAtNanos = expiresAtNanos;
+            this.size = 136 + 2 * key.length() + result.estimatedSize();
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+}
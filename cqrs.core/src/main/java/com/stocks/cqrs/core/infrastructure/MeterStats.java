@@ -0,0 +1,131 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads meters back out of a {@link MeterRegistry} as the plain maps the /metrics endpoints
+ * return, so those endpoints and the Prometheus scrape report the same numbers. Percentiles
+ * appear only for meters that publish them (management.metrics.distribution.percentiles).
+ */
+public final class MeterStats {
+
+    private MeterStats() {
+    }
+
+    /**
+     * Count, mean, max and published percentiles of a timer, in microseconds
+     */
+    public static Map<String, Object> timer(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", snapshot.count());
+        stats.put("mean_micros", snapshot.mean(TimeUnit.MICROSECONDS));
+        stats.put("max_micros", snapshot.max(TimeUnit.MICROSECONDS));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            stats.put(percentileName(percentile) + "_micros", percentile.value(TimeUnit.MICROSECONDS));
+        }
+        return stats;
+    }
+
+    /**
+     * Count, mean, max and published percentiles of a distribution summary
+     */
+    public static Map<String, Object> summary(DistributionSummary summary) {
+        HistogramSnapshot snapshot = summary.takeSnapshot();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("count", snapshot.count());
+        stats.put("mean", snapshot.mean());
+        stats.put("max", snapshot.max());
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            stats.put(percentileName(percentile), percentile.value());
+        }
+        return stats;
+    }
+
+    /**
+     * Sum of every counter or gauge with this name, whatever its tags; 0 if there is none
+     */
+    public static double sum(MeterRegistry registry, String name) {
+        double total = 0;
+        for (Meter meter : registry.find(name).meters()) {
+            if (meter instanceof Counter counter) {
+                total += counter.count();
+            } else if (meter instanceof FunctionCounter counter) {
+                total += counter.count();
+            } else if (meter instanceof Gauge gauge && Double.isFinite(gauge.value())) {
+                total += gauge.value();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Heap, GC and thread figures from the JVM binders
+     */
+    public static Map<String, Object> jvm(MeterRegistry registry) {
+        long gcPauses = 0;
+        double gcPauseMillis = 0;
+        for (Timer pause : registry.find("jvm.gc.pause").timers()) {
+            gcPauses += pause.count();
+            gcPauseMillis += pause.totalTime(TimeUnit.MILLISECONDS);
+        }
+
+        Map<String, Object> jvm = new LinkedHashMap<>();
+        jvm.put("heap_used_bytes", sumTagged(registry, "jvm.memory.used", "area", "heap"));
+        jvm.put("heap_committed_bytes", sumTagged(registry, "jvm.memory.committed", "area", "heap"));
+        jvm.put("heap_max_bytes", sumTagged(registry, "jvm.memory.max", "area", "heap"));
+        jvm.put("gc_pauses", gcPauses);
+        jvm.put("gc_pause_millis", gcPauseMillis);
+        jvm.put("threads_live", sum(registry, "jvm.threads.live"));
+        return jvm;
+    }
+
+    /**
+     * Request counts and latency of the HTTP server, overall and by status class
+     */
+    public static Map<String, Object> http(MeterRegistry registry) {
+        long requests = 0;
+        double totalMicros = 0;
+        Map<String, Long> byOutcome = new LinkedHashMap<>();
+        for (Timer timer : registry.find("http.server.requests").timers()) {
+            requests += timer.count();
+            totalMicros += timer.totalTime(TimeUnit.MICROSECONDS);
+            byOutcome.merge(String.valueOf(timer.getId().getTag("outcome")), timer.count(), Long::sum);
+        }
+
+        Map<String, Object> http = new LinkedHashMap<>();
+        http.put("requests_total", requests);
+        http.put("mean_micros", requests == 0 ? 0.0 : totalMicros / requests);
+        http.put("by_outcome", byOutcome);
+        return http;
+    }
+
+    // Gauges such as jvm.memory.max report -1 for pools without a limit; those are left out
+    private static double sumTagged(MeterRegistry registry, String name, String tag, String value) {
+        double total = 0;
+        for (Gauge gauge : registry.find(name).tag(tag, value).gauges()) {
+            if (gauge.value() > 0) {
+                total += gauge.value();
+            }
+        }
+        return total;
+    }
+
+    private static String percentileName(ValueAtPercentile percentile) {
+        // 0.5 -> p50, 0.99 -> p99, 0.999 -> p999
+        String digits = String.valueOf(percentile.percentile()).substring(2);
+        return "p" + (digits.length() == 1 ? digits + "0" : digits);
+    }
+}
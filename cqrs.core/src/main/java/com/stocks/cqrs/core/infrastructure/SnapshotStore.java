@@ -0,0 +1,10 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.domain.AggregateSnapshot;
+
+import java.util.Optional;
+
+public interface SnapshotStore {
+    void saveSnapshot(AggregateSnapshot snapshot);
+    Optional<AggregateSnapshot> getLatestSnapshot(String aggregateId);
+}
@@ -0,0 +1,136 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary {@link EventSerializer}. Every payload starts with a magic byte, the event's
+ * type tag and the schema version it was written with, followed by the codec's body; bodies
+ * written by older versions are run through the registered upcasters on read. Payloads without
+ * the header are JSON written before the codec existed and are read by class name.
+ */
+@Component
+public class BinaryEventSerializer implements EventSerializer {
+
+    static final int MAGIC = 0xCE;
+
+    private final EventCodec<?>[] codecsByTag;
+    private final Map<String, EventCodec<?>> codecsByName = new HashMap<>();
+    private final Map<Long, EventUpcaster> upcasters = new HashMap<>();
+    private final ObjectMapper legacyMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // Resolved once per class instead of a map lookup or Class.forName per event
+    private final ClassValue<EventCodec<?>> codecsByClass = new ClassValue<>() {
+        @Override
+        protected EventCodec<?> computeValue(Class<?> type) {
+            EventCodec<?> codec = codecsByName.get(type.getSimpleName());
+            return codec != null && codec.eventType() == type ? codec : null;
+        }
+    };
+
+    private final ThreadLocal<BinaryWriter> writers = ThreadLocal.withInitial(() -> new BinaryWriter(256));
+
+    @Autowired
+    public BinaryEventSerializer(ObjectProvider<EventCodec<?>> codecs, ObjectProvider<EventUpcaster> upcasters) {
+        this(codecs.orderedStream().toList(), upcasters.orderedStream().toList());
+    }
+
+    public BinaryEventSerializer(List<EventCodec<?>> codecs, List<EventUpcaster> upcasters) {
+        int maxTag = codecs.stream().mapToInt(EventCodec::typeTag).max().orElse(0);
+        this.codecsByTag = new EventCodec<?>[maxTag + 1];
+        for (EventCodec<?> codec : codecs) {
+            if (codec.typeTag() <= 0 || codec.schemaVersion() <= 0) {
+                throw new IllegalStateException("Codec for " + codec.eventType().getSimpleName() + " needs a positive type tag and schema version");
+            }
+            if (codecsByTag[codec.typeTag()] != null) {
+                throw new IllegalStateException("Type tag " + codec.typeTag() + " is used by both "
+                        + codecsByTag[codec.typeTag()].eventType().getSimpleName() + " and " + codec.eventType().getSimpleName());
+            }
+            if (codecsByName.putIfAbsent(codec.eventType().getSimpleName(), codec) != null) {
+                throw new IllegalStateException("More than one codec for " + codec.eventType().getSimpleName());
+            }
+            codecsByTag[codec.typeTag()] = codec;
+        }
+        for (EventUpcaster upcaster : upcasters) {
+            if (this.upcasters.put(key(upcaster.typeTag(), upcaster.fromVersion()), upcaster) != null) {
+                throw new IllegalStateException("More than one upcaster for type tag " + upcaster.typeTag()
+                        + " from version " + upcaster.fromVersion());
+            }
+        }
+        // Every stored version must have a path to the current one; find gaps at startup, not on replay
+        for (EventCodec<?> codec : codecs) {
+            for (int version = 1; version < codec.schemaVersion(); version++) {
+                if (!this.upcasters.containsKey(key(codec.typeTag(), version))) {
+                    throw new IllegalStateException("No upcaster for " + codec.eventType().getSimpleName()
+                            + " from schema version " + version);
+                }
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] serialize(BaseEvent event) {
+        var codec = (EventCodec<BaseEvent>) codecsByClass.get(event.getClass());
+        if (codec == null) {
+            throw new IllegalArgumentException("No codec registered for event type " + event.getClass().getName());
+        }
+        BinaryWriter out = writers.get().reset();
+        out.writeByte(MAGIC);
+        out.writeVarInt(codec.typeTag());
+        out.writeVarInt(codec.schemaVersion());
+        codec.write(event, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public BaseEvent deserialize(String eventType, byte[] data) {
+        if (data.length == 0 || (data[0] & 0xFF) != MAGIC) {
+            return readLegacy(eventType, data);
+        }
+        var in = new BinaryReader(data);
+        in.readByte();
+        int tag = in.readVarInt();
+        int version = in.readVarInt();
+        EventCodec<?> codec = tag < codecsByTag.length ? codecsByTag[tag] : null;
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown event type tag " + tag);
+        }
+        if (version > codec.schemaVersion()) {
+            throw new IllegalArgumentException(codec.eventType().getSimpleName() + " schema version " + version
+                    + " is newer than this codec's " + codec.schemaVersion());
+        }
+        while (version < codec.schemaVersion()) {
+            var upcast = new BinaryWriter(data.length + 16);
+            upcasters.get(key(tag, version)).upcast(in, upcast);
+            in = new BinaryReader(upcast.toByteArray());
+            version++;
+        }
+        return codec.read(in);
+    }
+
+    private BaseEvent readLegacy(String eventType, byte[] data) {
+        EventCodec<?> codec = codecsByName.get(eventType);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown event type " + eventType);
+        }
+        try {
+            return legacyMapper.readValue(data, codec.eventType());
+        } catch (java.io.IOException e) {
+            throw new IllegalArgumentException("Unreadable " + eventType + " payload", e);
+        }
+    }
+
+    private static long key(int typeTag, int fromVersion) {
+        return ((long) typeTag << 32) | (fromVersion & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,111 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Reads the encoding written by {@link BinaryWriter}. Truncated or malformed input surfaces as
+ * {@link IllegalArgumentException}.
+ */
+public final class BinaryReader {
+    private final byte[] buffer;
+    private final int limit;
+    private int position;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    public BinaryReader(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public int readByte() {
+        require(1);
+        return buffer[position++] & 0xFF;
+    }
+
+    public void copyRemainingTo(BinaryWriter out) {
+        out.writeBytes(buffer, position, limit - position);
+        position = limit;
+    }
+
+    public int readVarInt() {
+        long value = readVarLong();
+        if ((value >>> 32) != 0) {
+            throw new IllegalArgumentException("Varint overflows an int");
+        }
+        return (int) value;
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public long readSignedVarLong() {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public int readInt() {
+        return (int) readSignedVarLong();
+    }
+
+    public Integer readNullableInt() {
+        return readByte() == 0 ? null : (int) readSignedVarLong();
+    }
+
+    public Date readDate() {
+        return readByte() == 0 ? null : new Date(readSignedVarLong());
+    }
+
+    public BigDecimal readDecimal() {
+        int kind = readByte();
+        if (kind == 0) {
+            return null;
+        }
+        int scale = (int) readSignedVarLong();
+        if (kind == 1) {
+            return BigDecimal.valueOf(readSignedVarLong(), scale);
+        }
+        int length = readVarInt();
+        require(length);
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    public String readString() {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        require(length);
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private void require(int bytes) {
+        if (bytes < 0 || limit - position < bytes) {
+            throw new IllegalArgumentException("Truncated event payload");
+        }
+    }
+}
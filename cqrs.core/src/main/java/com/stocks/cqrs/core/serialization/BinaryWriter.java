@@ -0,0 +1,138 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Growable buffer for the compact event encoding. Integers are varints (zigzag when signed),
+ * strings are length-prefixed UTF-8 with length 0 meaning null, and nullable numbers carry a
+ * one-byte presence flag. Not thread-safe; reuse one instance per thread via {@link #reset()}.
+ */
+public final class BinaryWriter {
+    private byte[] buffer;
+    private int position;
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    public BinaryWriter reset() {
+        position = 0;
+        return this;
+    }
+
+    public int size() {
+        return position;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+    public void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeInt(int value) {
+        writeSignedVarLong(value);
+    }
+
+    public void writeNullableInt(Integer value) {
+        if (value == null) {
+            writeByte(0);
+        } else {
+            writeByte(1);
+            writeSignedVarLong(value);
+        }
+    }
+
+    public void writeDate(Date value) {
+        if (value == null) {
+            writeByte(0);
+        } else {
+            writeByte(1);
+            writeSignedVarLong(value.getTime());
+        }
+    }
+
+    public void writeDecimal(BigDecimal value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            writeByte(1);
+            writeSignedVarLong(value.scale());
+            writeSignedVarLong(unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            writeByte(2);
+            writeSignedVarLong(value.scale());
+            writeVarInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    public void writeString(String value) {
+        if (value == null) {
+            writeByte(0);
+            return;
+        }
+        int length = value.length();
+        if (isAscii(value, length)) {
+            // Common case: one byte per char, no intermediate array
+            writeVarInt(length + 1);
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    private static boolean isAscii(String value, int length) {
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+
+/**
+ * Binary layout of one event type at its current schema version. Register an implementation
+ * as a bean to make the type serializable; bump {@link #schemaVersion()} and add an
+ * {@link EventUpcaster} whenever the layout changes.
+ */
+public interface EventCodec<T extends BaseEvent> {
+    Class<T> eventType();
+    /**
+     * @return Stable tag written in the payload header in place of the class name; never reuse one
+     */
+    int typeTag();
+    int schemaVersion();
+    void write(T event, BinaryWriter out);
+    T read(BinaryReader in);
+}
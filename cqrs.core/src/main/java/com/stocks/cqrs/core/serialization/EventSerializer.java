@@ -0,0 +1,20 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+
+/**
+ * Turns events into the byte payload shared by the event store and Kafka, and back.
+ */
+public interface EventSerializer {
+    /**
+     * @param event Event to encode, with its version already assigned
+     * @return Self-describing payload carrying the event's type tag and schema version
+     */
+    byte[] serialize(BaseEvent event);
+    /**
+     * @param eventType Simple class name recorded next to the payload, used for payloads without a header
+     * @param data Payload produced by {@link #serialize}, possibly by an older schema version
+     * @return The event, upcast to the current schema
+     */
+    BaseEvent deserialize(String eventType, byte[] data);
+}
@@ -0,0 +1,14 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+/**
+ * Rewrites a payload body from one schema version of an event type to the next, so stored
+ * events stay readable after the codec changes. Upcasters chain until the current version.
+ */
+public interface EventUpcaster {
+    int typeTag();
+    /**
+     * @return Schema version this upcaster reads; it writes {@code fromVersion() + 1}
+     */
+    int fromVersion();
+    void upcast(BinaryReader in, BinaryWriter out);
+}
@@ -0,0 +1,51 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ProductCreatedEventCodec implements EventCodec<ProductCreatedEvent> {
+
+    @Override
+    public Class<ProductCreatedEvent> eventType() {
+        return ProductCreatedEvent.class;
+    }
+
+    @Override
+    public int typeTag() {
+        return 1;
+    }
+
+    @Override
+    public int schemaVersion() {
+        return 1;
+    }
+
+    @Override
+    public void write(ProductCreatedEvent event, BinaryWriter out) {
+        out.writeString(event.getId());
+        out.writeInt(event.getVersion());
+        out.writeString(event.getName());
+        out.writeString(event.getDescription());
+        out.writeString(event.getCategory());
+        out.writeDecimal(event.getPrice());
+        out.writeString(event.getStoreId());
+        out.writeNullableInt(event.getInitialAmount());
+        out.writeDate(event.getCreatedDate());
+    }
+
+    @Override
+    public ProductCreatedEvent read(BinaryReader in) {
+        var event = new ProductCreatedEvent();
+        event.setId(in.readString());
+        event.setVersion(in.readInt());
+        event.setName(in.readString());
+        event.setDescription(in.readString());
+        event.setCategory(in.readString());
+        event.setPrice(in.readDecimal());
+        event.setStoreId(in.readString());
+        event.setInitialAmount(in.readNullableInt());
+        event.setCreatedDate(in.readDate());
+        return event;
+    }
+}
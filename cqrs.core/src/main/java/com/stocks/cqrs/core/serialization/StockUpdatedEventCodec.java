@@ -0,0 +1,47 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import org.springframework.stereotype.Component;
+
+@Component
+public class StockUpdatedEventCodec implements EventCodec<StockUpdatedEvent> {
+
+    @Override
+    public Class<StockUpdatedEvent> eventType() {
+        return StockUpdatedEvent.class;
+    }
+
+    @Override
+    public int typeTag() {
+        return 2;
+    }
+
+    @Override
+    public int schemaVersion() {
+        return 1;
+    }
+
+    @Override
+    public void write(StockUpdatedEvent event, BinaryWriter out) {
+        out.writeString(event.getId());
+        out.writeInt(event.getVersion());
+        out.writeString(event.getOperation());
+        out.writeNullableInt(event.getAmount());
+        out.writeNullableInt(event.getNewAmount());
+        out.writeString(event.getReason());
+        out.writeDate(event.getUpdatedDate());
+    }
+
+    @Override
+    public StockUpdatedEvent read(BinaryReader in) {
+        var event = new StockUpdatedEvent();
+        event.setId(in.readString());
+        event.setVersion(in.readInt());
+        event.setOperation(in.readString());
+        event.setAmount(in.readNullableInt());
+        event.setNewAmount(in.readNullableInt());
+        event.setReason(in.readString());
+        event.setUpdatedDate(in.readDate());
+        return event;
+    }
+}
@@ -0,0 +1,116 @@
+package com.distributedinventory.cqrs.core.handlers;
+
+import com.distributedinventory.cqrs.core.domain.AggregateRoot;
+import com.distributedinventory.cqrs.core.domain.AggregateSnapshot;
+import com.distributedinventory.cqrs.core.domain.Snapshottable;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.infrastructure.AggregateCache;
+import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import com.distributedinventory.cqrs.core.infrastructure.GroupCommitter;
+import com.distributedinventory.cqrs.core.infrastructure.SnapshotStore;
+import com.distributedinventory.cqrs.core.producers.EventProducer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * When {@code save} takes a snapshot, against mocked stores
+ */
+class EventSourcingHandlerImplTest {
+
+    private final SnapshotStore snapshotStore = mock(SnapshotStore.class);
+
+    @Test
+    void takesTheFirstSnapshotOnceTheIntervalHasPassedSinceTheAggregateWasLoaded() {
+        var handler = handler(100, 0);
+        when(snapshotStore.getLatestSnapshot("product-1")).thenReturn(Optional.empty());
+
+        handler.save(new Stock("product-1", 5));
+
+        var snapshot = ArgumentCaptor.forClass(AggregateSnapshot.class);
+        verify(snapshotStore).saveSnapshot(snapshot.capture());
+        assertThat(snapshot.getValue().getVersion()).isEqualTo(0);
+        assertThat(snapshot.getValue().getState()).isEqualTo(5);
+    }
+
+    @Test
+    void leavesAnAggregateWithoutASnapshotAloneWithinTheInterval() {
+        var handler = handler(100, 60);
+        when(snapshotStore.getLatestSnapshot("product-1")).thenReturn(Optional.empty());
+
+        handler.save(new Stock("product-1", 5));
+
+        verify(snapshotStore, never()).saveSnapshot(any());
+    }
+
+    @Test
+    void measuresTheIntervalFromTheLastSnapshotWhenThereIsOne() {
+        var handler = handler(100, 60);
+        Stock stock = new Stock("product-1", 5);
+        handler.save(stock);
+        when(snapshotStore.getLatestSnapshot("product-1")).thenReturn(Optional.of(AggregateSnapshot.builder()
+                .aggregateIdentifier("product-1")
+                .version(0)
+                .timeStamp(new Date(System.currentTimeMillis() - 61_000))
+                .state(5)
+                .build()));
+
+        stock.set(7);
+        handler.save(stock);
+
+        var snapshot = ArgumentCaptor.forClass(AggregateSnapshot.class);
+        verify(snapshotStore).saveSnapshot(snapshot.capture());
+        assertThat(snapshot.getValue().getVersion()).isEqualTo(1);
+        assertThat(snapshot.getValue().getState()).isEqualTo(7);
+    }
+
+    private EventSourcingHandlerImpl<Stock> handler(int everyEvents, long intervalSeconds) {
+        var handler = new EventSourcingHandlerImpl<Stock>(mock(EventStore.class), mock(EventProducer.class), snapshotStore,
+                new AggregateCache(0), mock(GroupCommitter.class));
+        ReflectionTestUtils.setField(handler, "snapshotEveryEvents", everyEvents);
+        ReflectionTestUtils.setField(handler, "snapshotIntervalSeconds", intervalSeconds);
+        handler.registerAggregateFactory(Stock::new);
+        return handler;
+    }
+
+    private static class Stock extends AggregateRoot implements Snapshottable<Integer> {
+        private int amount;
+
+        Stock() {
+        }
+
+        Stock(String id, int amount) {
+            this.id = id;
+            set(amount);
+        }
+
+        void set(int amount) {
+            raiseEvent(StockUpdatedEvent.builder().id(id).operation("set").amount(amount).newAmount(amount).build());
+        }
+
+        private void apply(StockUpdatedEvent event) {
+            this.id = event.getId();
+            this.amount = event.getNewAmount();
+        }
+
+        @Override
+        public Integer takeSnapshot() {
+            return amount;
+        }
+
+        @Override
+        public void restoreFromSnapshot(Integer snapshot) {
+            this.amount = snapshot;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClockCacheTest {
+
+    @Test
+    void evictsEntriesNobodyReadBeforeOnesThatWereHit() {
+        var cache = new ClockCache<String, String>(300);
+        cache.put("a", "A", 100);
+        cache.put("b", "B", 100);
+        cache.put("c", "C", 100);
+        cache.get("a");
+        cache.get("c");
+
+        cache.put("d", "D", 100);
+
+        assertThat(cache.peek("b")).isNull();
+        assertThat(cache.peek("a")).isEqualTo("A");
+        assertThat(cache.peek("c")).isEqualTo("C");
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.bytes()).isEqualTo(300);
+        assertThat(cache.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void theHandClearsMarksAsItPassesSoEveryEntryCanGo() {
+        var cache = new ClockCache<String, String>(200);
+        cache.put("a", "A", 100);
+        cache.put("b", "B", 100);
+        cache.get("a");
+        cache.get("b");
+
+        // The hand clears both marks and reaches the new entry, the only one not used since it came in
+        cache.put("c", "C", 100);
+        assertThat(cache.peek("c")).isNull();
+
+        // Now nothing is marked, so the oldest goes
+        cache.put("d", "D", 100);
+        assertThat(cache.peek("a")).isNull();
+        assertThat(cache.peek("b")).isEqualTo("B");
+        assertThat(cache.peek("d")).isEqualTo("D");
+    }
+
+    @Test
+    void peekingDoesNotCountAsAUse() {
+        var cache = new ClockCache<String, String>(200);
+        cache.put("a", "A", 100);
+        cache.put("b", "B", 100);
+        cache.peek("a");
+
+        cache.put("c", "C", 100);
+
+        assertThat(cache.peek("a")).isNull();
+    }
+
+    @Test
+    void replacingAValueKeepsTheAccountingRight() {
+        var cache = new ClockCache<String, String>(1000);
+        cache.put("a", "A", 100);
+        cache.put("a", "A2", 250);
+        cache.put("b", "B", 50);
+
+        assertThat(cache.peek("a")).isEqualTo("A2");
+        assertThat(cache.bytes()).isEqualTo(300);
+
+        assertThat(cache.remove("a")).isTrue();
+        assertThat(cache.remove("a")).isFalse();
+        assertThat(cache.bytes()).isEqualTo(50);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void aValueLargerThanTheCacheIsEvictedStraightAway() {
+        var cache = new ClockCache<String, String>(100);
+        cache.put("a", "A", 50);
+
+        cache.put("b", "B", 500);
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.bytes()).isZero();
+    }
+
+    @Test
+    void holdsNothingWithoutRoom() {
+        var cache = new ClockCache<String, String>(0);
+        cache.put("a", "A", 1);
+
+        assertThat(cache.isEnabled()).isFalse();
+        assertThat(cache.get("a")).isNull();
+    }
+}
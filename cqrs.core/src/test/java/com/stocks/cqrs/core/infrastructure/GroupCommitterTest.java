@@ -0,0 +1,181 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.exceptions.ConcurrencyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Group commit against a mocked event store whose first batch write blocks until released, so
+ * appends can be left waiting in the queue when the committer is stopped.
+ */
+class GroupCommitterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    private final EventStore eventStore = mock(EventStore.class);
+    private final GroupCommitter committer = new GroupCommitter(eventStore, new SimpleMeterRegistry());
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private final CountDownLatch firstBatchEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        releaseFirstBatch.countDown();
+        committer.stop();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void stoppingCommitsTheAppendsStillQueued() throws Exception {
+        start();
+        CompletableFuture<Void> first = append("product-a");
+        assertThat(firstBatchEntered.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)).isTrue();
+        CompletableFuture<Void> second = append("product-b");
+        CompletableFuture<Void> third = append("product-c");
+        awaitTrue(() -> committer.getStats().get("queue_depth").equals(2));
+
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(this::stop, callers);
+        releaseFirstBatch.countDown();
+
+        CompletableFuture.allOf(first, second, third, stopped).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        assertThat(batches).containsExactly(List.of("product-a"), List.of("product-b", "product-c"));
+    }
+
+    @Test
+    void stoppingFailsWhatTheCommitterCouldNotGetTo() throws Exception {
+        start();
+        CompletableFuture<Void> first = append("product-a");
+        assertThat(firstBatchEntered.await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)).isTrue();
+        CompletableFuture<Void> second = append("product-b");
+        awaitTrue(() -> committer.getStats().get("queue_depth").equals(1));
+
+        // The store write outlasts stop()'s wait for the committer, so the queued append is failed
+        committer.stop();
+
+        assertThatThrownBy(() -> second.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Group committer stopped");
+        releaseFirstBatch.countDown();
+        first.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        assertThat(batches).containsExactly(List.of("product-a"));
+    }
+
+    @Test
+    void appendsAfterStoppingGoStraightToTheStore() throws Exception {
+        start();
+        releaseFirstBatch.countDown();
+        committer.stop();
+
+        append("product-a").get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+
+        verify(eventStore).saveEvents(eq("product-a"), any(), eq(-1));
+        verify(eventStore, never()).saveEventsBatch(any());
+    }
+
+    @Test
+    void eachAppendInABatchFailsOnItsOwn() throws Exception {
+        var conflict = new ConcurrencyException("Version conflict");
+        doAnswer(invocation -> {
+            List<EventAppend> appends = invocation.getArgument(0);
+            List<RuntimeException> failures = new ArrayList<>();
+            for (EventAppend append : appends) {
+                failures.add(append.getAggregateId().equals("product-b") ? conflict : null);
+            }
+            return failures;
+        }).when(eventStore).saveEventsBatch(any());
+        ReflectionTestUtils.setField(committer, "enabled", true);
+        ReflectionTestUtils.setField(committer, "maxWaitMicros", 200_000L);
+        committer.start();
+
+        CompletableFuture<Void> first = append("product-a");
+        CompletableFuture<Void> second = append("product-b");
+
+        first.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        assertThatThrownBy(() -> second.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)).hasCause(conflict);
+        verify(eventStore, never()).saveEvents(any(), any(), anyInt());
+    }
+
+    private void start() {
+        doAnswer(invocation -> {
+            List<EventAppend> appends = invocation.getArgument(0);
+            batches.add(appends.stream().map(EventAppend::getAggregateId).toList());
+            firstBatchEntered.countDown();
+            awaitIgnoringInterrupts(releaseFirstBatch);
+            return Collections.nCopies(appends.size(), null);
+        }).when(eventStore).saveEventsBatch(any());
+        ReflectionTestUtils.setField(committer, "enabled", true);
+        ReflectionTestUtils.setField(committer, "maxWaitMicros", 200L);
+        ReflectionTestUtils.setField(committer, "maxBatchSize", 256);
+        committer.start();
+    }
+
+    private CompletableFuture<Void> append(String aggregateId) {
+        List<BaseEvent> events = List.of();
+        return CompletableFuture.runAsync(() -> committer.saveEvents(aggregateId, events, -1), callers);
+    }
+
+    private void stop() {
+        try {
+            committer.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Like a store write stuck in I/O, which an interrupt doesn't cut short
+    private static void awaitIgnoringInterrupts(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition within %s", TIMEOUT).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.distributedinventory.cqrs.core.infrastructure;
+
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService.Claim;
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService.IdempotencyResult;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdempotencyServiceImplTest {
+
+    private static final byte[] BODY = "{\"id\":\"product-1\"}".getBytes();
+
+    @Test
+    void aRetryAtTheKeyLimitGetsItsOwnResultBack() {
+        var service = new IdempotencyServiceImpl(1, 1 << 20, 60, 86400);
+        complete(service, "key-1", 1L);
+
+        Claim retry = service.claim("key-1", 1L);
+
+        assertThat(retry.isOwned()).isFalse();
+        assertThat(retry.getExisting().getResponseBody()).isEqualTo(BODY);
+        assertThat(service.getStats()).containsEntry("evicted", 0L).containsEntry("size", 1);
+    }
+
+    @Test
+    void aRetryAtTheByteLimitGetsItsOwnResultBack() {
+        // Room for one completed entry, but not for it and another claim
+        var service = new IdempotencyServiceImpl(100, 400, 60, 86400);
+        complete(service, "key-1", 1L);
+
+        Claim retry = service.claim("key-1", 1L);
+
+        assertThat(retry.isOwned()).isFalse();
+        assertThat(retry.getExisting().getResponseBody()).isEqualTo(BODY);
+    }
+
+    @Test
+    void aNewKeyAtTheLimitEvictsACompletedOneButNeverAnInFlightOne() {
+        var service = new IdempotencyServiceImpl(1, 1 << 20, 60, 86400);
+        complete(service, "key-1", 1L);
+
+        assertThat(service.claim("key-2", 2L).isOwned()).isTrue();
+        assertThat(service.getResult("key-1")).isNull();
+        assertThat(service.claim("key-3", 3L).isRejected()).isTrue();
+        assertThat(service.getStats()).containsEntry("evicted", 1L).containsEntry("rejected", 1L);
+    }
+
+    private static void complete(IdempotencyService service, String key, long requestHash) {
+        assertThat(service.claim(key, requestHash).isOwned()).isTrue();
+        service.storeResult(key, IdempotencyResult.completed(201, "application/json", BODY, requestHash));
+    }
+}
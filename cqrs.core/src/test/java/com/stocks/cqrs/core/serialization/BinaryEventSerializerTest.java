@@ -0,0 +1,234 @@
+package com.distributedinventory.cqrs.core.serialization;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryEventSerializerTest {
+
+    private final BinaryEventSerializer serializer = new BinaryEventSerializer(
+            List.of(new ProductCreatedEventCodec(), new StockUpdatedEventCodec()), List.of());
+
+    @Test
+    void roundTripsEveryFieldOfAProductCreatedEvent() {
+        ProductCreatedEvent event = ProductCreatedEvent.builder()
+                .id("5b0b6a4e-6a8e-4b4e-9a55-0f4f7d1c2a31")
+                .version(0)
+                .name("Café crème")
+                .description("")
+                .category("drinks")
+                .price(new BigDecimal("12.50"))
+                .storeId("store-1")
+                .initialAmount(-3)
+                .createdDate(new Date(1_700_000_000_123L))
+                .build();
+
+        assertThat(roundTrip(event)).usingRecursiveComparison().isEqualTo(event);
+    }
+
+    @Test
+    void roundTripsNullsAndValuesPastSixtyFourBits() {
+        ProductCreatedEvent event = ProductCreatedEvent.builder()
+                .id("product-1")
+                .version(Integer.MAX_VALUE)
+                .name("Product")
+                .price(new BigDecimal("123456789012345678901234567890.0001"))
+                .build();
+
+        BaseEvent read = roundTrip(event);
+
+        assertThat(read).usingRecursiveComparison().isEqualTo(event);
+        assertThat(((ProductCreatedEvent) read).getDescription()).isNull();
+        assertThat(((ProductCreatedEvent) read).getInitialAmount()).isNull();
+        assertThat(((ProductCreatedEvent) read).getCreatedDate()).isNull();
+    }
+
+    @Test
+    void roundTripsEveryFieldOfAStockUpdatedEvent() {
+        StockUpdatedEvent event = stockUpdated();
+
+        assertThat(roundTrip(event)).usingRecursiveComparison().isEqualTo(event);
+    }
+
+    @Test
+    void readsJsonWrittenBeforeTheCodecByTypeName() throws Exception {
+        StockUpdatedEvent event = stockUpdated();
+        byte[] json = new ObjectMapper().writeValueAsBytes(event);
+
+        assertThat(serializer.deserialize("StockUpdatedEvent", json)).usingRecursiveComparison().isEqualTo(event);
+    }
+
+    @Test
+    void rejectsUnknownTypeTagsAndNewerSchemaVersions() {
+        byte[] unknownTag = {(byte) BinaryEventSerializer.MAGIC, 9, 1};
+        byte[] newerVersion = {(byte) BinaryEventSerializer.MAGIC, 2, 2};
+
+        assertThatThrownBy(() -> serializer.deserialize("StockUpdatedEvent", unknownTag))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Unknown event type tag 9");
+        assertThatThrownBy(() -> serializer.deserialize("StockUpdatedEvent", newerVersion))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("schema version 2 is newer");
+    }
+
+    @Test
+    void rejectsTruncatedPayloads() {
+        byte[] payload = serializer.serialize(stockUpdated());
+        byte[] truncated = Arrays.copyOf(payload, payload.length - 4);
+
+        assertThatThrownBy(() -> serializer.deserialize("StockUpdatedEvent", truncated))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void upcastsStoredPayloadsThroughEveryVersionToTheCurrentCodec() {
+        StockUpdatedEvent event = stockUpdated();
+        byte[] stored = serializer.serialize(event);
+        var upgraded = new BinaryEventSerializer(List.of(new StockUpdatedEventCodecV3()),
+                List.of(new SwapAmounts(), new MoveReasonLast()));
+
+        assertThat(upgraded.deserialize("StockUpdatedEvent", stored)).usingRecursiveComparison().isEqualTo(event);
+        // And what the new codec writes reads back without upcasting
+        assertThat(upgraded.deserialize("StockUpdatedEvent", upgraded.serialize(event)))
+                .usingRecursiveComparison().isEqualTo(event);
+    }
+
+    @Test
+    void refusesToStartWithAGapInTheUpcasterChain() {
+        assertThatThrownBy(() -> new BinaryEventSerializer(List.of(new StockUpdatedEventCodecV3()), List.of(new SwapAmounts())))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("No upcaster for StockUpdatedEvent from schema version 2");
+    }
+
+    @Test
+    void refusesDuplicateTagsCodecsAndUpcasters() {
+        EventCodec<ProductCreatedEvent> sameTag = new ProductCreatedEventCodec() {
+            @Override
+            public int typeTag() {
+                return 2;
+            }
+        };
+
+        assertThatThrownBy(() -> new BinaryEventSerializer(List.of(new StockUpdatedEventCodec(), sameTag), List.of()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Type tag 2 is used by both");
+        assertThatThrownBy(() -> new BinaryEventSerializer(List.of(new ProductCreatedEventCodec(), sameTag), List.of()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("More than one codec for ProductCreatedEvent");
+        assertThatThrownBy(() -> new BinaryEventSerializer(List.of(new StockUpdatedEventCodecV3()),
+                List.of(new SwapAmounts(), new SwapAmounts(), new MoveReasonLast())))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("More than one upcaster for type tag 2 from version 1");
+    }
+
+    private BaseEvent roundTrip(BaseEvent event) {
+        return serializer.deserialize(event.getClass().getSimpleName(), serializer.serialize(event));
+    }
+
+    private static StockUpdatedEvent stockUpdated() {
+        return StockUpdatedEvent.builder()
+                .id("5b0b6a4e-6a8e-4b4e-9a55-0f4f7d1c2a31")
+                .version(42)
+                .operation("purchase")
+                .amount(3)
+                .newAmount(null)
+                .reason("Order 1001")
+                .updatedDate(new Date(1_700_000_000_456L))
+                .build();
+    }
+
+    /**
+     * Version 3 of the stock update layout: version 2 wrote newAmount before amount, version 3
+     * also moved the reason after the date
+     */
+    private static class StockUpdatedEventCodecV3 extends StockUpdatedEventCodec {
+
+        @Override
+        public int schemaVersion() {
+            return 3;
+        }
+
+        @Override
+        public void write(StockUpdatedEvent event, BinaryWriter out) {
+            out.writeString(event.getId());
+            out.writeInt(event.getVersion());
+            out.writeString(event.getOperation());
+            out.writeNullableInt(event.getNewAmount());
+            out.writeNullableInt(event.getAmount());
+            out.writeDate(event.getUpdatedDate());
+            out.writeString(event.getReason());
+        }
+
+        @Override
+        public StockUpdatedEvent read(BinaryReader in) {
+            var event = new StockUpdatedEvent();
+            event.setId(in.readString());
+            event.setVersion(in.readInt());
+            event.setOperation(in.readString());
+            event.setNewAmount(in.readNullableInt());
+            event.setAmount(in.readNullableInt());
+            event.setUpdatedDate(in.readDate());
+            event.setReason(in.readString());
+            return event;
+        }
+    }
+
+    private static class SwapAmounts implements EventUpcaster {
+
+        @Override
+        public int typeTag() {
+            return 2;
+        }
+
+        @Override
+        public int fromVersion() {
+            return 1;
+        }
+
+        @Override
+        public void upcast(BinaryReader in, BinaryWriter out) {
+            out.writeString(in.readString());
+            out.writeInt(in.readInt());
+            out.writeString(in.readString());
+            Integer amount = in.readNullableInt();
+            out.writeNullableInt(in.readNullableInt());
+            out.writeNullableInt(amount);
+            in.copyRemainingTo(out);
+        }
+    }
+
+    private static class MoveReasonLast implements EventUpcaster {
+
+        @Override
+        public int typeTag() {
+            return 2;
+        }
+
+        @Override
+        public int fromVersion() {
+            return 2;
+        }
+
+        @Override
+        public void upcast(BinaryReader in, BinaryWriter out) {
+            out.writeString(in.readString());
+            out.writeInt(in.readInt());
+            out.writeString(in.readString());
+            out.writeNullableInt(in.readNullableInt());
+            out.writeNullableInt(in.readNullableInt());
+            String reason = in.readString();
+            out.writeDate(in.readDate());
+            out.writeString(reason);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.distributedinventory.benchmarks;
+
+import com.bankcqrsexample.account.cmd.cmd.domain.ProductAggregate;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.EventStoreImpl;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.SnapshotStoreImpl;
+import com.distributedinventory.cqrs.core.domain.AggregateSnapshot;
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.handlers.EventSourcingHandlerImpl;
+import com.distributedinventory.cqrs.core.infrastructure.AggregateCache;
+import com.distributedinventory.cqrs.core.infrastructure.GroupCommitter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying events to {@link ProductAggregate}: raising one new event, rebuilding an aggregate
+ * from histories of increasing length, and loading one through
+ * {@link EventSourcingHandlerImpl#getById} from the in-memory event store, with and without the
+ * snapshot the handler would have taken by then. The aggregate cache is off, so every load reads
+ * the store.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregateBenchmark {
+
+    @State(Scope.Thread)
+    public static class Live {
+        ProductAggregate aggregate;
+        StockUpdatedEvent event;
+
+        @Setup
+        public void setUp() {
+            aggregate = new ProductAggregate("product-1", "Benchmark product", null, "benchmarks",
+                    new BigDecimal("19.99"), "store-1", 1_000);
+            aggregate.markChangesAsCommitted();
+            event = Fixtures.stockUpdated("product-1", 10);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class History {
+        @Param({"10", "100", "1000", "10000"})
+        int historyLength;
+
+        List<BaseEvent> events;
+
+        @Setup
+        public void setUp() {
+            events = Fixtures.history("product-1", historyLength);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Stored {
+        // A snapshot is taken every this many events, as with the default inventory.snapshot.every-events
+        static final int SNAPSHOT_EVERY_EVENTS = 100;
+
+        @Param({"10", "100", "1000", "10000"})
+        int historyLength;
+
+        @Param({"false", "true"})
+        boolean snapshots;
+
+        EventSourcingHandlerImpl<ProductAggregate> handler;
+
+        @Setup
+        public void setUp() {
+            EventStoreImpl eventStore = Fixtures.memoryEventStore();
+            List<BaseEvent> history = Fixtures.history("product-1", historyLength);
+            eventStore.saveEvents("product-1", history, -1);
+
+            SnapshotStoreImpl snapshotStore = new SnapshotStoreImpl();
+            // The handler snapshots once every-events events have been appended since the last one
+            int snapshotVersion = historyLength / SNAPSHOT_EVERY_EVENTS * SNAPSHOT_EVERY_EVENTS - 1;
+            if (snapshots && snapshotVersion >= 0) {
+                ProductAggregate aggregate = new ProductAggregate();
+                aggregate.replayEvents(history.subList(0, snapshotVersion + 1));
+                snapshotStore.saveSnapshot(AggregateSnapshot.builder()
+                        .aggregateIdentifier("product-1")
+                        .version(snapshotVersion)
+                        .timeStamp(new Date())
+                        .state(aggregate.takeSnapshot())
+                        .build());
+            }
+
+            // With no room the aggregate cache holds nothing; loads never save, so the committer is idle
+            handler = new EventSourcingHandlerImpl<>(eventStore, new DispatcherBenchmark.DiscardingEventProducer(), snapshotStore,
+                    new AggregateCache(0), new GroupCommitter(eventStore, new SimpleMeterRegistry()));
+            handler.registerAggregateFactory(ProductAggregate::new);
+        }
+    }
+
+    @Benchmark
+    public ProductAggregate raiseEvent(Live live) {
+        live.aggregate.raiseEvent(live.event);
+        live.aggregate.markChangesAsCommitted();
+        return live.aggregate;
+    }
+
+    @Benchmark
+    public ProductAggregate updateStock(Live live) {
+        live.aggregate.updateStock("set", 10, "benchmark");
+        live.aggregate.markChangesAsCommitted();
+        return live.aggregate;
+    }
+
+    @Benchmark
+    public ProductAggregate replayEvents(History history) {
+        var aggregate = new ProductAggregate();
+        aggregate.replayEvents(history.events);
+        return aggregate;
+    }
+
+    @Benchmark
+    public ProductAggregate getById(Stored stored) {
+        return stored.handler.getById("product-1");
+    }
+}
@@ -0,0 +1,112 @@
+package com.distributedinventory.benchmarks;
+
+import com.bankcqrsexample.account.cmd.cmd.api.commands.CommandHandler;
+import com.bankcqrsexample.account.cmd.cmd.api.commands.CreateProductCommand;
+import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockCommand;
+import com.bankcqrsexample.account.cmd.cmd.domain.ProductAggregate;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.EventStoreImpl;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.ProductCommandDispatcher;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.SnapshotStoreImpl;
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.handlers.EventSourcingHandler;
+import com.distributedinventory.cqrs.core.handlers.EventSourcingHandlerImpl;
+import com.distributedinventory.cqrs.core.infrastructure.AggregateCache;
+import com.distributedinventory.cqrs.core.infrastructure.GroupCommitter;
+import com.distributedinventory.cqrs.core.producers.EventProducer;
+import com.distributedinventory.cqrs.core.serialization.BinaryEventSerializer;
+import com.distributedinventory.cqrs.core.serialization.ProductCreatedEventCodec;
+import com.distributedinventory.cqrs.core.serialization.StockUpdatedEventCodec;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ProductCommandDispatcher#send} end to end: lane hand-off, aggregate load, the stock
+ * rule, the in-memory event store and snapshots, with a producer that discards events. Runs
+ * against one hot product and spread over many.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatcherBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Pipeline {
+        @Param({"1", "1000"})
+        int products;
+
+        AnnotationConfigApplicationContext context;
+        ProductCommandDispatcher dispatcher;
+        String[] productIds;
+
+        @Setup
+        @SuppressWarnings("unchecked")
+        public void setUp() {
+            // The command service's own beans, wired by Spring so their @Value defaults apply
+            context = new AnnotationConfigApplicationContext();
+            context.register(BinaryEventSerializer.class, ProductCreatedEventCodec.class, StockUpdatedEventCodec.class,
+                    EventStoreImpl.class, SnapshotStoreImpl.class, AggregateCache.class, GroupCommitter.class,
+                    EventSourcingHandlerImpl.class, CommandHandler.class, ProductCommandDispatcher.class,
+                    DiscardingEventProducer.class);
+            context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+            context.refresh();
+            context.getBean(EventSourcingHandler.class).registerAggregateFactory(ProductAggregate::new);
+            dispatcher = context.getBean(ProductCommandDispatcher.class);
+
+            productIds = new String[products];
+            for (int i = 0; i < products; i++) {
+                productIds[i] = "product-" + i;
+                dispatcher.send(new CreateProductCommand(productIds[i], "Benchmark product", null, "benchmarks",
+                        new BigDecimal("19.99"), "store-1", 1_000));
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final SplittableRandom random = new SplittableRandom();
+
+        String nextProduct(Pipeline pipeline) {
+            return pipeline.productIds[random.nextInt(pipeline.productIds.length)];
+        }
+    }
+
+    public static class DiscardingEventProducer implements EventProducer {
+        @Override
+        public void produce(String topic, BaseEvent event) {
+        }
+
+        @Override
+        public void produce(String topic, EventModel eventModel) {
+        }
+    }
+
+    private static void updateStock(Pipeline pipeline, Client client) {
+        pipeline.dispatcher.send(new UpdateStockCommand(client.nextProduct(pipeline), "set", 10, "benchmark"));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void send(Pipeline pipeline, Client client) {
+        updateStock(pipeline, client);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sendFourThreads(Pipeline pipeline, Client client) {
+        updateStock(pipeline, client);
+    }
+}
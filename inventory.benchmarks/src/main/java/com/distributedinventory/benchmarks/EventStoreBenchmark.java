@@ -0,0 +1,171 @@
+package com.distributedinventory.benchmarks;
+
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.EventStoreImpl;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.FileEventStore;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.JdbcEventStore;
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.exceptions.ConcurrencyException;
+import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * The event stores: appending one event to an aggregate that already has {@code historyLength}
+ * events, and reading a whole stream back, from one and from four threads. The contended
+ * variant has every thread appending to the same aggregate, retrying on a version conflict.
+ * Each runs against the in-memory {@link EventStoreImpl}, the {@link JdbcEventStore} on
+ * in-memory H2 and the {@link FileEventStore} in a temporary directory with its default
+ * interval fsync; the last two are the command service's own beans, wired by Spring.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventStoreBenchmark {
+
+    private static final int READ_AGGREGATES = 64;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+        @Param({"10", "100", "1000"})
+        int historyLength;
+
+        @Param({"memory", "jdbc", "file"})
+        String type;
+
+        EventStore store;
+        String[] aggregateIds;
+        final AtomicInteger writers = new AtomicInteger();
+        int iteration;
+        ConfigurableApplicationContext context;
+        Path directory;
+
+        @Setup(Level.Trial)
+        public void start() throws IOException {
+            if (type.equals("memory")) {
+                return;
+            }
+            directory = Files.createTempDirectory("event-store-benchmark");
+            // Both services' classes share this classpath, so the command side's settings are passed explicitly
+            context = new SpringApplicationBuilder(com.bankcqrsexample.account.cmd.cmd.Application.class)
+                    .run("--spring.main.web-application-type=none",
+                            "--spring.datasource.url=jdbc:h2:mem:eventStoreBenchmark",
+                            "--spring.jpa.show-sql=false",
+                            "--spring.jpa.properties.hibernate.show_sql=false",
+                            "--inventory.event-store.type=" + type,
+                            "--inventory.event-store.file.directory=" + directory,
+                            "--inventory.outbox.enabled=false",
+                            "--logging.level.root=WARN",
+                            // Lost version races are expected in the contended benchmark; Hibernate logs each one
+                            "--logging.level.org.hibernate.engine.jdbc=OFF");
+            store = context.getBean(EventStore.class);
+        }
+
+        // Appends accumulate, so every iteration reads streams of its own: a fresh store in
+        // memory, fresh aggregates in the others
+        @Setup(Level.Iteration)
+        public void setUp() {
+            if (type.equals("memory")) {
+                store = Fixtures.memoryEventStore();
+            }
+            iteration++;
+            aggregateIds = new String[READ_AGGREGATES];
+            for (int i = 0; i < READ_AGGREGATES; i++) {
+                aggregateIds[i] = "product-" + iteration + "-" + i;
+                store.saveEvents(aggregateIds[i], Fixtures.history(aggregateIds[i], historyLength), -1);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (context == null) {
+                return;
+            }
+            context.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        String aggregateId;
+        int version;
+        StockUpdatedEvent event;
+
+        @Setup(Level.Iteration)
+        public void setUp(Store store) {
+            aggregateId = "writer-" + store.writers.incrementAndGet();
+            store.store.saveEvents(aggregateId, Fixtures.history(aggregateId, store.historyLength), -1);
+            version = store.historyLength - 1;
+            event = Fixtures.stockUpdated(aggregateId, 10);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        int next;
+    }
+
+    private static void append(Store store, Writer writer) {
+        store.store.saveEvents(writer.aggregateId, List.of(writer.event), writer.version);
+        writer.version++;
+    }
+
+    private static List<BaseEvent> read(Store store, Reader reader) {
+        reader.next = (reader.next + 1) % READ_AGGREGATES;
+        return store.store.getEvents(store.aggregateIds[reader.next]);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void saveEvents(Store store, Writer writer) {
+        append(store, writer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void saveEventsFourThreads(Store store, Writer writer) {
+        append(store, writer);
+    }
+
+    // Every store checks the version the append was based on, so the threads race for each one
+    @Benchmark
+    @Threads(4)
+    public void saveEventsSameAggregateFourThreads(Store store, Writer writer) {
+        String aggregateId = store.aggregateIds[0];
+        while (true) {
+            try {
+                store.store.saveEvents(aggregateId, List.of(writer.event), store.store.getCurrentVersion(aggregateId));
+                return;
+            } catch (ConcurrencyException e) {
+                // Lost the race; the winner's append is the new version to build on
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<BaseEvent> getEvents(Store store, Reader reader) {
+        return read(store, reader);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<BaseEvent> getEventsFourThreads(Store store, Reader reader) {
+        return read(store, reader);
+    }
+}
@@ -0,0 +1,68 @@
+package com.distributedinventory.benchmarks;
+
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.EventStoreImpl;
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.serialization.BinaryEventSerializer;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
+import com.distributedinventory.cqrs.core.serialization.ProductCreatedEventCodec;
+import com.distributedinventory.cqrs.core.serialization.StockUpdatedEventCodec;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Events and components shared by the benchmarks, built the way the command service builds them.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    static EventSerializer serializer() {
+        return new BinaryEventSerializer(List.of(new ProductCreatedEventCodec(), new StockUpdatedEventCodec()), List.of());
+    }
+
+    static EventStoreImpl memoryEventStore() {
+        return new EventStoreImpl(serializer());
+    }
+
+    static ProductCreatedEvent productCreated(String productId) {
+        return ProductCreatedEvent.builder()
+                .id(productId)
+                .name("Benchmark product")
+                .description("Product used by the benchmarks")
+                .category("benchmarks")
+                .price(new BigDecimal("19.99"))
+                .storeId("store-1")
+                .initialAmount(1_000)
+                .createdDate(new Date())
+                .build();
+    }
+
+    static StockUpdatedEvent stockUpdated(String productId, int newAmount) {
+        return StockUpdatedEvent.builder()
+                .id(productId)
+                .operation("set")
+                .amount(newAmount)
+                .newAmount(newAmount)
+                .reason("benchmark")
+                .updatedDate(new Date())
+                .build();
+    }
+
+    /**
+     * @return A creation event followed by stock updates, {@code length} events in total
+     */
+    static List<BaseEvent> history(String productId, int length) {
+        List<BaseEvent> events = new ArrayList<>(length);
+        events.add(productCreated(productId));
+        for (int i = 1; i < length; i++) {
+            events.add(stockUpdated(productId, i));
+        }
+        return events;
+    }
+}
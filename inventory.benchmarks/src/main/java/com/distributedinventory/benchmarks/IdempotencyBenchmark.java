@@ -0,0 +1,126 @@
+package com.distributedinventory.benchmarks;
+
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.MappedIdempotencyService;
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * {@link IdempotencyService} lookups and stores from four threads over a small, hot key space
+ * and a large one, plus a mixed group of three readers and one writer. {@code claimAndStore}
+ * follows the life of a new request: claim a fresh key, then store its result, with the store
+ * full so every claim also evicts. Each runs against the heap store and the memory-mapped one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdempotencyBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service {
+        @Param({"64", "65536"})
+        int keySpace;
+
+        @Param({"memory", "mapped"})
+        String store;
+
+        IdempotencyService service;
+        String[] keys;
+        IdempotencyService.IdempotencyResult result;
+        Path directory;
+
+        @Setup
+        public void setUp() throws IOException {
+            if (store.equals("mapped")) {
+                directory = Files.createTempDirectory("idempotency-benchmark");
+                var mapped = new MappedIdempotencyService(directory.toString(), 64 << 20, keySpace, 60, 86400);
+                mapped.open();
+                service = mapped;
+            } else {
+                service = new IdempotencyServiceImpl(keySpace, 64L << 20, 60, 86400);
+            }
+            byte[] body = "{\"message\":\"Stock update command accepted\",\"productId\":\"4f1c2a9e-8b7d-4c3e-9a51-2d6f0e8b7c14\",\"version\":\"12\"}"
+                    .getBytes(StandardCharsets.UTF_8);
+            result = IdempotencyService.IdempotencyResult.completed(202, "application/json", body, 42L);
+            keys = new String[keySpace];
+            for (int i = 0; i < keySpace; i++) {
+                keys[i] = "idempotency-key-" + i;
+                service.storeResult(keys[i], result);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            if (service instanceof MappedIdempotencyService mapped) {
+                mapped.close();
+                try (Stream<Path> files = Files.walk(directory)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Keys {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        final SplittableRandom random = new SplittableRandom();
+        final String prefix = "new-key-" + THREADS.incrementAndGet() + "-";
+        long created;
+
+        String next(Service service) {
+            return service.keys[random.nextInt(service.keys.length)];
+        }
+
+        String fresh() {
+            return prefix + created++;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public IdempotencyService.IdempotencyResult getResult(Service service, Keys keys) {
+        return service.service.getResult(keys.next(service));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void storeResult(Service service, Keys keys) {
+        service.service.storeResult(keys.next(service), service.result);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean claimAndStore(Service service, Keys keys) {
+        String key = keys.fresh();
+        boolean owned = service.service.claim(key, 42L).isOwned();
+        service.service.storeResult(key, service.result);
+        return owned;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public IdempotencyService.IdempotencyResult mixedGet(Service service, Keys keys) {
+        return service.service.getResult(keys.next(service));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedStore(Service service, Keys keys) {
+        service.service.storeResult(keys.next(service), service.result);
+    }
+}
@@ -0,0 +1,143 @@
+package com.distributedinventory.benchmarks;
+
+import com.bankcqrsexample.account.query.query.api.dto.AvailabilityResponse;
+import com.bankcqrsexample.account.query.query.api.dto.ProductResponse;
+import com.bankcqrsexample.account.query.query.api.dto.ProductSearchRequest;
+import com.bankcqrsexample.account.query.query.api.dto.ProductSearchResponse;
+import com.bankcqrsexample.account.query.query.domain.AvailabilityProjection;
+import com.bankcqrsexample.account.query.query.domain.ProductSearchIndex;
+import com.bankcqrsexample.account.query.query.domain.ProductView;
+import com.bankcqrsexample.account.query.query.domain.ProductViewRepository;
+import com.bankcqrsexample.account.query.query.infrastructure.ProductReadCache;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A product read as {@code GET /v1/products/{id}} does it, through the {@link ProductReadCache}
+ * and straight from the view table, against the query service's JPA setup on in-memory H2; and
+ * an availability read as {@code GET /v1/availability} does it, from the {@link AvailabilityProjection}; and
+ * a page of a store's low-stock products by price as {@code GET /v1/products/search} reads it from the
+ * {@link ProductSearchIndex}
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductReadBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class QueryService {
+        @Param({"2000"})
+        int products;
+
+        ConfigurableApplicationContext context;
+        ProductViewRepository repository;
+        ProductReadCache cache;
+        AvailabilityProjection availability;
+        ProductSearchIndex searchIndex;
+        String[] productIds;
+
+        @Setup
+        public void setUp() {
+            // Both services' classes share this classpath, so the query side's settings are passed explicitly
+            context = new SpringApplicationBuilder(com.bankcqrsexample.account.query.query.Application.class)
+                    .run("--spring.main.web-application-type=none",
+                            "--spring.datasource.url=jdbc:h2:mem:readBenchmark",
+                            "--spring.kafka.listener.auto-startup=false",
+                            "--spring.jpa.show-sql=false",
+                            "--spring.jpa.properties.hibernate.show_sql=false",
+                            "--logging.level.root=WARN");
+            repository = context.getBean(ProductViewRepository.class);
+            cache = context.getBean(ProductReadCache.class);
+            availability = context.getBean(AvailabilityProjection.class);
+            searchIndex = context.getBean(ProductSearchIndex.class);
+
+            productIds = new String[products];
+            List<ProductView> views = new ArrayList<>(products);
+            for (int i = 0; i < products; i++) {
+                productIds[i] = "product-" + i;
+                views.add(ProductView.builder()
+                        .id(productIds[i])
+                        .name("Benchmark product " + i)
+                        .description("A product for the read benchmark")
+                        .category("benchmarks")
+                        .price(BigDecimal.valueOf(100 + i % 997, 2))
+                        .storeId("store-" + (i % 8))
+                        .amount(i % 50)
+                        .createdDate(LocalDateTime.now())
+                        .updatedDate(LocalDateTime.now())
+                        .build());
+            }
+            List<ProductView> saved = repository.saveAll(views);
+            cache.putAll(saved);
+            searchIndex.putAll(saved);
+            for (int i = 0; i < products; i++) {
+                availability.created(productIds[i], "store-" + (i % 8), 1_000, 1, System.currentTimeMillis());
+            }
+        }
+
+        @TearDown
+        public void tearDown() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        final SplittableRandom random = new SplittableRandom();
+
+        ProductSearchRequest nextSearch() {
+            return ProductSearchRequest.builder()
+                    .storeId("store-" + random.nextInt(8))
+                    .maxAmount(4)
+                    .sort("price")
+                    .limit(20)
+                    .build();
+        }
+
+        String nextProduct(QueryService service) {
+            return service.productIds[random.nextInt(service.productIds.length)];
+        }
+    }
+
+    @Benchmark
+    public ProductResponse cached(QueryService service, Client client) {
+        return service.cache.get(client.nextProduct(service), service.repository::findById);
+    }
+
+    @Benchmark
+    public ProductResponse uncached(QueryService service, Client client) {
+        return service.repository.findById(client.nextProduct(service)).map(ProductResponse::from).orElse(null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ProductResponse cachedFourThreads(QueryService service, Client client) {
+        return cached(service, client);
+    }
+
+    @Benchmark
+    public AvailabilityResponse availability(QueryService service, Client client) {
+        return service.availability.get(client.nextProduct(service), null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AvailabilityResponse availabilityFourThreads(QueryService service, Client client) {
+        return availability(service, client);
+    }
+
+    @Benchmark
+    public ProductSearchResponse search(QueryService service, Client client) {
+        return service.searchIndex.search(client.nextSearch());
+    }
+}
@@ -0,0 +1,91 @@
+package com.distributedinventory.benchmarks;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding a {@link StockUpdatedEvent} with Jackson, as the event payload used to
+ * be, and with the binary event codec that replaced it. The serialize benchmarks also report the
+ * size of the payload they wrote as the {@code bytesPerEvent} secondary result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private EventSerializer eventSerializer;
+    private StockUpdatedEvent event;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        eventSerializer = Fixtures.serializer();
+        event = Fixtures.stockUpdated("5b0b6a4e-6a8e-4b4e-9a55-0f4f7d1c2a31", 97);
+        event.setVersion(42);
+        json = objectMapper.writeValueAsBytes(event);
+        binary = eventSerializer.serialize(event);
+    }
+
+    /**
+     * Payload size of the events serialized. JMH sums event counters over the measurement
+     * iterations, so the size is recorded in the first one only and the others report zero.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long bytesPerEvent;
+        private boolean measured;
+        private boolean recording;
+
+        @Setup(Level.Iteration)
+        public void startIteration(IterationParams iteration) {
+            bytesPerEvent = 0;
+            recording = iteration.getType() == IterationType.MEASUREMENT && !measured;
+            measured |= recording;
+        }
+
+        void record(byte[] payload) {
+            if (recording) {
+                bytesPerEvent = payload.length;
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] jacksonSerialize(PayloadSize size) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(event);
+        size.record(payload);
+        return payload;
+    }
+
+    @Benchmark
+    public StockUpdatedEvent jacksonDeserialize() throws IOException {
+        return objectMapper.readValue(json, StockUpdatedEvent.class);
+    }
+
+    @Benchmark
+    public byte[] binarySerialize(PayloadSize size) {
+        byte[] payload = eventSerializer.serialize(event);
+        size.record(payload);
+        return payload;
+    }
+
+    @Benchmark
+    public BaseEvent binaryDeserialize() {
+        return eventSerializer.deserialize("StockUpdatedEvent", binary);
+    }
+}
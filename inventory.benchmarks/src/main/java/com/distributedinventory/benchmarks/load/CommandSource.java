@@ -0,0 +1,8 @@
+package com.distributedinventory.benchmarks.load;
+
+/**
+ * Supplies the command stream. Called from the single scheduling thread only.
+ */
+interface CommandSource {
+    LoadCommand next(ProductPool products);
+}
@@ -0,0 +1,13 @@
+package com.distributedinventory.benchmarks.load;
+
+/**
+ * One command to send. {@code productId} is null for creates, whose id the service assigns.
+ */
+record LoadCommand(Type type, String productId, int amount) {
+
+    enum Type {
+        CREATE,
+        PURCHASE,
+        RESTOCK
+    }
+}
@@ -0,0 +1,300 @@
+package com.distributedinventory.benchmarks.load;
+
+import com.distributedinventory.cqrs.core.events.EventTopics;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Open-loop load test of the whole pipeline in one JVM: an embedded Kafka broker, the command
+ * service and the query service. Commands are sent over HTTP at a fixed rate per stage whether or
+ * not earlier ones have completed, and latency is measured from the time each command was due,
+ * so a stalled service shows up as latency instead of as a lower send rate. For every accepted
+ * command it reports acceptance latency and the time until the query projection reflects it.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.distributedinventory.benchmarks.load.LoadGenerator \
+ *     --rates=500,1000,2000 --stage-seconds=30 --mix=create=2,purchase=60,restock=38
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private static final int SETUP_CONCURRENCY = 32;
+
+    private final LoadOptions options;
+    private final PrintStream report;
+    private final VisibilityTracker tracker = new VisibilityTracker();
+    private final ProductPool products = new ProductPool();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private HttpClient client;
+    private URI commandService;
+
+    private LoadGenerator(LoadOptions options, PrintStream report) {
+        this.options = options;
+        this.report = report;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var options = LoadOptions.parse(args);
+        if (options.products < 1) {
+            throw new IllegalArgumentException("--products must be at least 1");
+        }
+        // Keep the report readable: whatever the services print goes to the app log
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(Files.newOutputStream(options.appLog), false));
+        try {
+            new LoadGenerator(options, report).run();
+        } finally {
+            System.out.flush();
+        }
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        var broker = new EmbeddedKafkaBroker(1, true, options.partitions, EventTopics.STOCK_EVENTS);
+        broker.afterPropertiesSet();
+        String servers = broker.getBrokersAsString();
+
+        ConfigurableApplicationContext query = null;
+        ConfigurableApplicationContext cmd = null;
+        try {
+            query = startQueryService(servers);
+            cmd = startCommandService(servers);
+            commandService = URI.create("http://localhost:" + ((WebServerApplicationContext) cmd).getWebServer().getPort());
+            client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(10))
+                    .executor(Executors.newFixedThreadPool(4, daemon("load-http")))
+                    .build();
+
+            CommandSource source = options.requestsFile != null
+                    ? new RecordedCommandSource(options.requestsFile)
+                    : new SyntheticCommandSource(options);
+
+            report.printf("Creating %d products through %s%n", options.products, commandService);
+            createProducts();
+
+            if (options.warmupSeconds > 0) {
+                report.printf("Warming up at %d cmd/s for %d s%n", options.rates[0], options.warmupSeconds);
+                runStage(source, new StageStats("warmup", options.rates[0]), options.warmupSeconds);
+                drain();
+            }
+
+            List<StageStats> stages = new ArrayList<>();
+            for (int rate : options.rates) {
+                var stage = new StageStats("rate-" + rate, rate);
+                runStage(source, stage, options.stageSeconds);
+                int notVisible = drain();
+                stage.print(report, notVisible);
+                if (options.histogramDir != null) {
+                    stage.writeHistograms(options.histogramDir);
+                }
+                stages.add(stage);
+            }
+            printSummary(stages);
+        } finally {
+            if (cmd != null) {
+                cmd.close();
+            }
+            if (query != null) {
+                query.close();
+            }
+            broker.destroy();
+        }
+    }
+
+    private ConfigurableApplicationContext startQueryService(String servers) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadQuery",
+                "--spring.kafka.bootstrap-servers=" + servers,
+                "--spring.kafka.consumer.bootstrap-servers=" + servers,
+                "--spring.kafka.consumer.group-id=inventoryConsumer",
+                "--spring.kafka.consumer.auto-offset-reset=earliest",
+                "--spring.kafka.consumer.key-deserializer=org.apache.kafka.common.serialization.StringDeserializer",
+                "--spring.kafka.consumer.value-deserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer",
+                "--spring.kafka.consumer.enable-auto-commit=false",
+                "--spring.kafka.consumer.fetch-min-size=64KB",
+                "--spring.kafka.consumer.fetch-max-wait=20ms",
+                "--spring.kafka.listener.ack-mode=manual",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.show_sql=false",
+                "--logging.level.root=WARN"));
+        args.addAll(options.queryArgs);
+        // Both services' classes share this classpath, so all settings the query side needs are passed explicitly
+        return new SpringApplicationBuilder(com.bankcqrsexample.account.query.query.Application.class)
+                .initializers(context -> ((GenericApplicationContext) context)
+                        .registerBean("visibilityTracker", VisibilityTracker.class, () -> tracker))
+                .run(args.toArray(String[]::new));
+    }
+
+    private ConfigurableApplicationContext startCommandService(String servers) {
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadCmd",
+                "--spring.kafka.bootstrap-servers=" + servers,
+                "--spring.kafka.producer.bootstrap-servers=" + servers,
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.show_sql=false",
+                "--logging.level.root=WARN"));
+        args.addAll(options.cmdArgs);
+        return new SpringApplicationBuilder(com.bankcqrsexample.account.cmd.cmd.Application.class)
+                .run(args.toArray(String[]::new));
+    }
+
+    private void createProducts() {
+        var setup = new StageStats("setup", 0);
+        for (int i = 0; i < options.products; i++) {
+            await(() -> inFlight.get() < SETUP_CONCURRENCY, Long.MAX_VALUE);
+            send(new LoadCommand(LoadCommand.Type.CREATE, null, 0), setup, System.nanoTime());
+        }
+        drain();
+        if (products.size() < options.products) {
+            throw new IllegalStateException("Only " + products.size() + " of " + options.products
+                    + " products were created; outcomes " + setup.outcomes);
+        }
+    }
+
+    private void runStage(CommandSource source, StageStats stage, int seconds) {
+        double intervalNanos = 1e9 / stage.targetRate;
+        long durationNanos = TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+        for (long i = 0; ; i++) {
+            long due = start + (long) (i * intervalNanos);
+            if (due - start >= durationNanos) {
+                break;
+            }
+            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            // Beyond this the client itself would become the bottleneck; count it instead of waiting
+            if (inFlight.get() >= options.maxInFlight) {
+                stage.shed.increment();
+                continue;
+            }
+            stage.sent.increment();
+            send(source.next(products), stage, due);
+        }
+        stage.elapsedNanos = System.nanoTime() - start;
+    }
+
+    private void send(LoadCommand command, StageStats stage, long dueNanos) {
+        inFlight.incrementAndGet();
+        client.sendAsync(request(command), HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    try {
+                        completed(command, stage, dueNanos, response, error);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+    }
+
+    private void completed(LoadCommand command, StageStats stage, long dueNanos, HttpResponse<String> response, Throwable error) {
+        long now = System.nanoTime();
+        if (error != null) {
+            stage.outcome("io-error");
+            return;
+        }
+        stage.outcome(String.valueOf(response.statusCode()));
+        if (response.statusCode() / 100 != 2) {
+            return;
+        }
+        stage.acceptance.recordValue((now - dueNanos) / 1_000);
+        try {
+            JsonNode body = objectMapper.readTree(response.body());
+            String productId = body.path("productId").asText();
+            int version = Integer.parseInt(body.path("version").asText());
+            if (command.type() == LoadCommand.Type.CREATE) {
+                products.add(productId);
+            }
+            tracker.accepted(productId, version, dueNanos, stage.visibility);
+        } catch (IOException | NumberFormatException e) {
+            stage.outcome("unreadable-response");
+        }
+    }
+
+    private HttpRequest request(LoadCommand command) {
+        var builder = HttpRequest.newBuilder()
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", UUID.randomUUID().toString());
+        return switch (command.type()) {
+            case CREATE -> builder.uri(commandService.resolve("/v1/products"))
+                    .POST(HttpRequest.BodyPublishers.ofString(String.format(
+                            "{\"name\":\"Load test product\",\"description\":\"Created by the load generator\","
+                                    + "\"category\":\"load\",\"price\":9.99,\"storeId\":\"store-1\",\"initialAmount\":%d}",
+                            options.initialAmount)))
+                    .build();
+            case PURCHASE, RESTOCK -> builder.uri(commandService.resolve("/v1/products/" + command.productId() + "/stock"))
+                    .PUT(HttpRequest.BodyPublishers.ofString(String.format(
+                            "{\"operation\":\"%s\",\"amount\":%d,\"reason\":\"load test\"}",
+                            command.type() == LoadCommand.Type.PURCHASE ? "purchase" : "restock", command.amount())))
+                    .build();
+        };
+    }
+
+    /**
+     * Wait for outstanding responses and then for the projection to catch up, so stages don't overlap
+     * @return Accepted commands still not visible when the drain timed out
+     */
+    private int drain() {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.drainSeconds);
+        await(() -> inFlight.get() == 0, deadline);
+        await(() -> tracker.pending() == 0, deadline);
+        return tracker.pending();
+    }
+
+    private static void await(BooleanSupplier condition, long deadlineNanos) {
+        while (!condition.getAsBoolean() && System.nanoTime() - deadlineNanos < 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+        }
+    }
+
+    private void printSummary(List<StageStats> stages) {
+        report.printf("%n%-12s %10s %14s %14s %14s %14s %10s%n",
+                "stage", "achieved/s", "accept p50 ms", "accept p99 ms", "visible p50 ms", "visible p99 ms", "non-2xx");
+        for (StageStats stage : stages) {
+            long accepted = stage.acceptance.getTotalCount();
+            report.printf("%-12s %10.0f %14.2f %14.2f %14.2f %14.2f %10d%n",
+                    stage.name,
+                    accepted / (stage.elapsedNanos / 1e9),
+                    stage.acceptance.getValueAtPercentile(50) / 1_000.0,
+                    stage.acceptance.getValueAtPercentile(99) / 1_000.0,
+                    stage.visibility.getValueAtPercentile(50) / 1_000.0,
+                    stage.visibility.getValueAtPercentile(99) / 1_000.0,
+                    stage.sent.sum() - accepted);
+        }
+    }
+
+    private static java.util.concurrent.ThreadFactory daemon(String name) {
+        var counter = new AtomicInteger();
+        return runnable -> {
+            var thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
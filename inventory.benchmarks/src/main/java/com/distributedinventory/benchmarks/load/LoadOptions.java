@@ -0,0 +1,86 @@
+package com.distributedinventory.benchmarks.load;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command line of the load generator, {@code --name=value} pairs. Arguments starting with
+ * {@code --cmd.} or {@code --query.} are passed, without the prefix, to that service.
+ */
+final class LoadOptions {
+
+    int[] rates = {200};
+    int stageSeconds = 30;
+    int warmupSeconds = 10;
+    int products = 100;
+    int initialAmount = 1_000_000;
+    int createWeight = 2;
+    int purchaseWeight = 60;
+    int restockWeight = 38;
+    Path requestsFile;
+    int maxInFlight = 2_000;
+    int drainSeconds = 30;
+    int partitions = 3;
+    Path histogramDir;
+    Path appLog = Path.of("load-generator-app.log");
+    final List<String> cmdArgs = new ArrayList<>();
+    final List<String> queryArgs = new ArrayList<>();
+
+    static LoadOptions parse(String[] args) {
+        var options = new LoadOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.startsWith("cmd.")) {
+                options.cmdArgs.add("--" + name.substring(4) + "=" + value);
+                continue;
+            }
+            if (name.startsWith("query.")) {
+                options.queryArgs.add("--" + name.substring(6) + "=" + value);
+                continue;
+            }
+            switch (name) {
+                case "rates" -> options.rates = Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+                case "stage-seconds" -> options.stageSeconds = Integer.parseInt(value);
+                case "warmup-seconds" -> options.warmupSeconds = Integer.parseInt(value);
+                case "products" -> options.products = Integer.parseInt(value);
+                case "initial-amount" -> options.initialAmount = Integer.parseInt(value);
+                case "mix" -> options.parseMix(value);
+                case "requests" -> options.requestsFile = Path.of(value);
+                case "max-in-flight" -> options.maxInFlight = Integer.parseInt(value);
+                case "drain-seconds" -> options.drainSeconds = Integer.parseInt(value);
+                case "partitions" -> options.partitions = Integer.parseInt(value);
+                case "histogram-dir" -> options.histogramDir = Path.of(value);
+                case "app-log" -> options.appLog = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option --" + name);
+            }
+        }
+        if (options.rates.length == 0 || Arrays.stream(options.rates).anyMatch(rate -> rate <= 0)) {
+            throw new IllegalArgumentException("--rates must be positive commands per second");
+        }
+        return options;
+    }
+
+    // e.g. create=2,purchase=60,restock=38
+    private void parseMix(String value) {
+        createWeight = purchaseWeight = restockWeight = 0;
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split("=");
+            int weight = Integer.parseInt(pair[1].trim());
+            switch (pair[0].trim()) {
+                case "create" -> createWeight = weight;
+                case "purchase" -> purchaseWeight = weight;
+                case "restock" -> restockWeight = weight;
+                default -> throw new IllegalArgumentException("Unknown command type in --mix: " + pair[0]);
+            }
+        }
+        if (createWeight + purchaseWeight + restockWeight <= 0) {
+            throw new IllegalArgumentException("--mix needs at least one positive weight");
+        }
+    }
+}
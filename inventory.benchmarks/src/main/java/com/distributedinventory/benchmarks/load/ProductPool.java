@@ -0,0 +1,29 @@
+package com.distributedinventory.benchmarks.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Ids of the products created so far; grows when a create in the mix is accepted.
+ */
+final class ProductPool {
+
+    private final List<String> ids = new ArrayList<>();
+
+    synchronized void add(String productId) {
+        ids.add(productId);
+    }
+
+    synchronized int size() {
+        return ids.size();
+    }
+
+    synchronized String get(int index) {
+        return ids.get(Math.floorMod(index, ids.size()));
+    }
+
+    synchronized String random(SplittableRandom random) {
+        return ids.get(random.nextInt(ids.size()));
+    }
+}
@@ -0,0 +1,62 @@
+package com.distributedinventory.benchmarks.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Replays commands from a JSON Lines file, starting over when it runs out. Each line is
+ * {@code {"type": "create|purchase|restock", "product": 3, "amount": 2}}; product ids are assigned
+ * by the service, so {@code product} is an index into the products created so far and a
+ * random one is used when it is missing.
+ */
+final class RecordedCommandSource implements CommandSource {
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final List<Entry> entries = new ArrayList<>();
+    private int next;
+
+    RecordedCommandSource(Path file) throws IOException {
+        var objectMapper = new ObjectMapper();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file)) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node = objectMapper.readTree(line);
+            String type = node.path("type").asText("");
+            try {
+                entries.add(new Entry(LoadCommand.Type.valueOf(type.toUpperCase(Locale.ROOT)),
+                        node.has("product") ? node.get("product").asInt() : null,
+                        node.path("amount").asInt(1)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file + ":" + lineNumber + ": unknown command type '" + type + "'");
+            }
+        }
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException(file + " has no commands");
+        }
+    }
+
+    @Override
+    public LoadCommand next(ProductPool products) {
+        Entry entry = entries.get(next);
+        next = (next + 1) % entries.size();
+        if (entry.type == LoadCommand.Type.CREATE) {
+            return new LoadCommand(LoadCommand.Type.CREATE, null, 0);
+        }
+        String productId = entry.product != null ? products.get(entry.product) : products.random(random);
+        return new LoadCommand(entry.type, productId, entry.amount);
+    }
+
+    private record Entry(LoadCommand.Type type, Integer product, int amount) {
+    }
+}
@@ -0,0 +1,79 @@
+package com.distributedinventory.benchmarks.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome counts and latency histograms, in microseconds, for one rate stage.
+ */
+final class StageStats {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = 3_600_000_000L;
+
+    final String name;
+    final int targetRate;
+    final Histogram acceptance = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    final Histogram visibility = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    final LongAdder sent = new LongAdder();
+    final LongAdder shed = new LongAdder();
+    final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    long elapsedNanos;
+
+    StageStats(String name, int targetRate) {
+        this.name = name;
+        this.targetRate = targetRate;
+    }
+
+    void outcome(String outcome) {
+        outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+    }
+
+    void print(PrintStream out, int notVisible) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%n== %s: target %d cmd/s, sent %d in %.1f s (%.0f cmd/s), shed %d%n",
+                name, targetRate, sent.sum(), seconds, sent.sum() / seconds, shed.sum());
+        out.println("   outcomes: " + new TreeMap<>(outcomes));
+        printLatency(out, "accepted  ", acceptance);
+        printLatency(out, "visible   ", visibility);
+        if (notVisible > 0) {
+            out.printf("   %d accepted commands never reached the projection%n", notVisible);
+        }
+    }
+
+    void writeHistograms(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        write(directory.resolve(name + "-acceptance.hgrm"), acceptance);
+        write(directory.resolve(name + "-visibility.hgrm"), visibility);
+    }
+
+    private static void printLatency(PrintStream out, String label, Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            out.println("   " + label + "no samples");
+            return;
+        }
+        out.printf("   %scount %d  mean %.2f ms  p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f ms%n",
+                label, histogram.getTotalCount(), histogram.getMean() / 1_000,
+                millis(histogram, 50), millis(histogram, 90), millis(histogram, 99), millis(histogram, 99.9),
+                histogram.getMaxValue() / 1_000.0);
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1_000.0;
+    }
+
+    // Percentile distribution in milliseconds, the format HdrHistogram's plotter reads
+    private static void write(Path file, Histogram histogram) throws IOException {
+        try (var out = new PrintStream(Files.newOutputStream(file))) {
+            histogram.outputPercentileDistribution(out, 1_000.0);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.distributedinventory.benchmarks.load;
+
+import java.util.SplittableRandom;
+
+/**
+ * Weighted random mix of creates, purchases and restocks over uniformly chosen products.
+ * Purchases and restocks move one to five units, so the stock loaded at creation lasts the run.
+ */
+final class SyntheticCommandSource implements CommandSource {
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final int createWeight;
+    private final int purchaseWeight;
+    private final int totalWeight;
+
+    SyntheticCommandSource(LoadOptions options) {
+        this.createWeight = options.createWeight;
+        this.purchaseWeight = options.purchaseWeight;
+        this.totalWeight = options.createWeight + options.purchaseWeight + options.restockWeight;
+    }
+
+    @Override
+    public LoadCommand next(ProductPool products) {
+        int pick = random.nextInt(totalWeight);
+        if (pick < createWeight) {
+            return new LoadCommand(LoadCommand.Type.CREATE, null, 0);
+        }
+        var type = pick < createWeight + purchaseWeight ? LoadCommand.Type.PURCHASE : LoadCommand.Type.RESTOCK;
+        return new LoadCommand(type, products.random(random), 1 + random.nextInt(5));
+    }
+}
@@ -0,0 +1,90 @@
+package com.distributedinventory.benchmarks.load;
+
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionAppliedEvent;
+import com.distributedinventory.cqrs.core.events.EventTopics;
+import org.HdrHistogram.Histogram;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.PayloadApplicationEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures command-to-projection visibility. Registered as a listener in the query service, it
+ * sees every event once the projection has applied its batch; an accepted command counts as
+ * visible once its product's projection has reached the version the command produced.
+ */
+final class VisibilityTracker implements ApplicationListener<PayloadApplicationEvent<ProjectionAppliedEvent>> {
+
+    private final Map<String, Progress> products = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * @param startNanos When the command was scheduled to be sent, so queueing anywhere counts
+     * @param histogram Histogram of the stage the command was sent in, in microseconds
+     */
+    void accepted(String productId, int version, long startNanos, Histogram histogram) {
+        products.computeIfAbsent(productId, id -> new Progress()).accepted(version, startNanos, histogram);
+    }
+
+    int pending() {
+        return pending.get();
+    }
+
+    @Override
+    public void onApplicationEvent(PayloadApplicationEvent<ProjectionAppliedEvent> event) {
+        for (ConsumerRecord<String, byte[]> record : event.getPayload().records()) {
+            projected(record);
+        }
+    }
+
+    private void projected(ConsumerRecord<String, byte[]> record) {
+        Header version = record.headers().lastHeader(EventTopics.VERSION_HEADER);
+        if (record.key() == null || version == null) {
+            return;
+        }
+        products.computeIfAbsent(record.key(), id -> new Progress())
+                .projected(Integer.parseInt(new String(version.value(), StandardCharsets.UTF_8)));
+    }
+
+    private final class Progress {
+        private int projectedVersion = -1;
+        private final TreeMap<Integer, Waiting> waiting = new TreeMap<>();
+
+        synchronized void accepted(int version, long startNanos, Histogram histogram) {
+            // The projection can get there before the HTTP response does
+            if (version <= projectedVersion) {
+                record(histogram, startNanos, System.nanoTime());
+                return;
+            }
+            waiting.put(version, new Waiting(startNanos, histogram));
+            pending.incrementAndGet();
+        }
+
+        synchronized void projected(int version) {
+            projectedVersion = Math.max(projectedVersion, version);
+            var visible = waiting.headMap(version, true);
+            if (visible.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime();
+            for (Waiting command : visible.values()) {
+                record(command.histogram, command.startNanos, now);
+            }
+            pending.addAndGet(-visible.size());
+            visible.clear();
+        }
+    }
+
+    private static void record(Histogram histogram, long startNanos, long endNanos) {
+        histogram.recordValue(Math.max(0, (endNanos - startNanos) / 1_000));
+    }
+
+    private record Waiting(long startNanos, Histogram histogram) {
+    }
+}
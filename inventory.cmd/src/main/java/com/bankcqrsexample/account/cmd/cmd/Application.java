@@ -1,7 +1,12 @@
 package com.bankcqrsexample.account.cmd.cmd;
 
 import com.bankcqrsexample.account.cmd.cmd.api.commands.*;
+import com.bankcqrsexample.account.cmd.cmd.domain.ProductAggregate;
 import com.bankcqrsexample.account.cmd.cmd.infrastructure.ProductCommandDispatcher;
+import com.distributedinventory.cqrs.core.domain.AggregateRoot;
+import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.handlers.EventSourcingHandler;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
@@ -24,6 +29,10 @@ public class Application {
     @Autowired
     @Lazy
     private CommandHandler commandHandler;
+    
+    @Autowired
+    @Lazy
+    private EventSourcingHandler<ProductAggregate> eventSourcingHandler;
 
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
@@ -31,7 +40,10 @@ public class Application {
 
     @PostConstruct
     public void registerHandlers() {
+        AggregateRoot.verifyHandlers(ProductAggregate.class, ProductCreatedEvent.class, StockUpdatedEvent.class);
         commandDispatcher.registerHandler(CreateProductCommand.class, commandHandler::handle);
         commandDispatcher.registerHandler(UpdateStockCommand.class, commandHandler::handle);
+        commandDispatcher.registerHandler(UpdateStockBatchCommand.class, commandHandler::handle);
+        eventSourcingHandler.registerAggregateFactory(ProductAggregate::new);
     }
 }
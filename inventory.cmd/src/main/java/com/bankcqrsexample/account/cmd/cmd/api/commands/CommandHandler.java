@@ -1,25 +1,63 @@
 package com.bankcqrsexample.account.cmd.cmd.api.commands;
 
 import com.bankcqrsexample.account.cmd.cmd.domain.ProductAggregate;
+import com.distributedinventory.cqrs.core.commands.CommandResult;
+import com.distributedinventory.cqrs.core.exceptions.AggregateNotFoundException;
 import com.distributedinventory.cqrs.core.handlers.EventSourcingHandler;
 import lombok.RequiredArgsConstructor;
+import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockBatchResult.ItemOutcome;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 @Lazy
 @RequiredArgsConstructor
 public class CommandHandler {
     private final EventSourcingHandler<ProductAggregate> eventSourcingHandler;
 
-    public void handle(CreateProductCommand command) {
+    public CommandResult handle(CreateProductCommand command) {
         var aggregate = new ProductAggregate(command.getId(), command.getName(), command.getDescription(), command.getCategory(), command.getPrice(), command.getStoreId(), command.getInitialAmount());
         eventSourcingHandler.save(aggregate);
+        return new CommandResult(aggregate.getId(), aggregate.getVersion());
     }
 
-    public void handle(UpdateStockCommand command) {
+    public CommandResult handle(UpdateStockCommand command) {
         var aggregate = eventSourcingHandler.getById(command.getId());
+        if (aggregate == null) {
+            throw new AggregateNotFoundException("Product not found: " + command.getId());
+        }
+        if (command.getExpectedVersion() != null) {
+            aggregate.validateVersion(command.getExpectedVersion());
+        }
         aggregate.updateStock(command.getOperation(), command.getAmount(), command.getReason());
         eventSourcingHandler.save(aggregate);
+        return new CommandResult(aggregate.getId(), aggregate.getVersion());
+    }
+
+    public CommandResult handle(UpdateStockBatchCommand command) {
+        var aggregate = eventSourcingHandler.getById(command.getId());
+        if (aggregate == null) {
+            throw new AggregateNotFoundException("Product not found: " + command.getId());
+        }
+        
+        // A rejected item raises no event, so the ones after it still apply to a consistent state
+        List<ItemOutcome> outcomes = new ArrayList<>(command.getItems().size());
+        int version = aggregate.getVersion();
+        for (UpdateStockCommand item : command.getItems()) {
+            try {
+                aggregate.updateStock(item.getOperation(), item.getAmount(), item.getReason());
+                outcomes.add(ItemOutcome.applied(++version));
+            } catch (RuntimeException e) {
+                outcomes.add(ItemOutcome.rejected(e.getMessage()));
+            }
+        }
+        
+        if (!aggregate.getUncommittedChanges().isEmpty()) {
+            eventSourcingHandler.save(aggregate);
+        }
+        return new UpdateStockBatchResult(aggregate.getId(), aggregate.getVersion(), outcomes);
     }
 }
@@ -0,0 +1,24 @@
+package com.bankcqrsexample.account.cmd.cmd.api.commands;
+
+import com.distributedinventory.cqrs.core.commands.BaseCommand;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Several stock updates for the same product, applied in order and saved with one append
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class UpdateStockBatchCommand extends BaseCommand {
+    
+    public UpdateStockBatchCommand(String id, List<UpdateStockCommand> items) {
+        super(id);
+        this.items = items;
+    }
+    
+    private List<UpdateStockCommand> items;
+}
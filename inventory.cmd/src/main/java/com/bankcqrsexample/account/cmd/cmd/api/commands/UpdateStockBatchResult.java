@@ -0,0 +1,40 @@
+package com.bankcqrsexample.account.cmd.cmd.api.commands;
+
+import com.distributedinventory.cqrs.core.commands.CommandResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(callSuper = true)
+public class UpdateStockBatchResult extends CommandResult {
+    
+    public UpdateStockBatchResult(String aggregateId, int version, List<ItemOutcome> outcomes) {
+        super(aggregateId, version);
+        this.outcomes = outcomes;
+    }
+    
+    // One outcome per item, in the order the items were submitted
+    private List<ItemOutcome> outcomes;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemOutcome {
+        private boolean applied;
+        private Integer version;
+        private String error;
+        
+        public static ItemOutcome applied(int version) {
+            return new ItemOutcome(true, version, null);
+        }
+        
+        public static ItemOutcome rejected(String error) {
+            return new ItemOutcome(false, null, error);
+        }
+    }
+}
@@ -22,4 +22,6 @@ public class UpdateStockCommand extends BaseCommand {
     private String operation;
     private Integer amount;
     private String reason;
+    // Version the client last saw (If-Match); checked on the lane just before the update. Null skips the check.
+    private Integer expectedVersion;
 }
@@ -1,11 +1,14 @@
 package com.bankcqrsexample.account.cmd.cmd.api.controllers;
 
+import com.distributedinventory.cqrs.core.events.EventModel;
 import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,6 +19,7 @@ import java.util.Map;
 public class EventsController {
     
     private final EventStore eventStore;
+    private final EventSerializer eventSerializer;
     
     @GetMapping
     public ResponseEntity<Map<String, Object>> getEvents(
@@ -24,7 +28,7 @@ public class EventsController {
             @RequestParam(required = false, defaultValue = "100") int limit) {
         
         try {
-            List<com.distributedinventory.cqrs.core.events.EventModel> events;
+            List<EventModel> events;
             
             if (aggregateId != null) {
                 events = eventStore.findByAggregateIdentifier(aggregateId);
@@ -35,8 +39,9 @@ public class EventsController {
             // Apply pagination
             int start = Math.min(offset, events.size());
             int end = Math.min(start + limit, events.size());
-            List<com.distributedinventory.cqrs.core.events.EventModel> paginatedEvents = 
-                events.subList(start, end);
+            List<Map<String, Object>> paginatedEvents = events.subList(start, end).stream()
+                    .map(this::toView)
+                    .toList();
             
             var response = Map.<String, Object>of(
                     "events", paginatedEvents,
@@ -80,4 +85,17 @@ public class EventsController {
             return ResponseEntity.notFound().build();
         }
     }
+    
+    // Payloads are binary; decode them so the listing stays readable
+    private Map<String, Object> toView(EventModel eventModel) {
+        Map<String, Object> view = new LinkedHashMap<>();
+        view.put("id", eventModel.getId());
+        view.put("timeStamp", eventModel.getTimeStamp());
+        view.put("aggregateIdentifier", eventModel.getAggregateIdentifier());
+        view.put("aggregateType", eventModel.getAggregateType());
+        view.put("version", eventModel.getVersion());
+        view.put("eventType", eventModel.getEventType());
+        view.put("eventData", eventSerializer.deserialize(eventModel.getEventType(), eventModel.getEventData()));
+        return view;
+    }
 }
@@ -1,10 +1,13 @@
 package com.bankcqrsexample.account.cmd.cmd.api.controllers;
 
 import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
+import com.fasterxml.jackson.databind.util.RawValue;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 @RestController
@@ -22,12 +25,20 @@ public class IdempotencyController {
             return ResponseEntity.notFound().build();
         }
         
+        // Recorded bodies are shown as they were sent: JSON inline, anything else as text
+        Object responseBody = "null";
+        if (result.getResponseBody() != null) {
+            String body = new String(result.getResponseBody(), StandardCharsets.UTF_8);
+            boolean json = MediaType.parseMediaType(result.getContentType()).isCompatibleWith(MediaType.APPLICATION_JSON);
+            responseBody = json ? new RawValue(body) : body;
+        }
+        
         var response = Map.of(
                 "key", key,
                 "status", result.getStatus().toString(),
                 "httpStatusCode", result.getHttpStatusCode(),
-                "responseBody", result.getResponseBody() != null ? result.getResponseBody() : "null",
-                "errorMessage", result.getErrorMessage() != null ? result.getErrorMessage() : "null"
+                "contentType", result.getContentType() != null ? result.getContentType() : "null",
+                "responseBody", responseBody
         );
         
         return ResponseEntity.ok(response);
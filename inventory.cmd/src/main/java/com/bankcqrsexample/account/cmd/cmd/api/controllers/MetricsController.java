@@ -1,57 +1,99 @@
 package com.bankcqrsexample.account.cmd.cmd.api.controllers;
 
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.OutboxRelay;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.ProductCommandDispatcher;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.PublishTracker;
+import com.distributedinventory.cqrs.core.infrastructure.AggregateCache;
+import com.distributedinventory.cqrs.core.infrastructure.GroupCommitter;
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
+import com.distributedinventory.cqrs.core.infrastructure.MeterStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * A readable summary of the meters Prometheus scrapes from /actuator/prometheus, plus the
+ * component stats that have no meter of their own
+ */
 @Slf4j
 @RestController
 @RequestMapping
 @RequiredArgsConstructor
 public class MetricsController {
-    
+
+    private final MeterRegistry meterRegistry;
+    private final AggregateCache aggregateCache;
+    private final ProductCommandDispatcher commandDispatcher;
+    private final GroupCommitter groupCommitter;
+    private final ObjectProvider<OutboxRelay> outboxRelay;
+    private final PublishTracker publishTracker;
+    private final IdempotencyService idempotencyService;
+
     @GetMapping("/metrics")
     public ResponseEntity<Map<String, Object>> getMetrics() {
-        // In a real implementation, you'd collect actual metrics from Micrometer, Prometheus, etc.
         var metrics = Map.<String, Object>of(
-                "jvm", Map.of(
-                        "memory", Map.of(
-                                "used", "256MB",
-                                "max", "512MB",
-                                "free", "256MB"
-                        ),
-                        "gc", Map.of(
-                                "collections", 42,
-                                "time", "125ms"
-                        )
-                ),
+                "jvm", MeterStats.jvm(meterRegistry),
+                "http", MeterStats.http(meterRegistry),
+                "commands", commands(),
+                "event_store", groupCommitter.getStats(),
                 "kafka", Map.of(
-                        "producer", Map.of(
-                                "messages_sent", 150,
-                                "errors", 0,
-                                "avg_latency", "2.5ms"
-                        ),
-                        "consumer", Map.of(
-                                "messages_consumed", 120,
-                                "lag", "0ms"
+                        "producer", publishTracker.getStats(),
+                        "client", Map.of(
+                                "records_sent", MeterStats.sum(meterRegistry, "kafka.producer.record.send.total"),
+                                "record_errors", MeterStats.sum(meterRegistry, "kafka.producer.record.error.total"),
+                                "record_retries", MeterStats.sum(meterRegistry, "kafka.producer.record.retry.total"),
+                                "request_latency_avg_ms", MeterStats.sum(meterRegistry, "kafka.producer.request.latency.avg"),
+                                "batch_size_avg_bytes", MeterStats.sum(meterRegistry, "kafka.producer.batch.size.avg")
                         )
                 ),
-                "http", Map.of(
-                        "requests_total", 1250,
-                        "requests_per_second", 15.5,
-                        "avg_response_time", "45ms"
-                ),
-                "events", Map.of(
-                        "events_processed", 89,
-                        "events_failed", 1,
-                        "events_pending", 0
-                ),
+                "idempotency", idempotency(),
+                "aggregate_cache", aggregateCache.getStats(),
+                "outbox", outboxRelay.stream().findFirst().map(OutboxRelay::getStats).orElse(Map.of("enabled", false)),
                 "timestamp", java.time.Instant.now().toString()
         );
-        
+
         return ResponseEntity.ok(metrics);
     }
+
+    private Map<String, Object> commands() {
+        // type -> outcome -> latency
+        Map<String, Map<String, Object>> byType = new TreeMap<>();
+        for (Timer timer : meterRegistry.find("inventory.commands").timers()) {
+            if (timer.count() > 0) {
+                byType.computeIfAbsent(timer.getId().getTag("type"), type -> new TreeMap<>())
+                        .put(timer.getId().getTag("outcome"), MeterStats.timer(timer));
+            }
+        }
+
+        Map<String, Object> commands = new LinkedHashMap<>();
+        commands.put("by_type", byType);
+        commands.put("lane_queue_capacity", commandDispatcher.getLaneQueueCapacity());
+        commands.put("lane_queue_depths", commandDispatcher.getQueueDepths());
+        return commands;
+    }
+
+    private Map<String, Object> idempotency() {
+        Map<String, Object> requests = new TreeMap<>();
+        for (Counter counter : meterRegistry.find("inventory.idempotency.requests").counters()) {
+            requests.put(counter.getId().getTag("outcome"), (long) counter.count());
+        }
+        long replayed = (long) requests.getOrDefault("replayed", 0L);
+        long claimed = (long) requests.getOrDefault("claimed", 0L);
+
+        Map<String, Object> idempotency = new LinkedHashMap<>();
+        idempotency.put("requests", requests);
+        // Share of keyed requests answered from the store rather than run
+        idempotency.put("hit_ratio", replayed + claimed == 0 ? 0.0 : (double) replayed / (replayed + claimed));
+        idempotency.put("store", idempotencyService.getStats());
+        return idempotency;
+    }
 }
@@ -1,19 +1,28 @@
 package com.bankcqrsexample.account.cmd.cmd.api.controllers;
 
 import com.bankcqrsexample.account.cmd.cmd.api.commands.CreateProductCommand;
+import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockBatchCommand;
+import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockBatchResult;
 import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockCommand;
-import com.bankcqrsexample.account.cmd.cmd.domain.ProductAggregate;
 import com.bankcqrsexample.account.cmd.cmd.infrastructure.ProductCommandDispatcher;
+import com.distributedinventory.cqrs.core.commands.CommandResult;
+import com.distributedinventory.cqrs.core.exceptions.AggregateNotFoundException;
+import com.distributedinventory.cqrs.core.exceptions.CommandRejectedException;
 import com.distributedinventory.cqrs.core.exceptions.ConcurrencyException;
-import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
-import com.distributedinventory.cqrs.core.handlers.EventSourcingHandler;
+import com.distributedinventory.cqrs.core.infrastructure.EventStore;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import jakarta.servlet.http.HttpServletRequest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping(path = "/v1")
@@ -21,148 +30,243 @@ import java.util.UUID;
 public class ProductCommandController {
 
     private final ProductCommandDispatcher commandDispatcher;
-    private final IdempotencyService idempotencyService;
-    private final EventSourcingHandler<ProductAggregate> eventSourcingHandler;
+    private final EventStore eventStore;
+
+    // How long a command may wait in its lane before it is dropped as expired
+    @Value("${inventory.commands.deadline-ms:5000}")
+    private long commandDeadlineMs;
+
+    @Value("${inventory.commands.bulk-max-items:1000}")
+    private int bulkMaxItems;
 
     @PostMapping("/products")
-    public ResponseEntity<Map<String, String>> createProduct(
+    public CompletableFuture<ResponseEntity<Map<String, String>>> createProduct(
             @RequestBody CreateProductRequest request,
-            @RequestHeader(value = "If-Match", required = false) String ifMatch,
-            HttpServletRequest httpRequest) {
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         
-        String idempotencyKey = (String) httpRequest.getAttribute("idempotencyKey");
+        var command = new CreateProductCommand(
+                UUID.randomUUID().toString(),
+                request.getName(),
+                request.getDescription(),
+                request.getCategory(),
+                request.getPrice(),
+                request.getStoreId(),
+                request.getInitialAmount()
+        );
+        command.setDeadline(Instant.now().plusMillis(commandDeadlineMs));
         
-        try {
-            var command = new CreateProductCommand(
-                    UUID.randomUUID().toString(),
-                    request.getName(),
-                    request.getDescription(),
-                    request.getCategory(),
-                    request.getPrice(),
-                    request.getStoreId(),
-                    request.getInitialAmount()
-            );
-            
-            commandDispatcher.send(command);
-            
-            Map<String, String> response = Map.of(
-                    "message", "Product creation command accepted",
-                    "productId", command.getId(),
-                    "version", "1"
-            );
-            
-            // Store successful result for idempotency
-            if (idempotencyKey != null) {
-                idempotencyService.storeResult(idempotencyKey, 
-                    IdempotencyService.IdempotencyResult.success(202, response));
-            }
-            
-            return ResponseEntity.accepted()
-                    .header("ETag", "1")
-                    .body(response);
-                    
-        } catch (ConcurrencyException e) {
-            // Handle optimistic locking conflicts
-            Map<String, String> errorResponse = Map.of(
-                    "error", "Version conflict",
-                    "message", e.getMessage()
-            );
-            
-            if (idempotencyKey != null) {
-                idempotencyService.storeResult(idempotencyKey, 
-                    IdempotencyService.IdempotencyResult.error(409, "Version conflict"));
-            }
-            
-            return ResponseEntity.status(409)
-                    .header("ETag", "current-version") // In real implementation, get actual current version
-                    .body(errorResponse);
-                    
-        } catch (Exception e) {
-            Map<String, String> errorResponse = Map.of(
-                    "error", "Failed to create product: " + e.getMessage()
-            );
-            
-            if (idempotencyKey != null) {
-                idempotencyService.storeResult(idempotencyKey, 
-                    IdempotencyService.IdempotencyResult.error(400, e.getMessage()));
-            }
-            
-            return ResponseEntity.badRequest().body(errorResponse);
-        }
+        // The Tomcat thread is released here; the response is written when the lane is done
+        return commandDispatcher.sendAsync(command)
+                .thenApply(result -> accepted("Product creation command accepted", result))
+                .exceptionally(e -> failed(e, command.getId(), "Failed to create product: "));
     }
 
     @PutMapping("/products/{id}/stock")
-    public ResponseEntity<Map<String, String>> updateStock(
+    public CompletableFuture<ResponseEntity<Map<String, String>>> updateStock(
             @PathVariable String id,
             @RequestBody UpdateStockRequest request,
-            @RequestHeader(value = "If-Match", required = false) String ifMatch,
-            HttpServletRequest httpRequest) {
-        
-        String idempotencyKey = (String) httpRequest.getAttribute("idempotencyKey");
+            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         
+        var command = new UpdateStockCommand(
+                id,
+                request.getOperation(),
+                request.getAmount(),
+                request.getReason()
+        );
+        // The version is checked on the product's lane, where nothing can change it before the update
         try {
-            // Check optimistic locking if If-Match header is provided
-            if (ifMatch != null) {
-                ProductAggregate aggregate = eventSourcingHandler.getById(id);
-                if (aggregate != null) {
-                    int expectedVersion = Integer.parseInt(ifMatch);
-                    aggregate.validateVersion(expectedVersion);
-                }
+            command.setExpectedVersion(expectedVersion(ifMatch));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(failed(e, id, "Failed to update stock: "));
+        }
+        command.setDeadline(Instant.now().plusMillis(commandDeadlineMs));
+        
+        return commandDispatcher.sendAsync(command)
+                .thenApply(result -> accepted("Stock update command accepted", result))
+                .exceptionally(e -> failed(e, id, "Failed to update stock: "));
+    }
+
+    @PostMapping("/products/stock/bulk")
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> bulkUpdateStock(
+            @RequestBody BulkUpdateStockRequest request) {
+        
+        List<BulkUpdateStockItem> items = request.getItems();
+        
+        if (items == null || items.isEmpty() || items.size() > bulkMaxItems) {
+            String message = "Bulk request must contain between 1 and " + bulkMaxItems + " items";
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(Map.of("error", message)));
+        }
+        
+        // Incomplete items are answered here; the rest are grouped by product, each product's
+        // items kept in submission order
+        Map<String, Object>[] results = new Map[items.size()];
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            BulkUpdateStockItem item = items.get(i);
+            String invalid = invalidItem(item);
+            if (invalid != null) {
+                results[i] = itemResult(i, item == null ? null : item.getProductId(), 400, null, invalid);
+            } else {
+                groups.computeIfAbsent(item.getProductId(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        
+        Instant deadline = Instant.now().plusMillis(commandDeadlineMs);
+        List<CompletableFuture<Void>> pending = new ArrayList<>(groups.size());
+        
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            String productId = group.getKey();
+            List<Integer> indexes = group.getValue();
+            List<UpdateStockCommand> commands = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                BulkUpdateStockItem item = items.get(index);
+                commands.add(new UpdateStockCommand(productId, item.getOperation(), item.getAmount(), item.getReason()));
             }
             
-            var command = new UpdateStockCommand(
-                    id,
-                    request.getOperation(),
-                    request.getAmount(),
-                    request.getReason()
-            );
-            
-            commandDispatcher.send(command);
-            
-            Map<String, String> response = Map.of(
-                    "message", "Stock update command accepted",
-                    "productId", id,
-                    "version", "2" // In real implementation, get actual new version
-            );
+            var command = new UpdateStockBatchCommand(productId, commands);
+            command.setDeadline(deadline);
             
-            // Store successful result for idempotency
-            if (idempotencyKey != null) {
-                idempotencyService.storeResult(idempotencyKey, 
-                    IdempotencyService.IdempotencyResult.success(202, response));
+            // Each product goes to its own lane; groups for different products run in parallel
+            pending.add(commandDispatcher.sendAsync(command).handle((result, error) -> {
+                for (int i = 0; i < indexes.size(); i++) {
+                    int index = indexes.get(i);
+                    if (error != null) {
+                        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        results[index] = itemResult(index, productId, itemStatus(e), null, e.getMessage());
+                    } else {
+                        var outcome = ((UpdateStockBatchResult) result).getOutcomes().get(i);
+                        results[index] = itemResult(index, productId, outcome.isApplied() ? 202 : 400, outcome.getVersion(), outcome.getError());
+                    }
+                }
+                return null;
+            }));
+        }
+        
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).thenApply(done -> {
+            int succeeded = 0;
+            for (Map<String, Object> result : results) {
+                if (Boolean.TRUE.equals(result.get("success"))) {
+                    succeeded++;
+                }
             }
             
-            return ResponseEntity.accepted()
-                    .header("ETag", "2")
-                    .body(response);
-                    
-        } catch (ConcurrencyException e) {
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("message", "Bulk stock update processed");
+            response.put("succeeded", succeeded);
+            response.put("failed", results.length - succeeded);
+            response.put("results", List.of(results));
+            
+            return ResponseEntity.ok(response);
+        });
+    }
+
+    // The ETag the responses carry is the bare version; a quoted or weak one is accepted too
+    private static Integer expectedVersion(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        String version = ifMatch.trim();
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
+        }
+        try {
+            return Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("If-Match must be a version: " + ifMatch);
+        }
+    }
+
+    /**
+     * @return Why the item can't be applied, or null if it can be sent to its product
+     */
+    private static String invalidItem(BulkUpdateStockItem item) {
+        if (item == null) {
+            return "Item is empty";
+        }
+        if (item.getProductId() == null || item.getProductId().isBlank()) {
+            return "productId is required";
+        }
+        if (item.getOperation() == null || item.getOperation().isBlank()) {
+            return "operation is required";
+        }
+        if (item.getAmount() == null) {
+            return "amount is required";
+        }
+        return null;
+    }
+
+    // The status the item would have been answered with had it been sent on its own
+    private static int itemStatus(Throwable e) {
+        if (e instanceof ConcurrencyException) {
+            return 409;
+        }
+        if (e instanceof CommandRejectedException) {
+            return 503;
+        }
+        return e instanceof AggregateNotFoundException ? 404 : 400;
+    }
+
+    private static Map<String, Object> itemResult(int index, String productId, int status, Integer version, String error) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+        result.put("productId", productId);
+        result.put("success", status < 400);
+        result.put("status", status);
+        if (version != null) {
+            result.put("version", version);
+        }
+        if (error != null) {
+            result.put("error", error);
+        }
+        return result;
+    }
+
+    // Responses to requests with an Idempotency-Key are recorded by IdempotencyResponseAdvice
+
+    private ResponseEntity<Map<String, String>> accepted(String message, CommandResult result) {
+        String version = String.valueOf(result.getVersion());
+        Map<String, String> response = Map.of(
+                "message", message,
+                "productId", result.getAggregateId(),
+                "version", version
+        );
+        
+        return ResponseEntity.accepted()
+                .header("ETag", version)
+                .body(response);
+    }
+
+    private ResponseEntity<Map<String, String>> failed(Throwable error, String productId, String failurePrefix) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        
+        if (e instanceof ConcurrencyException) {
             // Handle optimistic locking conflicts
             Map<String, String> errorResponse = Map.of(
                     "error", "Version conflict",
                     "message", e.getMessage()
             );
             
-            if (idempotencyKey != null) {
-                idempotencyService.storeResult(idempotencyKey, 
-                    IdempotencyService.IdempotencyResult.error(409, "Version conflict"));
-            }
-            
             return ResponseEntity.status(409)
-                    .header("ETag", "current-version") // In real implementation, get actual current version
+                    .header("ETag", String.valueOf(eventStore.getCurrentVersion(productId)))
                     .body(errorResponse);
-                    
-        } catch (Exception e) {
-            Map<String, String> errorResponse = Map.of(
-                    "error", "Failed to update stock: " + e.getMessage()
-            );
-            
-            if (idempotencyKey != null) {
-                idempotencyService.storeResult(idempotencyKey, 
-                    IdempotencyService.IdempotencyResult.error(400, e.getMessage()));
-            }
-            
-            return ResponseEntity.badRequest().body(errorResponse);
         }
+        
+        if (e instanceof CommandRejectedException) {
+            // Nothing was applied; as a 5xx this leaves the idempotency key free for the retry
+            return ResponseEntity.status(503)
+                    .header("Retry-After", "1")
+                    .body(Map.of("error", "Service overloaded: " + e.getMessage()));
+        }
+        
+        int status = e instanceof AggregateNotFoundException ? 404 : 400;
+        Map<String, String> errorResponse = Map.of(
+                "error", failurePrefix + e.getMessage()
+        );
+        
+        return ResponseEntity.status(status).body(errorResponse);
     }
 
     @GetMapping("/health")
@@ -211,4 +315,29 @@ public class ProductCommandController {
         public String getReason() { return reason; }
         public void setReason(String reason) { this.reason = reason; }
     }
+
+    public static class BulkUpdateStockRequest {
+        private List<BulkUpdateStockItem> items;
+
+        // Getters and setters
+        public List<BulkUpdateStockItem> getItems() { return items; }
+        public void setItems(List<BulkUpdateStockItem> items) { this.items = items; }
+    }
+
+    public static class BulkUpdateStockItem {
+        private String productId;
+        private String operation;
+        private Integer amount;
+        private String reason;
+
+        // Getters and setters
+        public String getProductId() { return productId; }
+        public void setProductId(String productId) { this.productId = productId; }
+        public String getOperation() { return operation; }
+        public void setOperation(String operation) { this.operation = operation; }
+        public Integer getAmount() { return amount; }
+        public void setAmount(Integer amount) { this.amount = amount; }
+        public String getReason() { return reason; }
+        public void setReason(String reason) { this.reason = reason; }
+    }
 }
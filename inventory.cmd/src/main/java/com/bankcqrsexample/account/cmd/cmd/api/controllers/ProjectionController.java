@@ -2,10 +2,15 @@ package com.bankcqrsexample.account.cmd.cmd.api.controllers;
 
 import com.distributedinventory.cqrs.core.handlers.EventSourcingHandler;
 import com.bankcqrsexample.account.cmd.cmd.domain.ProductAggregate;
+import com.bankcqrsexample.account.cmd.cmd.infrastructure.KafkaTopicInspector;
 import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.KafkaException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @RestController
@@ -14,17 +19,37 @@ import java.util.Map;
 public class ProjectionController {
     
     private final EventSourcingHandler<ProductAggregate> eventSourcingHandler;
+    private final KafkaTopicInspector topicInspector;
     
+    // Consumer group of the query service's projection
+    @Value("${inventory.projections.consumer-group:inventoryConsumer}")
+    private String consumerGroup;
+    
+    /**
+     * How far the projection's consumer group is behind the event topics, in records, read
+     * from its committed offsets. UP while the group has members, DOWN when it has none.
+     */
     @GetMapping("/status")
     public ResponseEntity<Map<String, Object>> getProjectionStatus() {
-        // In a real implementation, you'd check the actual projection status
-        var status = Map.<String, Object>of(
-                "status", "UP",
-                "lastProcessedEvent", "event-123",
-                "lag", "0ms",
-                "lastUpdated", java.time.Instant.now().toString()
-        );
+        KafkaTopicInspector.ConsumerGroupLag lag;
+        try {
+            lag = topicInspector.consumerGroupLag(consumerGroup);
+        } catch (KafkaException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "status", "UNKNOWN",
+                    "consumerGroup", consumerGroup,
+                    "error", "Could not read the consumer group: " + e.getMessage()
+            ));
+        }
         
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", lag.members() > 0 ? "UP" : "DOWN");
+        status.put("consumerGroup", lag.groupId());
+        status.put("groupState", lag.state());
+        status.put("members", lag.members());
+        status.put("lag", lag.totalLag());
+        status.put("partitions", lag.partitions());
+        status.put("timestamp", java.time.Instant.now().toString());
         return ResponseEntity.ok(status);
     }
     
@@ -1,14 +1,16 @@
 package com.bankcqrsexample.account.cmd.cmd.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerProducerListener;
 import org.springframework.kafka.core.ProducerFactory;
-import org.springframework.kafka.support.serializer.JsonSerializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -19,26 +21,52 @@ public class KafkaConfig {
     @Value("${spring.kafka.bootstrap-servers:kafka:9092}")
     private String bootstrapServers;
     
+    // reliable: one request in flight, no batching; pipelined: up to five in flight with batching
+    @Value("${inventory.kafka.producer.mode:pipelined}")
+    private String mode;
+    
+    @Value("${inventory.kafka.producer.linger-ms:5}")
+    private int lingerMs;
+    
+    @Value("${inventory.kafka.producer.batch-size:65536}")
+    private int batchSize;
+    
+    @Value("${inventory.kafka.producer.compression:lz4}")
+    private String compression;
+    
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    public ProducerFactory<String, byte[]> producerFactory(MeterRegistry meterRegistry) {
         Map<String, Object> configProps = new HashMap<>();
         configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
         
         // Reliability settings
         configProps.put(ProducerConfig.ACKS_CONFIG, "all");
         configProps.put(ProducerConfig.RETRIES_CONFIG, 3);
         configProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
-        configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
         configProps.put(ProducerConfig.DELIVERY_TIMEOUT_MS_CONFIG, 120000);
         configProps.put(ProducerConfig.REQUEST_TIMEOUT_MS_CONFIG, 30000);
         
-        return new DefaultKafkaProducerFactory<>(configProps);
+        if ("reliable".equalsIgnoreCase(mode.trim())) {
+            configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+        } else {
+            // The idempotent producer keeps per-partition order across retries with up to five
+            // requests in flight, so pipelining doesn't reorder an aggregate's events
+            configProps.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+            configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+            configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+            configProps.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+        }
+        
+        var factory = new DefaultKafkaProducerFactory<String, byte[]>(configProps);
+        // Exports the producer client's own metrics (batch sizes, request latency, retries) as kafka.producer.*
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry));
+        return factory;
     }
     
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, byte[]> kafkaTemplate(ProducerFactory<String, byte[]> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
     }
 }
@@ -0,0 +1,21 @@
+package com.bankcqrsexample.account.cmd.cmd.domain;
+
+import com.distributedinventory.cqrs.core.events.EventModel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EventStoreRepository extends JpaRepository<EventModel, Long> {
+    List<EventModel> findByAggregateIdentifierOrderByVersionAsc(String aggregateIdentifier);
+    List<EventModel> findByAggregateIdentifierAndVersionGreaterThanEqualOrderByVersionAsc(String aggregateIdentifier, int version);
+
+    @Query("select coalesce(max(e.version), -1) from EventModel e where e.aggregateIdentifier = :aggregateIdentifier")
+    int findCurrentVersion(@Param("aggregateIdentifier") String aggregateIdentifier);
+
+    @Query("select distinct e.aggregateIdentifier from EventModel e")
+    List<String> findAggregateIdentifiers();
+}
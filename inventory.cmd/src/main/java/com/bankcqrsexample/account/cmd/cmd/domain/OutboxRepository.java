@@ -0,0 +1,17 @@
+package com.bankcqrsexample.account.cmd.cmd.domain;
+
+import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.events.OutboxModel;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxModel, Long> {
+    // Event ids come from one sequence, so id order is append order for every aggregate
+    @Query("select e from EventModel e, OutboxModel o where e.id = o.eventId order by e.id")
+    List<EventModel> findPendingEvents(Pageable pageable);
+}
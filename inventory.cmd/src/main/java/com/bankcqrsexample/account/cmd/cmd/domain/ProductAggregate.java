@@ -1,14 +1,16 @@
 package com.bankcqrsexample.account.cmd.cmd.domain;
 
+import com.distributedinventory.cqrs.core.domain.Snapshottable;
 import com.distributedinventory.cqrs.core.domain.VersionedAggregateRoot;
 import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
 import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.util.Date;
 
 @NoArgsConstructor
-public class ProductAggregate extends VersionedAggregateRoot {
+public class ProductAggregate extends VersionedAggregateRoot implements Snapshottable<ProductSnapshot> {
     
     private String name;
     private String description;
@@ -19,15 +21,7 @@ public class ProductAggregate extends VersionedAggregateRoot {
 
     public ProductAggregate(String id, String name, String description, String category, 
                           BigDecimal price, String storeId, Integer initialAmount) {
-        this.id = id;
-        this.name = name;
-        this.description = description;
-        this.category = category;
-        this.price = price;
-        this.storeId = storeId;
-        this.amount = initialAmount;
-        
-        // Raise the product created event
+        // Raise the product created event; state is set by apply so replay takes the same path
         var event = ProductCreatedEvent.builder()
                 .id(id)
                 .name(name)
@@ -36,23 +30,22 @@ public class ProductAggregate extends VersionedAggregateRoot {
                 .price(price)
                 .storeId(storeId)
                 .initialAmount(initialAmount)
+                .createdDate(new Date())
                 .build();
         
         raiseEvent(event);
     }
 
     public void updateStock(String operation, Integer amount, String reason) {
-        if (this.amount == null) {
-            this.amount = 0;
-        }
+        int currentAmount = this.amount == null ? 0 : this.amount;
         
         int newAmount;
         switch (operation.toLowerCase()) {
             case "purchase":
-                newAmount = this.amount - amount;
+                newAmount = currentAmount - amount;
                 break;
             case "restock":
-                newAmount = this.amount + amount;
+                newAmount = currentAmount + amount;
                 break;
             case "set":
                 newAmount = amount;
@@ -62,20 +55,67 @@ public class ProductAggregate extends VersionedAggregateRoot {
         }
         
         if (newAmount < 0) {
-            throw new IllegalArgumentException("Insufficient stock. Current: " + this.amount + ", Requested: " + amount);
+            throw new IllegalArgumentException("Insufficient stock. Current: " + currentAmount + ", Requested: " + amount);
         }
         
-        this.amount = newAmount;
-        
         // Raise the stock updated event
         var event = StockUpdatedEvent.builder()
                 .id(this.getId())
                 .operation(operation)
                 .amount(amount)
-                .newAmount(this.amount)
+                .newAmount(newAmount)
                 .reason(reason)
+                .updatedDate(new Date())
                 .build();
         
         raiseEvent(event);
     }
+
+    // The aggregate, its fields and their strings
+    @Override
+    public int estimatedSize() {
+        return 256 + 2 * (length(id) + length(name) + length(description) + length(category) + length(storeId));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private void apply(ProductCreatedEvent event) {
+        this.id = event.getId();
+        this.name = event.getName();
+        this.description = event.getDescription();
+        this.category = event.getCategory();
+        this.price = event.getPrice();
+        this.storeId = event.getStoreId();
+        this.amount = event.getInitialAmount();
+    }
+
+    private void apply(StockUpdatedEvent event) {
+        this.amount = event.getNewAmount();
+    }
+
+    @Override
+    public ProductSnapshot takeSnapshot() {
+        return ProductSnapshot.builder()
+                .id(this.id)
+                .name(this.name)
+                .description(this.description)
+                .category(this.category)
+                .price(this.price)
+                .storeId(this.storeId)
+                .amount(this.amount)
+                .build();
+    }
+
+    @Override
+    public void restoreFromSnapshot(ProductSnapshot snapshot) {
+        this.id = snapshot.getId();
+        this.name = snapshot.getName();
+        this.description = snapshot.getDescription();
+        this.category = snapshot.getCategory();
+        this.price = snapshot.getPrice();
+        this.storeId = snapshot.getStoreId();
+        this.amount = snapshot.getAmount();
+    }
 }
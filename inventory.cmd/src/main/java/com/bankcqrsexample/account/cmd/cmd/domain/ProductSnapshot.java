@@ -0,0 +1,22 @@
+package com.bankcqrsexample.account.cmd.cmd.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductSnapshot {
+    private String id;
+    private String name;
+    private String description;
+    private String category;
+    private BigDecimal price;
+    private String storeId;
+    private Integer amount;
+}
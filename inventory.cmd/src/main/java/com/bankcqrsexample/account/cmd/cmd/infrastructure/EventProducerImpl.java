@@ -2,15 +2,18 @@ package com.bankcqrsexample.account.cmd.cmd.infrastructure;
 
 import com.distributedinventory.cqrs.core.events.BaseEvent;
 import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.events.EventTopics;
 import com.distributedinventory.cqrs.core.producers.EventProducer;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -18,23 +21,24 @@ import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class EventProducerImpl implements EventProducer {
     
-    private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final EventSerializer eventSerializer;
+    private final PublishTracker publishTracker;
     
     @Override
     public void produce(String topic, BaseEvent event) {
         try {
-            String eventJson = objectMapper.writeValueAsString(event);
+            byte[] payload = eventSerializer.serialize(event);
             String key = extractKey(event);
             
-            log.info("Publishing event to topic: {} with key: {}", topic, key);
+            log.debug("Publishing event to topic: {} with key: {}", topic, key);
             
-            CompletableFuture<SendResult<String, String>> future = 
-                kafkaTemplate.send(topic, key, eventJson);
+            CompletableFuture<SendResult<String, byte[]>> future = publishTracker.track(() ->
+                kafkaTemplate.send(record(topic, key, payload, event.getClass().getSimpleName(), event.getVersion())));
             
             future.whenComplete((result, ex) -> {
                 if (ex == null) {
-                    log.info("Successfully published event to topic: {} with offset: {}", 
+                    log.debug("Successfully published event to topic: {} with offset: {}", 
                             topic, result.getRecordMetadata().offset());
                 } else {
                     log.error("Failed to publish event to topic: {} - {}", topic, ex.getMessage());
@@ -42,7 +46,7 @@ public class EventProducerImpl implements EventProducer {
                 }
             });
             
-        } catch (JsonProcessingException e) {
+        } catch (IllegalArgumentException e) {
             log.error("Error serializing event for topic: {} - {}", topic, e.getMessage());
             throw new RuntimeException("Error serializing event", e);
         }
@@ -51,17 +55,17 @@ public class EventProducerImpl implements EventProducer {
     @Override
     public void produce(String topic, EventModel eventModel) {
         try {
-            String eventJson = eventModel.getEventData();
+            byte[] payload = eventModel.getEventData();
             String key = eventModel.getAggregateIdentifier();
             
-            log.info("Publishing event model to topic: {} with key: {}", topic, key);
+            log.debug("Publishing event model to topic: {} with key: {}", topic, key);
             
-            CompletableFuture<SendResult<String, String>> future = 
-                kafkaTemplate.send(topic, key, eventJson);
+            CompletableFuture<SendResult<String, byte[]>> future = publishTracker.track(() ->
+                kafkaTemplate.send(record(topic, key, payload, eventModel.getEventType(), eventModel.getVersion())));
             
             future.whenComplete((result, ex) -> {
                 if (ex == null) {
-                    log.info("Successfully published event model to topic: {} with offset: {}", 
+                    log.debug("Successfully published event model to topic: {} with offset: {}", 
                             topic, result.getRecordMetadata().offset());
                 } else {
                     log.error("Failed to publish event model to topic: {} - {}", topic, ex.getMessage());
@@ -74,24 +78,16 @@ public class EventProducerImpl implements EventProducer {
         }
     }
     
-    private String extractKey(Object event) {
-        // Extract key from event - this is a simplified implementation
-        // In production, you'd have proper key extraction logic
-        if (event instanceof EventModel) {
-            return ((EventModel) event).getAggregateIdentifier();
-        }
-        
-        if (event instanceof BaseEvent) {
-            return ((BaseEvent) event).getId();
-        }
-        
-        // For other events, try to extract ID field
-        try {
-            return objectMapper.readTree(objectMapper.writeValueAsString(event))
-                    .get("id").asText();
-        } catch (Exception e) {
-            log.warn("Could not extract key from event, using default");
-            return "default-key";
-        }
+    // Consumers read the event type from the header to know what to deserialize the value into
+    private static ProducerRecord<String, byte[]> record(String topic, String key, byte[] value, String eventType, int version) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, value);
+        record.headers().add(new RecordHeader(EventTopics.TYPE_HEADER, eventType.getBytes(StandardCharsets.UTF_8)));
+        record.headers().add(new RecordHeader(EventTopics.VERSION_HEADER, String.valueOf(version).getBytes(StandardCharsets.UTF_8)));
+        return record;
+    }
+    
+    // Events are keyed by aggregate id so each aggregate's events land on one partition, in order
+    private static String extractKey(BaseEvent event) {
+        return event.getId();
     }
 }
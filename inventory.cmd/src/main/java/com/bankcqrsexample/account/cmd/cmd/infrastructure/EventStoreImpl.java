@@ -4,79 +4,108 @@ import com.distributedinventory.cqrs.core.domain.AggregateRoot;
 import com.distributedinventory.cqrs.core.events.BaseEvent;
 import com.distributedinventory.cqrs.core.events.EventModel;
 import com.distributedinventory.cqrs.core.exceptions.ConcurrencyException;
+import com.distributedinventory.cqrs.core.infrastructure.EventOutbox;
 import com.distributedinventory.cqrs.core.infrastructure.EventStore;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "inventory.event-store.type", havingValue = "memory", matchIfMissing = true)
 @RequiredArgsConstructor
-public class EventStoreImpl implements EventStore {
+public class EventStoreImpl implements EventStore, EventOutbox {
     
-    private final ObjectMapper objectMapper;
+    private final EventSerializer eventSerializer;
     
     // In production, this should be a persistent database
     // For demo purposes, using in-memory storage
     private final Map<String, List<EventModel>> eventStore = new ConcurrentHashMap<>();
     private final Map<String, Integer> versionStore = new ConcurrentHashMap<>();
     
+    @Value("${inventory.outbox.enabled:false}")
+    private boolean outboxEnabled;
+    
+    // Events awaiting publication, in append order; ids are assigned from a global sequence
+    private final Queue<EventModel> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    
     @Override
     public void saveEvents(String aggregateId, Iterable<BaseEvent> events, int expectedVersion) {
-        List<EventModel> eventModels = new ArrayList<>();
-        
-        // Check version for optimistic locking
-        Integer currentVersion = versionStore.getOrDefault(aggregateId, -1);
-        if (expectedVersion != -1 && currentVersion != expectedVersion) {
-            throw new ConcurrencyException("Version mismatch. Expected: " + expectedVersion + ", Current: " + currentVersion);
-        }
+        List<EventModel> stream = eventStore.computeIfAbsent(aggregateId, k -> new ArrayList<>());
         
-        // Convert events to EventModels and save
-        for (BaseEvent event : events) {
-            try {
+        // Commands for one aggregate already arrive one at a time from its lane; the monitor
+        // keeps the version check and the append atomic for any other caller and for readers
+        synchronized (stream) {
+            List<EventModel> eventModels = new ArrayList<>();
+            
+            // Check version for optimistic locking
+            Integer currentVersion = versionStore.getOrDefault(aggregateId, -1);
+            if (expectedVersion != -1 && currentVersion != expectedVersion) {
+                throw new ConcurrencyException("Version mismatch. Expected: " + expectedVersion + ", Current: " + currentVersion);
+            }
+            
+            // Convert events to EventModels and save
+            for (BaseEvent event : events) {
+                event.setVersion(currentVersion + 1);
                 EventModel eventModel = EventModel.builder()
-                        .id(null) // Let JPA generate the ID
+                        .id(sequence.incrementAndGet())
                         .timeStamp(new java.util.Date())
                         .aggregateIdentifier(aggregateId)
                         .aggregateType(event.getClass().getSimpleName())
                         .version(currentVersion + 1)
                         .eventType(event.getClass().getSimpleName())
-                        .eventData(objectMapper.writeValueAsString(event))
+                        .eventData(eventSerializer.serialize(event))
                         .build();
                 
                 eventModels.add(eventModel);
                 currentVersion++;
                 
-                log.info("Saving event: {} for aggregate: {} with version: {}", 
+                log.debug("Saving event: {} for aggregate: {} with version: {}", 
                         event.getClass().getSimpleName(), aggregateId, currentVersion);
-                        
-            } catch (JsonProcessingException e) {
-                log.error("Error serializing event: {}", e.getMessage());
-                throw new RuntimeException("Error serializing event", e);
             }
+            
+            // Store events and update version
+            stream.addAll(eventModels);
+            versionStore.put(aggregateId, currentVersion);
+            if (outboxEnabled) {
+                outbox.addAll(eventModels);
+            }
+            
+            log.debug("Saved {} events for aggregate: {} with final version: {}", 
+                    eventModels.size(), aggregateId, currentVersion);
         }
-        
-        // Store events and update version
-        eventStore.computeIfAbsent(aggregateId, k -> new ArrayList<>()).addAll(eventModels);
-        versionStore.put(aggregateId, currentVersion);
-        
-        log.info("Saved {} events for aggregate: {} with final version: {}", 
-                eventModels.size(), aggregateId, currentVersion);
     }
     
     @Override
     public List<BaseEvent> getEvents(String aggregateId) {
+        return getEvents(aggregateId, 0);
+    }
+    
+    @Override
+    public List<BaseEvent> getEvents(String aggregateId, int fromVersion) {
         List<EventModel> eventModels = eventStore.getOrDefault(aggregateId, new ArrayList<>());
         
-        return eventModels.stream()
+        // Versions are contiguous from 0, so the version doubles as the list index
+        List<EventModel> tail;
+        synchronized (eventModels) {
+            int from = Math.max(0, Math.min(fromVersion, eventModels.size()));
+            tail = new ArrayList<>(eventModels.subList(from, eventModels.size()));
+        }
+        return tail.stream()
                 .map(this::deserializeEvent)
                 .collect(Collectors.toList());
     }
@@ -84,13 +113,13 @@ public class EventStoreImpl implements EventStore {
     @Override
     public List<EventModel> findAll() {
         return eventStore.values().stream()
-                .flatMap(List::stream)
+                .flatMap(stream -> copyOf(stream).stream())
                 .collect(Collectors.toList());
     }
     
     @Override
     public List<EventModel> findByAggregateIdentifier(String aggregateId) {
-        return eventStore.getOrDefault(aggregateId, new ArrayList<>());
+        return copyOf(eventStore.getOrDefault(aggregateId, new ArrayList<>()));
     }
     
     @Override
@@ -103,13 +132,31 @@ public class EventStoreImpl implements EventStore {
         return new ArrayList<>(eventStore.keySet());
     }
     
-    private BaseEvent deserializeEvent(EventModel eventModel) {
-        try {
-            Class<?> eventClass = Class.forName("com.distributedinventory.cqrs.core.events." + eventModel.getEventType());
-            return (BaseEvent) objectMapper.readValue(eventModel.getEventData(), eventClass);
-        } catch (Exception e) {
-            log.error("Error deserializing event: {}", e.getMessage());
-            throw new RuntimeException("Error deserializing event", e);
+    @Override
+    public List<EventModel> fetchPending(int maxEvents) {
+        List<EventModel> pending = new ArrayList<>(Math.min(maxEvents, 1024));
+        Iterator<EventModel> iterator = outbox.iterator();
+        while (iterator.hasNext() && pending.size() < maxEvents) {
+            pending.add(iterator.next());
+        }
+        return pending;
+    }
+    
+    @Override
+    public void markDispatched(List<EventModel> events) {
+        // Only the relay removes entries and it always dispatches a prefix of the queue
+        for (int i = 0; i < events.size(); i++) {
+            outbox.poll();
         }
     }
+    
+    private static List<EventModel> copyOf(List<EventModel> stream) {
+        synchronized (stream) {
+            return new ArrayList<>(stream);
+        }
+    }
+    
+    private BaseEvent deserializeEvent(EventModel eventModel) {
+        return eventSerializer.deserialize(eventModel.getEventType(), eventModel.getEventData());
+    }
 }
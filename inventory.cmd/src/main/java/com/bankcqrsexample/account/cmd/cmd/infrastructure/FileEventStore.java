@@ -0,0 +1,613 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.exceptions.ConcurrencyException;
+import com.distributedinventory.cqrs.core.infrastructure.EventAppend;
+import com.distributedinventory.cqrs.core.infrastructure.EventOutbox;
+import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Event store backed by segmented, append-only, memory-mapped log files on local disk.
+ * Every record points back at the previous record of its aggregate, so the in-memory index
+ * only holds each aggregate's latest version and position, and a read walks back from there
+ * as far as the version it starts at: a snapshot's tail costs as many reads as it has events.
+ * The index is rebuilt on startup by scanning the segments and validating each record's CRC.
+ * <p>
+ * The last record of every append is flagged as such, and recovery only indexes an append once
+ * it reaches that record. A crash part-way through writing one, with however much of it a flush,
+ * a segment roll or the OS had already got to disk, is cut from the log back to where the append
+ * started. An append that fails part-way is wiped before the lock is released.
+ * <p>
+ * The log doubles as the outbox: the relay reads forward from a cursor that is checkpointed to
+ * a small file after each acknowledged batch, so a crash can only cause events to be sent
+ * again, never lost. It only reads as far as the log is known to be on disk, so nothing is
+ * published that a crash could take back and a later append reuse the version of.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "inventory.event-store.type", havingValue = "file")
+@RequiredArgsConstructor
+public class FileEventStore implements EventStore, EventOutbox {
+    
+    private static final String OUTBOX_CHECKPOINT = "outbox.checkpoint";
+    
+    // Payload layout: [long timestamp][int version][long previous record of the aggregate][byte flags][id][type][data]
+    private static final int PREVIOUS_OFFSET = 12;
+    private static final int FLAGS_OFFSET = 20;
+    private static final byte LAST_OF_APPEND = 1;
+    private static final long NO_RECORD = -1;
+    
+    public enum FsyncPolicy {
+        ALWAYS,   // force to disk before saveEvents returns
+        INTERVAL, // force in the background every fsync-interval-ms
+        NEVER     // leave it to the OS page cache; the relay forces what it is about to publish
+    }
+    
+    private final EventSerializer eventSerializer;
+    
+    @Value("${inventory.event-store.file.directory:./data/event-store}")
+    private String directory;
+    
+    @Value("${inventory.event-store.file.segment-bytes:67108864}")
+    private int segmentBytes;
+    
+    @Value("${inventory.event-store.file.fsync:interval}")
+    private String fsync;
+    
+    @Value("${inventory.event-store.file.fsync-interval-ms:100}")
+    private long fsyncIntervalMs;
+    
+    private FsyncPolicy fsyncPolicy;
+    private Path root;
+    private ScheduledExecutorService flusher;
+    
+    // Segments by id; ids are contiguous from 0 so the list index is the segment id
+    private final List<LogSegment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, StreamTip> index = new ConcurrentHashMap<>();
+    
+    // Position just past the last record visible to readers, and the next record the relay has to send
+    private volatile long publishedEnd;
+    private volatile long outboxCursor;
+    // Position up to which the published records are known to be on disk; the relay stops there
+    private final AtomicLong durableEnd = new AtomicLong();
+    
+    @PostConstruct
+    public void open() throws IOException {
+        fsyncPolicy = FsyncPolicy.valueOf(fsync.trim().toUpperCase());
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+        
+        long started = System.nanoTime();
+        List<Path> files;
+        try (Stream<Path> list = Files.list(root)) {
+            files = list.filter(LogSegment::isSegmentFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        
+        long records = 0;
+        Recovery recovery = new Recovery();
+        for (int i = 0; i < files.size(); i++) {
+            if (LogSegment.parseId(files.get(i)) != i) {
+                throw new IllegalStateException("Event log segments are not contiguous at " + files.get(i));
+            }
+            LogSegment segment = LogSegment.open(root, i, segmentBytes);
+            segments.add(segment);
+            records += recover(segment, i == files.size() - 1, recovery);
+        }
+        if (recovery.appendStart != NO_RECORD) {
+            cutIncompleteAppend(recovery);
+        }
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.open(root, 0, segmentBytes));
+        }
+        publishedEnd = endOfLog();
+        durableEnd.set(publishedEnd);
+        outboxCursor = Math.min(readOutboxCheckpoint(), publishedEnd);
+        
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "event-log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly, fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        
+        log.info("Opened event log at {}: {} segments, {} events, {} aggregates recovered in {} ms (fsync: {})",
+                root.toAbsolutePath(), segments.size(), records, index.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), fsyncPolicy);
+    }
+    
+    @PreDestroy
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+    }
+    
+    @Override
+    public synchronized void saveEvents(String aggregateId, Iterable<BaseEvent> events, int expectedVersion) {
+        WrittenAppend written = write(aggregateId, events, expectedVersion, index.get(aggregateId));
+        
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            activeSegment().flush();
+        }
+        
+        publish(written);
+        publishedEnd = endOfLog();
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            durableEnd.set(publishedEnd);
+        }
+        log.debug("Saved events for aggregate: {} with final version: {}", aggregateId, written.tip.version);
+    }
+    
+    @Override
+    public synchronized List<RuntimeException> saveEventsBatch(List<EventAppend> appends) {
+        List<RuntimeException> failures = new ArrayList<>(appends.size());
+        List<WrittenAppend> batch = new ArrayList<>(appends.size());
+        
+        // Later appends in the batch must build on the records written by earlier ones, which aren't published yet
+        Map<String, StreamTip> batchTips = new HashMap<>();
+        for (EventAppend append : appends) {
+            String aggregateId = append.getAggregateId();
+            StreamTip tip = batchTips.containsKey(aggregateId) ? batchTips.get(aggregateId) : index.get(aggregateId);
+            try {
+                WrittenAppend written = write(aggregateId, append.getEvents(), append.getExpectedVersion(), tip);
+                batchTips.put(aggregateId, written.tip);
+                batch.add(written);
+                failures.add(null);
+            } catch (RuntimeException e) {
+                failures.add(e);
+            }
+        }
+        
+        // One force for the whole batch is the point of group commit
+        if (fsyncPolicy == FsyncPolicy.ALWAYS && !batch.isEmpty()) {
+            activeSegment().flush();
+        }
+        
+        for (WrittenAppend written : batch) {
+            publish(written);
+        }
+        publishedEnd = endOfLog();
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            durableEnd.set(publishedEnd);
+        }
+        log.debug("Saved batch of {} appends", batch.size());
+        return failures;
+    }
+    
+    /**
+     * Check the version and write the records to the log, without making them visible to readers.
+     * Either every record is written or, if anything fails, none is: the log is rolled back to
+     * where the append started and the caller's events are left as they were. The last record is
+     * flagged, so that recovery can tell a complete append from one a crash cut short.
+     * @param tip The aggregate's last record, written or published, or null if it has none
+     */
+    private WrittenAppend write(String aggregateId, Iterable<BaseEvent> events, int expectedVersion, StreamTip tip) {
+        int currentVersion = tip == null ? -1 : tip.version;
+        if (expectedVersion != -1 && currentVersion != expectedVersion) {
+            throw new ConcurrencyException("Version mismatch. Expected: " + expectedVersion + ", Current: " + currentVersion);
+        }
+        
+        // Encode and size-check everything before writing, so neither can fail half-way through
+        long timestamp = System.currentTimeMillis();
+        List<BaseEvent> written = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        int version = currentVersion;
+        for (BaseEvent event : events) {
+            byte[] payload = encode(aggregateId, event, ++version, timestamp);
+            if (!LogSegment.fitsEmptySegment(payload.length, segmentBytes)) {
+                throw new IllegalArgumentException("Event of " + payload.length + " bytes does not fit in a log segment");
+            }
+            written.add(event);
+            payloads.add(payload);
+        }
+        
+        int segmentCount = segments.size();
+        int startOffset = activeSegment().getWritePosition();
+        long previous = tip == null ? NO_RECORD : tip.position;
+        try {
+            for (int i = 0; i < payloads.size(); i++) {
+                byte[] payload = payloads.get(i);
+                ByteBuffer.wrap(payload).putLong(PREVIOUS_OFFSET, previous);
+                if (i == payloads.size() - 1) {
+                    payload[FLAGS_OFFSET] = LAST_OF_APPEND;
+                }
+                previous = append(payload);
+            }
+        } catch (RuntimeException e) {
+            rollBack(segmentCount - 1, startOffset);
+            throw e;
+        }
+        
+        version = currentVersion;
+        for (BaseEvent event : written) {
+            event.setVersion(++version);
+        }
+        return new WrittenAppend(aggregateId, new StreamTip(version, previous));
+    }
+    
+    // Wipe everything written since the given position, in the segment it is in and any rolled to since
+    private void rollBack(int segmentId, int offset) {
+        for (int i = segments.size() - 1; i > segmentId; i--) {
+            segments.get(i).rollBackTo(0);
+        }
+        segments.get(segmentId).rollBackTo(offset);
+        log.warn("Rolled event log back to segment {} offset {} after a failed append", segmentId, offset);
+    }
+    
+    // Publish to readers only once the records are in the log
+    private void publish(WrittenAppend written) {
+        index.put(written.aggregateId, written.tip);
+    }
+    
+    @Override
+    public List<BaseEvent> getEvents(String aggregateId) {
+        return getEvents(aggregateId, 0);
+    }
+    
+    @Override
+    public List<BaseEvent> getEvents(String aggregateId, int fromVersion) {
+        return readStream(aggregateId, fromVersion).stream()
+                .map(this::deserializeEvent)
+                .collect(Collectors.toList());
+    }
+    
+    @Override
+    public List<String> getAggregateIds() {
+        return new ArrayList<>(index.keySet());
+    }
+    
+    @Override
+    public List<EventModel> findAll() {
+        List<EventModel> eventModels = new ArrayList<>();
+        for (LogSegment segment : segments) {
+            int end = segment.getWritePosition();
+            int offset = 0;
+            while (offset < end) {
+                eventModels.add(decode(segment, offset));
+                offset += LogSegment.HEADER_BYTES + segment.payloadLength(offset);
+            }
+        }
+        return eventModels;
+    }
+    
+    @Override
+    public List<EventModel> findByAggregateIdentifier(String aggregateId) {
+        return readStream(aggregateId, 0);
+    }
+    
+    @Override
+    public int getCurrentVersion(String aggregateId) {
+        StreamTip tip = index.get(aggregateId);
+        return tip == null ? -1 : tip.version;
+    }
+    
+    // Only the relay thread reads and moves the cursor, so neither method takes the append lock
+    @Override
+    public List<EventModel> fetchPending(int maxEvents) {
+        if (fsyncPolicy == FsyncPolicy.NEVER && durableEnd.get() < publishedEnd) {
+            flushPublished();
+        }
+        List<EventModel> pending = new ArrayList<>(Math.min(maxEvents, 1024));
+        long end = durableEnd.get();
+        int segmentId = segmentId(outboxCursor);
+        int offset = segmentOffset(outboxCursor);
+        while (pending.size() < maxEvents && position(segmentId, offset) < end) {
+            LogSegment segment = segments.get(segmentId);
+            if (offset >= segment.getWritePosition()) {
+                segmentId++;
+                offset = 0;
+                continue;
+            }
+            pending.add(decode(segment, offset));
+            offset += LogSegment.HEADER_BYTES + segment.payloadLength(offset);
+        }
+        return pending;
+    }
+    
+    @Override
+    public void markDispatched(List<EventModel> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        long last = events.get(events.size() - 1).getId();
+        LogSegment segment = segments.get(segmentId(last));
+        int offset = segmentOffset(last);
+        outboxCursor = position(segment.getId(), offset + LogSegment.HEADER_BYTES + segment.payloadLength(offset));
+        writeOutboxCheckpoint(outboxCursor);
+    }
+    
+    private long readOutboxCheckpoint() throws IOException {
+        Path checkpoint = root.resolve(OUTBOX_CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        return ByteBuffer.wrap(Files.readAllBytes(checkpoint)).getLong();
+    }
+    
+    private void writeOutboxCheckpoint(long cursor) {
+        // Write aside and rename so a crash leaves either the old or the new checkpoint, never half of one
+        Path checkpoint = root.resolve(OUTBOX_CHECKPOINT);
+        Path temp = root.resolve(OUTBOX_CHECKPOINT + ".tmp");
+        try {
+            Files.write(temp, ByteBuffer.allocate(Long.BYTES).putLong(cursor).array());
+            Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing outbox checkpoint", e);
+        }
+    }
+    
+    private long endOfLog() {
+        LogSegment segment = activeSegment();
+        return position(segment.getId(), segment.getWritePosition());
+    }
+    
+    // Published records never change, so walking back from the published tip needs no lock
+    private List<EventModel> readStream(String aggregateId, int fromVersion) {
+        StreamTip tip = index.get(aggregateId);
+        int from = Math.max(0, fromVersion);
+        if (tip == null || tip.version < from) {
+            return new ArrayList<>();
+        }
+        EventModel[] eventModels = new EventModel[tip.version - from + 1];
+        long position = tip.position;
+        for (int i = eventModels.length - 1; i >= 0; i--) {
+            EventModel eventModel = decode(segments.get(segmentId(position)), segmentOffset(position));
+            if (eventModel.getVersion() != from + i) {
+                throw new IllegalStateException("Event log chain of aggregate " + aggregateId + " is broken at version " + (from + i));
+            }
+            eventModels[i] = eventModel;
+            position = previousPosition(segments.get(segmentId(position)), segmentOffset(position));
+        }
+        return new ArrayList<>(Arrays.asList(eventModels));
+    }
+    
+    // Caller has checked the payload fits an empty segment
+    private long append(byte[] payload) {
+        LogSegment segment = activeSegment();
+        if (!segment.hasRoomFor(payload.length)) {
+            segment = roll(segment);
+        }
+        int offset = segment.append(payload);
+        return position(segment.getId(), offset);
+    }
+    
+    private LogSegment roll(LogSegment full) {
+        try {
+            // A sealed segment is never written again, so make it durable before moving on
+            full.flush();
+            LogSegment next = LogSegment.open(root, full.getId() + 1, segmentBytes);
+            segments.add(next);
+            log.info("Rolled event log to segment {}", next.getPath().getFileName());
+            return next;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error rolling event log segment", e);
+        }
+    }
+    
+    private LogSegment activeSegment() {
+        return segments.get(segments.size() - 1);
+    }
+    
+    private void flushQuietly() {
+        try {
+            flushPublished();
+        } catch (Exception e) {
+            log.error("Error flushing event log: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Force the log to disk and let the relay read as far as was published before the force.
+     * Segments before the active one were forced when the log rolled past them.
+     */
+    private void flushPublished() {
+        long end = publishedEnd;
+        activeSegment().flush();
+        durableEnd.accumulateAndGet(end, Math::max);
+    }
+    
+    /**
+     * Scan a segment and index every valid record of every complete append; the records of one
+     * still missing its last record are held in the recovery until it turns up, possibly at the
+     * start of the next segment. Cut the log at the first torn record.
+     * @return The number of records recovered
+     */
+    private long recover(LogSegment segment, boolean last, Recovery recovery) {
+        long records = 0;
+        int offset = 0;
+        int length;
+        while ((length = segment.validRecordLength(offset)) > 0) {
+            ByteBuffer payload = ByteBuffer.wrap(segment.readPayload(offset));
+            payload.getLong(); // timestamp
+            int version = payload.getInt();
+            long previous = payload.getLong();
+            byte flags = payload.get();
+            String aggregateId = readString(payload);
+            
+            if (recovery.appendStart == NO_RECORD) {
+                recovery.appendStart = position(segment.getId(), offset);
+            }
+            // A record only extends the chain it points back to
+            StreamTip tip = recovery.tips.containsKey(aggregateId) ? recovery.tips.get(aggregateId) : index.get(aggregateId);
+            int expectedVersion = tip == null ? 0 : tip.version + 1;
+            long expectedPrevious = tip == null ? NO_RECORD : tip.position;
+            if (version != expectedVersion || previous != expectedPrevious) {
+                log.warn("Skipping out of sequence event {} for aggregate: {} at {}:{}",
+                        version, aggregateId, segment.getPath().getFileName(), offset);
+            } else {
+                recovery.tips.put(aggregateId, new StreamTip(version, position(segment.getId(), offset)));
+                recovery.records++;
+            }
+            if ((flags & LAST_OF_APPEND) != 0) {
+                index.putAll(recovery.tips);
+                records += recovery.records;
+                recovery.reset();
+            }
+            offset += LogSegment.HEADER_BYTES + length;
+        }
+        
+        // Only the active segment can end in a torn write; wipe it so new records start from clean space
+        boolean torn = segment.hasDataAt(offset);
+        if (torn) {
+            log.warn("Truncating torn record in {} at offset {}", segment.getPath().getFileName(), offset);
+            if (!last && recovery.appendStart != NO_RECORD) {
+                // The append the torn record belonged to can't be continued by the next segment
+                log.warn("Dropping {} events of an incomplete append before the torn record", recovery.records);
+                recovery.reset();
+            }
+        }
+        segment.truncateTo(offset, torn && last);
+        return records;
+    }
+    
+    // Wipe the records of the append the log ends in, which never got its last record written
+    private void cutIncompleteAppend(Recovery recovery) {
+        int segmentId = segmentId(recovery.appendStart);
+        int offset = segmentOffset(recovery.appendStart);
+        log.warn("Cutting {} events of an incomplete append from {} at offset {}",
+                recovery.records, segments.get(segmentId).getPath().getFileName(), offset);
+        for (int i = segments.size() - 1; i > segmentId; i--) {
+            segments.get(i).truncateTo(0, true);
+        }
+        segments.get(segmentId).truncateTo(offset, true);
+        recovery.reset();
+    }
+    
+    // The previous record's position is filled in when the record is appended
+    private byte[] encode(String aggregateId, BaseEvent event, int version, long timestamp) {
+        byte[] id = aggregateId.getBytes(StandardCharsets.UTF_8);
+        byte[] type = event.getClass().getSimpleName().getBytes(StandardCharsets.UTF_8);
+        // The version goes in the record header; the event is only stamped with it once the append succeeds
+        int eventVersion = event.getVersion();
+        event.setVersion(version);
+        byte[] data;
+        try {
+            data = eventSerializer.serialize(event);
+        } finally {
+            event.setVersion(eventVersion);
+        }
+        return ByteBuffer.allocate(8 + 4 + 8 + 1 + 2 + id.length + 2 + type.length + data.length)
+                .putLong(timestamp)
+                .putInt(version)
+                .putLong(NO_RECORD)
+                .put((byte) 0)
+                .putShort((short) id.length).put(id)
+                .putShort((short) type.length).put(type)
+                .put(data)
+                .array();
+    }
+    
+    private EventModel decode(LogSegment segment, int offset) {
+        ByteBuffer payload = ByteBuffer.wrap(segment.readPayload(offset));
+        long timestamp = payload.getLong();
+        int version = payload.getInt();
+        payload.getLong(); // previous record of the aggregate
+        payload.get(); // flags
+        String aggregateId = readString(payload);
+        String eventType = readString(payload);
+        // Records written before the binary codec hold JSON here; the serializer reads both
+        byte[] eventData = Arrays.copyOfRange(payload.array(), payload.position(), payload.limit());
+        return EventModel.builder()
+                .id(position(segment.getId(), offset))
+                .timeStamp(new Date(timestamp))
+                .aggregateIdentifier(aggregateId)
+                .aggregateType(eventType)
+                .version(version)
+                .eventType(eventType)
+                .eventData(eventData)
+                .build();
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    private BaseEvent deserializeEvent(EventModel eventModel) {
+        return eventSerializer.deserialize(eventModel.getEventType(), eventModel.getEventData());
+    }
+    
+    private static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+    
+    private static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+    
+    private static int segmentOffset(long position) {
+        return (int) position;
+    }
+    
+    private static long previousPosition(LogSegment segment, int offset) {
+        return segment.readLong(offset + LogSegment.HEADER_BYTES + PREVIOUS_OFFSET);
+    }
+    
+    /**
+     * An aggregate's latest version and the position of its record, from which the rest of its
+     * records are reached through their back pointers. Replaced, never changed, so readers see
+     * a consistent pair without locking.
+     */
+    private record StreamTip(int version, long position) {
+    }
+    
+    private record WrittenAppend(String aggregateId, StreamTip tip) {
+    }
+    
+    /**
+     * The append recovery is in the middle of: where it starts and the tips its records so far
+     * would give their aggregates
+     */
+    private static final class Recovery {
+        private long appendStart = NO_RECORD;
+        private final Map<String, StreamTip> tips = new HashMap<>();
+        private long records;
+        
+        private void reset() {
+            appendStart = NO_RECORD;
+            tips.clear();
+            records = 0;
+        }
+    }
+}
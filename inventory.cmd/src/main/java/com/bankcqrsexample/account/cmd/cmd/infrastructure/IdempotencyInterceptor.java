@@ -1,6 +1,11 @@
 package com.bankcqrsexample.account.cmd.cmd.infrastructure;
 
 import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
@@ -12,76 +17,144 @@ import org.springframework.web.servlet.HandlerInterceptor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Claims the Idempotency-Key of every write request. A retry gets the recorded response back
+ * byte for byte, a different request reusing the key gets 422, and a new request goes on to the
+ * controller, whose response {@link IdempotencyResponseAdvice} then records. Every outcome is
+ * counted in inventory.idempotency.requests, so the replay ratio can be read off the metrics.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class IdempotencyInterceptor implements HandlerInterceptor {
-    
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    static final String IDEMPOTENCY_KEY_ATTRIBUTE = "idempotencyKey";
+    // Set once the key has been given a result or released, so it is finished exactly once
+    static final String COMPLETED_ATTRIBUTE = "idempotencyCompleted";
+
     private final IdempotencyService idempotencyService;
     private final ObjectMapper objectMapper;
-    
+    private final MeterRegistry meterRegistry;
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+
+    enum Outcome {
+        CLAIMED, REPLAYED, IN_PROGRESS, MISMATCH, REJECTED, MISSING_KEY
+    }
+
+    @PostConstruct
+    public void registerMeters() {
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("inventory.idempotency.requests")
+                    .description("Write requests by what their Idempotency-Key led to")
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        Gauge.builder("inventory.idempotency.keys", idempotencyService, service -> ((Number) service.getStats().get("size")).doubleValue())
+                .description("Idempotency keys currently held")
+                .register(meterRegistry);
+    }
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        
-        // Only apply to POST, PUT, PATCH requests
-        if (!isWriteRequest(request.getMethod())) {
+
+        // Only apply to POST, PUT, PATCH requests. An async dispatch is the second half of a
+        // request whose key was already claimed when it came in.
+        if (!isWriteRequest(request.getMethod()) || request.getDispatcherType() == DispatcherType.ASYNC) {
             return true;
         }
-        
-        String idempotencyKey = request.getHeader("Idempotency-Key");
-        
+
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+
         // Idempotency key is required for write operations
         if (idempotencyKey == null || idempotencyKey.trim().isEmpty()) {
-            response.setStatus(HttpStatus.BAD_REQUEST.value());
-            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-            response.getWriter().write("{\"error\":\"Idempotency-Key header is required for write operations\"}");
+            outcomes.get(Outcome.MISSING_KEY).increment();
+            writeError(response, HttpStatus.BAD_REQUEST, "Idempotency-Key header is required for write operations");
             return false;
         }
-        
-        // Check if this operation has already been processed
-        IdempotencyService.IdempotencyResult existingResult = idempotencyService.getResult(idempotencyKey);
-        
-        if (existingResult != null) {
-            switch (existingResult.getStatus()) {
-                case SUCCESS:
-                    // Return the cached successful result
-                    response.setStatus(existingResult.getHttpStatusCode());
-                    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-                    String successBody = objectMapper.writeValueAsString(existingResult.getResponseBody());
-                    response.getWriter().write(successBody);
-                    log.info("Returning cached successful result for idempotency key: {}", idempotencyKey);
-                    return false;
-                    
-                case ERROR:
-                    // Return the cached error result
-                    response.setStatus(existingResult.getHttpStatusCode());
-                    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-                    String errorBody = "{\"error\":\"" + existingResult.getErrorMessage() + "\"}";
-                    response.getWriter().write(errorBody);
-                    log.info("Returning cached error result for idempotency key: {}", idempotencyKey);
-                    return false;
-                    
-                case PROCESSING:
-                    // Another request is currently processing - return 409 Conflict
-                    response.setStatus(HttpStatus.CONFLICT.value());
-                    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
-                    response.getWriter().write("{\"error\":\"Request is currently being processed\"}");
-                    log.warn("Request already being processed for idempotency key: {}", idempotencyKey);
-                    return false;
+
+        Long requestHash = (Long) request.getAttribute(IdempotencyRequestFilter.REQUEST_HASH_ATTRIBUTE);
+        if (requestHash == null) {
+            requestHash = IdempotencyRequestFilter.hash(request.getMethod(), request.getRequestURI(), new byte[0]);
+            request.setAttribute(IdempotencyRequestFilter.REQUEST_HASH_ATTRIBUTE, requestHash);
+        }
+
+        // Claim the key, or find out what an earlier request with it did; one step, so two
+        // retries arriving together can't both get through
+        IdempotencyService.Claim claim = idempotencyService.claim(idempotencyKey, requestHash);
+
+        if (claim.isRejected()) {
+            outcomes.get(Outcome.REJECTED).increment();
+            response.setHeader("Retry-After", "1");
+            writeError(response, HttpStatus.SERVICE_UNAVAILABLE, "Too many requests in progress");
+            log.warn("Idempotency key limit reached, rejecting request with key: {}", idempotencyKey);
+            return false;
+        }
+
+        if (!claim.isOwned()) {
+            IdempotencyService.IdempotencyResult existingResult = claim.getExisting();
+
+            if (!existingResult.matches(requestHash)) {
+                outcomes.get(Outcome.MISMATCH).increment();
+                writeError(response, HttpStatus.UNPROCESSABLE_ENTITY,
+                        "Idempotency-Key " + idempotencyKey + " was already used for a different request");
+                log.warn("Idempotency key reused with a different request: {}", idempotencyKey);
+                return false;
+            }
+
+            if (existingResult.getStatus() == IdempotencyService.IdempotencyStatus.PROCESSING) {
+                // Another request is currently processing - return 409 Conflict
+                outcomes.get(Outcome.IN_PROGRESS).increment();
+                writeError(response, HttpStatus.CONFLICT, "Request is currently being processed");
+                log.warn("Request already being processed for idempotency key: {}", idempotencyKey);
+                return false;
             }
+
+            // Replay the recorded response as it was sent
+            outcomes.get(Outcome.REPLAYED).increment();
+            byte[] body = existingResult.getResponseBody();
+            response.setStatus(existingResult.getHttpStatusCode());
+            response.setContentType(existingResult.getContentType());
+            existingResult.getHeaders().forEach(response::setHeader);
+            response.setHeader("Idempotent-Replayed", "true");
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+            log.debug("Replayed recorded response for idempotency key: {}", idempotencyKey);
+            return false;
         }
-        
-        // Mark this request as being processed
-        idempotencyService.markAsProcessing(idempotencyKey);
-        request.setAttribute("idempotencyKey", idempotencyKey);
-        
-        log.info("Processing new request with idempotency key: {}", idempotencyKey);
+
+        outcomes.get(Outcome.CLAIMED).increment();
+        request.setAttribute(IDEMPOTENCY_KEY_ATTRIBUTE, idempotencyKey);
+
+        log.debug("Processing new request with idempotency key: {}", idempotencyKey);
         return true;
     }
-    
-    private boolean isWriteRequest(String method) {
-        return "POST".equalsIgnoreCase(method) || 
-               "PUT".equalsIgnoreCase(method) || 
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        // No response body was recorded (the request failed before the controller produced
+        // one), so let a retry run it instead of leaving the key PROCESSING until it expires
+        String idempotencyKey = (String) request.getAttribute(IDEMPOTENCY_KEY_ATTRIBUTE);
+        if (idempotencyKey != null && request.getAttribute(COMPLETED_ATTRIBUTE) == null) {
+            request.setAttribute(COMPLETED_ATTRIBUTE, Boolean.TRUE);
+            idempotencyService.release(idempotencyKey);
+        }
+    }
+
+    private void writeError(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), Map.of("error", message));
+    }
+
+    static boolean isWriteRequest(String method) {
+        return "POST".equalsIgnoreCase(method) ||
+               "PUT".equalsIgnoreCase(method) ||
                "PATCH".equalsIgnoreCase(method);
     }
 }
@@ -0,0 +1,98 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the response of a request that claimed an idempotency key. The body is serialized
+ * here, once; the bytes are stored with the result and also handed to the message converter as
+ * a raw value, so what a replay sends is exactly what the first request got, along with the
+ * headers a client acts on. A 5xx response means the command may not have run, so the key is
+ * released for the retry instead.
+ */
+@Slf4j
+@ControllerAdvice
+@RequiredArgsConstructor
+public class IdempotencyResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    // A retry must learn the version it created (for its next If-Match) just like the first attempt
+    static final List<String> RECORDED_HEADERS = List.of(HttpHeaders.ETAG, HttpHeaders.LOCATION);
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return AbstractJackson2HttpMessageConverter.class.isAssignableFrom(converterType);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest) || !(response instanceof ServletServerHttpResponse servletResponse)) {
+            return body;
+        }
+        HttpServletRequest httpRequest = servletRequest.getServletRequest();
+        String idempotencyKey = (String) httpRequest.getAttribute(IdempotencyInterceptor.IDEMPOTENCY_KEY_ATTRIBUTE);
+        if (idempotencyKey == null || httpRequest.getAttribute(IdempotencyInterceptor.COMPLETED_ATTRIBUTE) != null) {
+            return body;
+        }
+        httpRequest.setAttribute(IdempotencyInterceptor.COMPLETED_ATTRIBUTE, Boolean.TRUE);
+
+        int status = servletResponse.getServletResponse().getStatus();
+        if (status >= 500) {
+            idempotencyService.release(idempotencyKey);
+            return body;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not record the response for idempotency key {}; releasing it", idempotencyKey, e);
+            idempotencyService.release(idempotencyKey);
+            return body;
+        }
+        long requestHash = (Long) httpRequest.getAttribute(IdempotencyRequestFilter.REQUEST_HASH_ATTRIBUTE);
+        idempotencyService.storeResult(idempotencyKey, IdempotencyService.IdempotencyResult.completed(
+                status, selectedContentType.toString(), recordedHeaders(response, servletResponse), bytes, requestHash));
+        return new RawValue(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    // A ResponseEntity's headers are only copied onto the servlet response with the body, so look in both
+    private static Map<String, String> recordedHeaders(ServerHttpResponse response, ServletServerHttpResponse servletResponse) {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : RECORDED_HEADERS) {
+            String value = response.getHeaders().getFirst(name);
+            if (value == null) {
+                value = servletResponse.getServletResponse().getHeader(name);
+            }
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return headers;
+    }
+}
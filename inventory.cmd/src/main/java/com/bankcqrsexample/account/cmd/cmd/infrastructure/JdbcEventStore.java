@@ -0,0 +1,202 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.bankcqrsexample.account.cmd.cmd.domain.EventStoreRepository;
+import com.bankcqrsexample.account.cmd.cmd.domain.OutboxRepository;
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.events.OutboxModel;
+import com.distributedinventory.cqrs.core.exceptions.ConcurrencyException;
+import com.distributedinventory.cqrs.core.infrastructure.EventAppend;
+import com.distributedinventory.cqrs.core.infrastructure.EventOutbox;
+import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Event store on the relational event_store table. Concurrency control is left to the unique
+ * (aggregate_identifier, version) constraint: new events are numbered from the version the
+ * caller loaded, and a concurrent writer that got there first makes the insert fail. With the
+ * outbox enabled, every event also gets an event_outbox row in the same transaction.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "inventory.event-store.type", havingValue = "jdbc")
+@RequiredArgsConstructor
+public class JdbcEventStore implements EventStore, EventOutbox {
+    
+    private final EventStoreRepository eventStoreRepository;
+    private final OutboxRepository outboxRepository;
+    private final EventSerializer eventSerializer;
+    private final TransactionTemplate transactionTemplate;
+    
+    @Value("${inventory.outbox.enabled:false}")
+    private boolean outboxEnabled;
+    
+    @Override
+    @Transactional
+    public void saveEvents(String aggregateId, Iterable<BaseEvent> events, int expectedVersion) {
+        List<EventModel> eventModels = toEventModels(aggregateId, events, expectedVersion);
+        
+        try {
+            persist(eventModels);
+        } catch (DataIntegrityViolationException e) {
+            throw conflict(aggregateId, expectedVersion, e);
+        }
+        
+        log.debug("Saved {} events for aggregate: {} with final version: {}", eventModels.size(), aggregateId, expectedVersion + eventModels.size());
+    }
+    
+    /**
+     * Insert every append in one transaction. If the unique constraint trips, the transaction
+     * can't tell us which append lost the race, so the batch is retried one append per
+     * transaction and only the conflicting ones fail.
+     */
+    @Override
+    public List<RuntimeException> saveEventsBatch(List<EventAppend> appends) {
+        List<RuntimeException> failures = new ArrayList<>(Collections.nCopies(appends.size(), null));
+        List<EventModel> eventModels = new ArrayList<>();
+        for (int i = 0; i < appends.size(); i++) {
+            EventAppend append = appends.get(i);
+            try {
+                eventModels.addAll(toEventModels(append.getAggregateId(), append.getEvents(), append.getExpectedVersion()));
+            } catch (RuntimeException e) {
+                failures.set(i, e);
+            }
+        }
+        
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(eventModels));
+            log.debug("Saved batch of {} events for {} appends", eventModels.size(), appends.size());
+            return failures;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Batch of {} appends hit a version conflict, retrying one by one", appends.size());
+        }
+        
+        for (int i = 0; i < appends.size(); i++) {
+            if (failures.get(i) != null) {
+                continue;
+            }
+            EventAppend append = appends.get(i);
+            try {
+                // Fresh entities: the ones from the rolled back transaction already carry ids
+                List<EventModel> retry = toEventModels(append.getAggregateId(), append.getEvents(), append.getExpectedVersion());
+                transactionTemplate.executeWithoutResult(status -> persist(retry));
+            } catch (DataIntegrityViolationException e) {
+                failures.set(i, conflict(append.getAggregateId(), append.getExpectedVersion(), e));
+            } catch (RuntimeException e) {
+                failures.set(i, e);
+            }
+        }
+        return failures;
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<EventModel> fetchPending(int maxEvents) {
+        return outboxRepository.findPendingEvents(PageRequest.of(0, maxEvents));
+    }
+    
+    // Dispatched rows are deleted rather than flagged, so the outbox only ever holds the backlog
+    @Override
+    @Transactional
+    public void markDispatched(List<EventModel> events) {
+        outboxRepository.deleteAllByIdInBatch(events.stream().map(EventModel::getId).collect(Collectors.toList()));
+    }
+    
+    // Must run inside the caller's transaction so the events and their outbox rows commit together
+    private void persist(List<EventModel> eventModels) {
+        // Ids come from the pooled sequence, so Hibernate can send these as one JDBC batch
+        eventStoreRepository.saveAllAndFlush(eventModels);
+        
+        if (outboxEnabled) {
+            List<OutboxModel> outboxModels = new ArrayList<>(eventModels.size());
+            for (EventModel eventModel : eventModels) {
+                outboxModels.add(new OutboxModel(eventModel.getId(), eventModel.getTimeStamp()));
+            }
+            outboxRepository.saveAllAndFlush(outboxModels);
+        }
+    }
+    
+    private List<EventModel> toEventModels(String aggregateId, Iterable<BaseEvent> events, int expectedVersion) {
+        List<EventModel> eventModels = new ArrayList<>();
+        Date timeStamp = new Date();
+        int version = expectedVersion;
+        
+        for (BaseEvent event : events) {
+            event.setVersion(++version);
+            eventModels.add(EventModel.builder()
+                    .timeStamp(timeStamp)
+                    .aggregateIdentifier(aggregateId)
+                    .aggregateType(event.getClass().getSimpleName())
+                    .version(version)
+                    .eventType(event.getClass().getSimpleName())
+                    .eventData(eventSerializer.serialize(event))
+                    .build());
+        }
+        return eventModels;
+    }
+    
+    private static ConcurrencyException conflict(String aggregateId, int expectedVersion, DataIntegrityViolationException e) {
+        return new ConcurrencyException("Version conflict for aggregate: " + aggregateId
+                + ". Expected: " + expectedVersion, e);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<BaseEvent> getEvents(String aggregateId) {
+        return eventStoreRepository.findByAggregateIdentifierOrderByVersionAsc(aggregateId).stream()
+                .map(this::deserializeEvent)
+                .collect(Collectors.toList());
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<BaseEvent> getEvents(String aggregateId, int fromVersion) {
+        return eventStoreRepository.findByAggregateIdentifierAndVersionGreaterThanEqualOrderByVersionAsc(aggregateId, fromVersion).stream()
+                .map(this::deserializeEvent)
+                .collect(Collectors.toList());
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<String> getAggregateIds() {
+        return eventStoreRepository.findAggregateIdentifiers();
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<EventModel> findAll() {
+        return eventStoreRepository.findAll(Sort.by("id"));
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public List<EventModel> findByAggregateIdentifier(String aggregateId) {
+        return eventStoreRepository.findByAggregateIdentifierOrderByVersionAsc(aggregateId);
+    }
+    
+    @Override
+    @Transactional(readOnly = true)
+    public int getCurrentVersion(String aggregateId) {
+        return eventStoreRepository.findCurrentVersion(aggregateId);
+    }
+    
+    private BaseEvent deserializeEvent(EventModel eventModel) {
+        return eventSerializer.deserialize(eventModel.getEventType(), eventModel.getEventData());
+    }
+}
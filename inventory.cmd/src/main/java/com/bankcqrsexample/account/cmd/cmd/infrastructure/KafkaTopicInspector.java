@@ -0,0 +1,164 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ConsumerGroupDescription;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.TopicPartitionInfo;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Reads topic and consumer group state from the brokers: how far a consumer group is behind
+ * the end of the partitions it has committed to, and how many records a topic holds. The admin
+ * client is only created on first use, so a service that never asks doesn't keep a connection.
+ * It is configured like Boot's own admin client, from the {@code spring.kafka.admin} settings
+ * over the shared {@code spring.kafka} ones.
+ */
+@Component
+@RequiredArgsConstructor
+public class KafkaTopicInspector {
+
+    private final KafkaProperties kafkaProperties;
+
+    @Value("${inventory.kafka.admin.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private AdminClient adminClient;
+
+    /**
+     * @return The group's state and, for every partition it has committed an offset on, that
+     * offset, the partition's end offset and the difference between them
+     * @throws KafkaException If the brokers could not be asked within the timeout
+     */
+    public ConsumerGroupLag consumerGroupLag(String groupId) {
+        AdminClient admin = admin();
+        ConsumerGroupDescription group = await(admin.describeConsumerGroups(List.of(groupId)).describedGroups().get(groupId));
+        Map<TopicPartition, OffsetAndMetadata> committed = await(admin.listConsumerGroupOffsets(groupId).partitionsToOffsetAndMetadata());
+        committed.values().removeIf(offset -> offset == null);
+
+        Map<TopicPartition, Long> ends = endOffsets(admin, committed.keySet());
+        List<PartitionLag> partitions = new ArrayList<>(committed.size());
+        committed.forEach((partition, offset) -> {
+            long end = ends.getOrDefault(partition, offset.offset());
+            partitions.add(new PartitionLag(partition.topic(), partition.partition(), offset.offset(), end, Math.max(0, end - offset.offset())));
+        });
+        partitions.sort((a, b) -> a.topic().equals(b.topic()) ? Integer.compare(a.partition(), b.partition()) : a.topic().compareTo(b.topic()));
+        return new ConsumerGroupLag(groupId, group.state().toString(), group.members().size(), partitions);
+    }
+
+    /**
+     * @return Records held by each of the topics that exist, i.e. the sum over its partitions
+     * of end minus earliest offset; topics that don't exist are left out
+     * @throws KafkaException If the brokers could not be asked within the timeout
+     */
+    public Map<String, Long> topicSizes(Collection<String> topics) {
+        AdminClient admin = admin();
+        Set<String> existing = await(admin.listTopics().names()).stream()
+                .filter(topics::contains)
+                .collect(Collectors.toSet());
+        if (existing.isEmpty()) {
+            return Map.of();
+        }
+
+        List<TopicPartition> partitions = new ArrayList<>();
+        for (TopicDescription description : await(admin.describeTopics(existing).allTopicNames()).values()) {
+            for (TopicPartitionInfo info : description.partitions()) {
+                partitions.add(new TopicPartition(description.name(), info.partition()));
+            }
+        }
+        Map<TopicPartition, Long> ends = endOffsets(admin, partitions);
+        Map<TopicPartition, Long> starts = offsets(admin, partitions, OffsetSpec.earliest());
+
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (String topic : topics) {
+            if (existing.contains(topic)) {
+                sizes.put(topic, 0L);
+            }
+        }
+        for (TopicPartition partition : partitions) {
+            sizes.merge(partition.topic(), ends.get(partition) - starts.get(partition), Long::sum);
+        }
+        return sizes;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (adminClient != null) {
+            adminClient.close();
+            adminClient = null;
+        }
+    }
+
+    private synchronized AdminClient admin() {
+        if (adminClient == null) {
+            Map<String, Object> config = new HashMap<>(kafkaProperties.buildAdminProperties());
+            config.put(AdminClientConfig.DEFAULT_API_TIMEOUT_MS_CONFIG, (int) timeoutMs);
+            config.put(AdminClientConfig.REQUEST_TIMEOUT_MS_CONFIG, (int) timeoutMs);
+            adminClient = AdminClient.create(config);
+        }
+        return adminClient;
+    }
+
+    private Map<TopicPartition, Long> endOffsets(AdminClient admin, Collection<TopicPartition> partitions) {
+        return offsets(admin, partitions, OffsetSpec.latest());
+    }
+
+    private Map<TopicPartition, Long> offsets(AdminClient admin, Collection<TopicPartition> partitions, OffsetSpec spec) {
+        if (partitions.isEmpty()) {
+            return Map.of();
+        }
+        Map<TopicPartition, OffsetSpec> request = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            request.put(partition, spec);
+        }
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> result = await(admin.listOffsets(request).all());
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        result.forEach((partition, info) -> offsets.put(partition, info.offset()));
+        return offsets;
+    }
+
+    private <T> T await(KafkaFuture<T> future) {
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while waiting for the brokers", e);
+        } catch (ExecutionException e) {
+            throw new KafkaException(e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new KafkaException("No answer from the brokers within " + timeoutMs + "ms", e);
+        }
+    }
+
+    public record ConsumerGroupLag(String groupId, String state, int members, List<PartitionLag> partitions) {
+
+        public long totalLag() {
+            return partitions.stream().mapToLong(PartitionLag::lag).sum();
+        }
+    }
+
+    public record PartitionLag(String topic, int partition, long committed, long end, long lag) {
+    }
+}
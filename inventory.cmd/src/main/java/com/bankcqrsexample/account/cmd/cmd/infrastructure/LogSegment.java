@@ -0,0 +1,191 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One pre-allocated, memory-mapped file of the event log. Records are laid out back to back as
+ * [int payloadLength][int crc32c(payload)][payload]; a zero length marks the end of the data.
+ * Writes go through the mapping under the owner's lock, reads are lock-free absolute gets
+ * bounded by the published write position.
+ */
+final class LogSegment {
+    
+    static final int HEADER_BYTES = 8;
+    
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    
+    private volatile int writePosition;
+    private int flushedPosition;
+    
+    private LogSegment(int id, Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+    
+    static LogSegment open(Path directory, int id, int defaultCapacity) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Existing segments keep their size even if the configured segment size changed
+        int capacity = channel.size() > 0 ? (int) channel.size() : defaultCapacity;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        return new LogSegment(id, path, channel, buffer, capacity);
+    }
+    
+    static String fileName(int id) {
+        return String.format("segment-%010d.log", id);
+    }
+    
+    static int parseId(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+    }
+    
+    static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith("segment-") && name.endsWith(".log");
+    }
+    
+    int getId() {
+        return id;
+    }
+    
+    Path getPath() {
+        return path;
+    }
+    
+    int getWritePosition() {
+        return writePosition;
+    }
+    
+    boolean hasRoomFor(int payloadLength) {
+        return (long) writePosition + HEADER_BYTES + payloadLength <= capacity;
+    }
+    
+    static boolean fitsEmptySegment(int payloadLength, int capacity) {
+        return (long) HEADER_BYTES + payloadLength <= capacity;
+    }
+    
+    /**
+     * Append one record. Callers must hold the log's write lock and check hasRoomFor first.
+     * @return The offset of the record within this segment
+     */
+    int append(byte[] payload) {
+        int offset = writePosition;
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, payload.length);
+        buffer.put(offset + HEADER_BYTES, payload);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        // Length goes last so a torn write never looks like a complete record
+        buffer.putInt(offset, payload.length);
+        writePosition = offset + HEADER_BYTES + payload.length;
+        return offset;
+    }
+    
+    /**
+     * Validate the record at the given offset during recovery
+     * @return The payload length, or -1 if the data ends here or the record is torn
+     */
+    int validRecordLength(int offset) {
+        if (offset + HEADER_BYTES > capacity) {
+            return -1;
+        }
+        int length = buffer.getInt(offset);
+        if (length <= 0 || (long) offset + HEADER_BYTES + length > capacity) {
+            return -1;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + HEADER_BYTES, length));
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : -1;
+    }
+    
+    byte[] readPayload(int offset) {
+        int length = buffer.getInt(offset);
+        byte[] payload = new byte[length];
+        buffer.get(offset + HEADER_BYTES, payload);
+        return payload;
+    }
+    
+    long readLong(int offset) {
+        return buffer.getLong(offset);
+    }
+    
+    int payloadLength(int offset) {
+        return buffer.getInt(offset);
+    }
+    
+    /**
+     * Whether anything at all was written at the given offset, complete or not
+     */
+    boolean hasDataAt(int offset) {
+        return offset + HEADER_BYTES <= capacity && (buffer.getInt(offset) != 0 || buffer.getInt(offset + 4) != 0);
+    }
+    
+    /**
+     * Mark everything before the given offset as recovered data and wipe whatever follows it,
+     * forcing the wipe to disk so that a second crash can't bring it back
+     */
+    void truncateTo(int offset, boolean wipeTail) {
+        if (wipeTail) {
+            int wiped = offset;
+            for (int i = offset; i < capacity; i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                    wiped = i + 1;
+                }
+            }
+            if (wiped > offset) {
+                buffer.force(offset, wiped - offset);
+            }
+        }
+        writePosition = offset;
+        flushedPosition = offset;
+    }
+    
+    /**
+     * Undo the appends after the given offset: wipe them, force the wipe to disk in case a flush
+     * already got them there, and write from the offset again. Callers must hold the write lock.
+     */
+    synchronized void rollBackTo(int offset) {
+        int position = writePosition;
+        if (position <= offset) {
+            return;
+        }
+        for (int i = offset; i < position; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        if (flushedPosition > offset) {
+            buffer.force(offset, Math.min(flushedPosition, position) - offset);
+        }
+        writePosition = offset;
+        flushedPosition = Math.min(flushedPosition, offset);
+    }
+    
+    /**
+     * Force the bytes written since the last flush to disk
+     */
+    synchronized void flush() {
+        int position = writePosition;
+        if (position > flushedPosition) {
+            buffer.force(flushedPosition, position - flushedPosition);
+            flushedPosition = position;
+        }
+    }
+    
+    void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
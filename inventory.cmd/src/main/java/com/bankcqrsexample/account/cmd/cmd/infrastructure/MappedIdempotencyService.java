@@ -0,0 +1,515 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idempotency store kept in two memory-mapped files, so keys survive a restart or redeploy
+ * and none of it lives on the Java heap.
+ * <p>
+ * The index is an open-addressing hash table with linear probing and backward-shift deletion.
+ * Each 40-byte slot holds a 128-bit hash of the key, the expiry time, the status and HTTP status,
+ * and the position of the entry's record in the response file. A probe only reads longs from the
+ * mapping, so looking a key up allocates nothing; only a hit allocates, to build the result.
+ * <p>
+ * The response file is a ring of records in write order, each holding the key hash, a hash of
+ * the request, the response's content type, its recorded headers (as "name: value" lines) and
+ * its body bytes. Every claim and
+ * every stored result appends one, which makes the ring the FIFO expiry queue as well: entries
+ * are expired, or evicted when the key limit or the ring is full, by popping records off its
+ * tail. A record whose slot now points somewhere else is simply skipped. Reopening only maps
+ * the two files and reads the header.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "inventory.idempotency.store", havingValue = "mapped")
+public class MappedIdempotencyService implements IdempotencyService {
+
+    static final String INDEX_FILE = "idempotency.index";
+    static final String RESPONSES_FILE = "idempotency.responses";
+
+    private static final int MAGIC = 0x1DE3A7C1;
+    private static final int FORMAT_VERSION = 3;
+
+    // Index header
+    private static final int HEADER_BYTES = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_FORMAT = 4;
+    private static final int H_SLOTS = 8;
+    private static final int H_COUNT = 12;
+    private static final int H_RING_HEAD = 16;
+    private static final int H_RING_TAIL = 24;
+    private static final int H_RING_BYTES = 32;
+
+    // Index slot; a zero hash marks an empty slot
+    private static final int SLOT_BYTES = 40;
+    private static final int S_HASH_HI = 0;
+    private static final int S_HASH_LO = 8;
+    private static final int S_EXPIRES = 16;
+    private static final int S_RECORD = 24;
+    private static final int S_STATUS = 32;
+    // Largest power of two that keeps the whole index addressable with int offsets
+    private static final int MAX_SLOTS = 1 << 25;
+
+    // Response record; a zero hash marks padding up to the end of the ring
+    private static final int RECORD_HEADER_BYTES = 40;
+    private static final int R_HASH_HI = 0;
+    private static final int R_HASH_LO = 8;
+    private static final int R_REQUEST_HASH = 16;
+    private static final int R_CONTENT_TYPE_LENGTH = 24;
+    private static final int R_BODY_LENGTH = 28;
+    private static final int R_HEADERS_LENGTH = 32;
+
+    private static final int PROCESSING = 1;
+    private static final int SUCCESS = 2;
+    private static final int ERROR = 3;
+
+    // How far popping the ring tail may go
+    private static final int EXPIRED = 0;
+    private static final int COMPLETED = 1;
+    private static final int ANY = 2;
+
+    private final String directory;
+    private final long responseBytes;
+    private final long processingTtlMillis;
+    private final long completedTtlMillis;
+    private int maxKeys;
+
+    private FileChannel indexChannel;
+    private FileChannel ringChannel;
+    private MappedByteBuffer index;
+    private MappedByteBuffer ring;
+    private int mask;
+    private int ringSize;
+
+    // Mirrors of the header fields, written through on every change
+    private int count;
+    private long ringHead;
+    private long ringTail;
+
+    private long expired;
+    private long evicted;
+    private long rejected;
+
+    public MappedIdempotencyService(@Value("${inventory.idempotency.mapped.directory:./data/idempotency}") String directory,
+                                    @Value("${inventory.idempotency.mapped.response-bytes:67108864}") long responseBytes,
+                                    @Value("${inventory.idempotency.max-keys:100000}") int maxKeys,
+                                    @Value("${inventory.idempotency.processing-ttl-seconds:60}") long processingTtlSeconds,
+                                    @Value("${inventory.idempotency.completed-ttl-seconds:86400}") long completedTtlSeconds) {
+        this.directory = directory;
+        this.responseBytes = responseBytes;
+        this.maxKeys = maxKeys;
+        this.processingTtlMillis = TimeUnit.SECONDS.toMillis(processingTtlSeconds);
+        this.completedTtlMillis = TimeUnit.SECONDS.toMillis(completedTtlSeconds);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        long started = System.nanoTime();
+        Path root = Paths.get(directory);
+        Files.createDirectories(root);
+
+        indexChannel = FileChannel.open(root.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ringChannel = FileChannel.open(root.resolve(RESPONSES_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int slots;
+        boolean created = indexChannel.size() == 0;
+        if (created) {
+            // At most half full, so probe sequences stay short
+            if (maxKeys > MAX_SLOTS / 2) {
+                throw new IllegalArgumentException("inventory.idempotency.max-keys can be at most " + MAX_SLOTS / 2);
+            }
+            slots = Integer.highestOneBit(Math.max(maxKeys, 512) * 2 - 1) << 1;
+            ringSize = (int) Math.min(responseBytes, Integer.MAX_VALUE - 7) & ~7;
+        } else {
+            // Existing files keep their geometry even if the configuration changed
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            indexChannel.read(header, 0);
+            if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_FORMAT) != FORMAT_VERSION) {
+                throw new IllegalStateException(root.resolve(INDEX_FILE) + " is not an idempotency index of format " + FORMAT_VERSION);
+            }
+            slots = header.getInt(H_SLOTS);
+            ringSize = (int) header.getLong(H_RING_BYTES);
+            if (ringChannel.size() != ringSize) {
+                throw new IllegalStateException(root.resolve(RESPONSES_FILE) + " is " + ringChannel.size()
+                        + " bytes but the index expects " + ringSize);
+            }
+        }
+        if (maxKeys > slots / 2) {
+            log.warn("Idempotency index at {} has {} slots; holding at most {} keys instead of {}",
+                    root.toAbsolutePath(), slots, slots / 2, maxKeys);
+            maxKeys = slots / 2;
+        }
+        mask = slots - 1;
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slots * SLOT_BYTES);
+        ring = ringChannel.map(FileChannel.MapMode.READ_WRITE, 0, ringSize);
+
+        if (created) {
+            index.putInt(H_SLOTS, slots);
+            index.putLong(H_RING_BYTES, ringSize);
+            index.putInt(H_FORMAT, FORMAT_VERSION);
+            index.putInt(H_MAGIC, MAGIC);
+        }
+        count = index.getInt(H_COUNT);
+        ringHead = index.getLong(H_RING_HEAD);
+        ringTail = index.getLong(H_RING_TAIL);
+
+        log.info("Opened idempotency index at {}: {} keys in {} slots, {} of {} response bytes in use, in {} ms",
+                root.toAbsolutePath(), count, slots, ringHead - ringTail, ringSize,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        // The mappings are in the OS page cache, so a killed process loses nothing; this
+        // only matters if the machine goes down
+        index.force();
+        ring.force();
+        indexChannel.close();
+        ringChannel.close();
+    }
+
+    @Override
+    public Claim claim(String key, long requestHash) {
+        long hashHi = hashHi(key);
+        long hashLo = hashLo(key);
+        long now = System.currentTimeMillis();
+        IdempotencyResult stored;
+        synchronized (this) {
+            expire(now);
+            int slot = find(hashHi, hashLo);
+            if (slot >= 0 && !isExpired(slot, now)) {
+                stored = read(slot);
+            } else {
+                // Only evict completed entries; dropping an in-flight key would let its retry run twice
+                while (slot < 0 && count >= maxKeys) {
+                    if (!popTail(now, COMPLETED)) {
+                        rejected++;
+                        return Claim.rejected();
+                    }
+                }
+                if (!write(hashHi, hashLo, PROCESSING, 0, requestHash, null, null, null, now + processingTtlMillis, now, COMPLETED)) {
+                    rejected++;
+                    return Claim.rejected();
+                }
+                return Claim.owned();
+            }
+        }
+        return Claim.existing(stored);
+    }
+
+    @Override
+    public IdempotencyResult getResult(String key) {
+        long hashHi = hashHi(key);
+        long hashLo = hashLo(key);
+        synchronized (this) {
+            int slot = find(hashHi, hashLo);
+            if (slot < 0 || isExpired(slot, System.currentTimeMillis())) {
+                return null;
+            }
+            return read(slot);
+        }
+    }
+
+    @Override
+    public void storeResult(String key, IdempotencyResult result) {
+        long hashHi = hashHi(key);
+        long hashLo = hashLo(key);
+        long now = System.currentTimeMillis();
+        int status = switch (result.getStatus()) {
+            case PROCESSING -> PROCESSING;
+            case SUCCESS -> SUCCESS;
+            case ERROR -> ERROR;
+        };
+        byte[] contentType = result.getContentType() == null ? null : result.getContentType().getBytes(StandardCharsets.UTF_8);
+        byte[] headers = encodeHeaders(result.getHeaders());
+        long expiresAt = now + (status == PROCESSING ? processingTtlMillis : completedTtlMillis);
+        synchronized (this) {
+            expire(now);
+            if (find(hashHi, hashLo) < 0) {
+                while (count >= maxKeys && popTail(now, COMPLETED)) {
+                    // make room
+                }
+            }
+            // The command has been applied, so its result is recorded even if that means evicting
+            // the oldest entry while it is still in flight
+            write(hashHi, hashLo, status, result.getHttpStatusCode(), result.getRequestHash(),
+                    contentType, headers, result.getResponseBody(), expiresAt, now, ANY);
+        }
+    }
+
+    @Override
+    public synchronized void release(String key) {
+        int slot = find(hashHi(key), hashLo(key));
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> getStats() {
+        return Map.of(
+                "store", "mapped",
+                "size", count,
+                "max_keys", maxKeys,
+                "slots", mask + 1,
+                "response_bytes", ringSize,
+                "response_bytes_used", ringHead - ringTail,
+                "expired", expired,
+                "evicted", evicted,
+                "rejected", rejected
+        );
+    }
+
+    /**
+     * Append the entry's record to the ring and point its slot at it
+     * @return false if the ring had no room and popping its tail as far as {@code evict} allows didn't make any
+     */
+    private boolean write(long hashHi, long hashLo, int status, int httpStatus, long requestHash,
+                          byte[] contentType, byte[] headers, byte[] body, long expiresAt, long now, int evict) {
+        int contentTypeLength = contentType == null ? 0 : contentType.length;
+        int headersLength = headers == null ? 0 : headers.length;
+        int length = body == null ? 0 : body.length;
+        int recordBytes = align(RECORD_HEADER_BYTES + contentTypeLength + headersLength + length);
+        if (recordBytes > ringSize) {
+            throw new IllegalArgumentException("A " + length + "-byte response does not fit in the "
+                    + ringSize + "-byte idempotency response file");
+        }
+        long position = ringHead;
+        int offset = (int) (position % ringSize);
+        // Records never wrap; pad to the end of the ring and start over at its beginning
+        int padding = offset + recordBytes > ringSize ? ringSize - offset : 0;
+        while (ringSize - (position - ringTail) < padding + recordBytes) {
+            if (!popTail(now, evict)) {
+                return false;
+            }
+        }
+        if (padding > 0) {
+            ring.putLong(offset + R_HASH_HI, 0);
+            position += padding;
+            offset = 0;
+        }
+        ring.putLong(offset + R_HASH_HI, hashHi);
+        ring.putLong(offset + R_HASH_LO, hashLo);
+        ring.putLong(offset + R_REQUEST_HASH, requestHash);
+        ring.putInt(offset + R_CONTENT_TYPE_LENGTH, contentTypeLength);
+        ring.putInt(offset + R_BODY_LENGTH, length);
+        ring.putInt(offset + R_HEADERS_LENGTH, headersLength);
+        if (contentTypeLength > 0) {
+            ring.put(offset + RECORD_HEADER_BYTES, contentType);
+        }
+        if (headersLength > 0) {
+            ring.put(offset + RECORD_HEADER_BYTES + contentTypeLength, headers);
+        }
+        if (length > 0) {
+            ring.put(offset + RECORD_HEADER_BYTES + contentTypeLength + headersLength, body);
+        }
+        ringHead = position + recordBytes;
+        index.putLong(H_RING_HEAD, ringHead);
+
+        // Popping the tail may have shifted slots, so look the key up only now
+        int slot = find(hashHi, hashLo);
+        boolean added = slot < 0;
+        if (added) {
+            slot = -slot - 1;
+        }
+        int base = slotOffset(slot);
+        index.putLong(base + S_HASH_LO, hashLo);
+        index.putLong(base + S_EXPIRES, expiresAt);
+        index.putLong(base + S_RECORD, position);
+        index.putInt(base + S_STATUS, status | httpStatus << 8);
+        index.putLong(base + S_HASH_HI, hashHi);
+        if (added) {
+            index.putInt(H_COUNT, ++count);
+        }
+        return true;
+    }
+
+    private void expire(long now) {
+        while (popTail(now, EXPIRED)) {
+            // keep going
+        }
+    }
+
+    /**
+     * Drop the oldest record in the ring, deleting its entry if the entry still points at it
+     * @param evict EXPIRED to only drop an expired entry, COMPLETED to also evict a live completed one,
+     *              ANY to evict whatever is there
+     * @return false if the ring is empty or its oldest entry may not be evicted
+     */
+    private boolean popTail(long now, int evict) {
+        if (ringTail == ringHead) {
+            return false;
+        }
+        int offset = (int) (ringTail % ringSize);
+        long hashHi = ring.getLong(offset + R_HASH_HI);
+        if (hashHi == 0) {
+            ringTail += ringSize - offset;
+            index.putLong(H_RING_TAIL, ringTail);
+            return true;
+        }
+        int slot = find(hashHi, ring.getLong(offset + R_HASH_LO));
+        if (slot >= 0 && index.getLong(slotOffset(slot) + S_RECORD) == ringTail) {
+            if (isExpired(slot, now)) {
+                expired++;
+            } else if (evict == ANY || evict == COMPLETED && (index.getInt(slotOffset(slot) + S_STATUS) & 0xFF) != PROCESSING) {
+                evicted++;
+            } else {
+                return false;
+            }
+            delete(slot);
+        }
+        ringTail += align(RECORD_HEADER_BYTES + ring.getInt(offset + R_CONTENT_TYPE_LENGTH)
+                + ring.getInt(offset + R_HEADERS_LENGTH) + ring.getInt(offset + R_BODY_LENGTH));
+        index.putLong(H_RING_TAIL, ringTail);
+        return true;
+    }
+
+    /**
+     * @return The slot holding the key, or {@code -(free slot) - 1} if it isn't there
+     */
+    private int find(long hashHi, long hashLo) {
+        for (int slot = (int) hashHi & mask; ; slot = (slot + 1) & mask) {
+            int base = slotOffset(slot);
+            long storedHi = index.getLong(base + S_HASH_HI);
+            if (storedHi == 0) {
+                return -slot - 1;
+            }
+            if (storedHi == hashHi && index.getLong(base + S_HASH_LO) == hashLo) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Remove a slot and move later entries of the same probe run back into the gap, so lookups
+     * never need tombstones to get past it
+     */
+    private void delete(int slot) {
+        int hole = slot;
+        for (int next = (hole + 1) & mask; ; next = (next + 1) & mask) {
+            long hashHi = index.getLong(slotOffset(next) + S_HASH_HI);
+            if (hashHi == 0) {
+                break;
+            }
+            int home = (int) hashHi & mask;
+            // An entry can fill the hole only if its home slot is not between the hole and itself
+            boolean reachable = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!reachable) {
+                copySlot(next, hole);
+                hole = next;
+            }
+        }
+        index.putLong(slotOffset(hole) + S_HASH_HI, 0);
+        index.putInt(H_COUNT, --count);
+    }
+
+    private void copySlot(int from, int to) {
+        int source = slotOffset(from);
+        int target = slotOffset(to);
+        index.putLong(target + S_HASH_LO, index.getLong(source + S_HASH_LO));
+        index.putLong(target + S_EXPIRES, index.getLong(source + S_EXPIRES));
+        index.putLong(target + S_RECORD, index.getLong(source + S_RECORD));
+        index.putInt(target + S_STATUS, index.getInt(source + S_STATUS));
+        index.putLong(target + S_HASH_HI, index.getLong(source + S_HASH_HI));
+    }
+
+    private boolean isExpired(int slot, long now) {
+        return now >= index.getLong(slotOffset(slot) + S_EXPIRES);
+    }
+
+    private IdempotencyResult read(int slot) {
+        int base = slotOffset(slot);
+        int word = index.getInt(base + S_STATUS);
+        int offset = (int) (index.getLong(base + S_RECORD) % ringSize);
+        long requestHash = ring.getLong(offset + R_REQUEST_HASH);
+        if ((word & 0xFF) == PROCESSING) {
+            return IdempotencyResult.processing(requestHash);
+        }
+        byte[] contentType = new byte[ring.getInt(offset + R_CONTENT_TYPE_LENGTH)];
+        byte[] headers = new byte[ring.getInt(offset + R_HEADERS_LENGTH)];
+        byte[] body = new byte[ring.getInt(offset + R_BODY_LENGTH)];
+        ring.get(offset + RECORD_HEADER_BYTES, contentType);
+        ring.get(offset + RECORD_HEADER_BYTES + contentType.length, headers);
+        ring.get(offset + RECORD_HEADER_BYTES + contentType.length + headers.length, body);
+        return IdempotencyResult.completed(word >>> 8, new String(contentType, StandardCharsets.UTF_8),
+                decodeHeaders(headers), body, requestHash);
+    }
+
+    private static byte[] encodeHeaders(Map<String, String> headers) {
+        if (headers.isEmpty()) {
+            return null;
+        }
+        StringBuilder lines = new StringBuilder();
+        headers.forEach((name, value) -> lines.append(name).append(": ").append(value).append('\n'));
+        return lines.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> decodeHeaders(byte[] headers) {
+        if (headers.length == 0) {
+            return Map.of();
+        }
+        Map<String, String> decoded = new HashMap<>();
+        for (String line : new String(headers, StandardCharsets.UTF_8).split("\n")) {
+            int colon = line.indexOf(": ");
+            decoded.put(line.substring(0, colon), line.substring(colon + 2));
+        }
+        return decoded;
+    }
+
+    private int slotOffset(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 7) & ~7;
+    }
+
+    // Two independent 64-bit hashes over the key's chars; a false match needs both to collide
+
+    static long hashHi(String key) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        hash = mix(hash);
+        return hash == 0 ? 1 : hash;
+    }
+
+    static long hashLo(String key) {
+        long hash = 0x9E3779B97F4A7C15L ^ key.length();
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash + key.charAt(i)) * 0xC6A4A7935BD1E995L;
+            hash ^= hash >>> 47;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,194 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.events.EventTopics;
+import com.distributedinventory.cqrs.core.infrastructure.EventOutbox;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the event store's outbox to Kafka on a background thread. Each batch is sent
+ * keyed by aggregate id and marked dispatched only up to the first record the broker did not
+ * acknowledge; the rest is retried, so delivery is at least once and in order per aggregate.
+ * <p>
+ * An aggregate has at most one record in flight: its next one is only sent once the broker has
+ * acknowledged the previous, and none are sent after one fails. Otherwise a later version could
+ * be published ahead of the retry of an earlier one. Different aggregates are sent side by side,
+ * so a retry only ever publishes an aggregate's records again as a whole run, in order.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "inventory.outbox.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class OutboxRelay {
+    
+    private final EventOutbox eventOutbox;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final PublishTracker publishTracker;
+    
+    @Value("${inventory.outbox.batch-size:500}")
+    private int batchSize;
+    
+    @Value("${inventory.outbox.poll-interval-ms:20}")
+    private long pollIntervalMs;
+    
+    @Value("${inventory.outbox.send-timeout-ms:30000}")
+    private long sendTimeoutMs;
+    
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile long lastDispatchedAt;
+    private volatile String lastError;
+    
+    private volatile boolean running;
+    private Thread relay;
+    
+    @PostConstruct
+    public void start() {
+        running = true;
+        relay = new Thread(this::run, "outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+        log.info("Outbox relay started (batch size {}, poll interval {} ms)", batchSize, pollIntervalMs);
+    }
+    
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        relay.interrupt();
+        relay.join(TimeUnit.SECONDS.toMillis(5));
+    }
+    
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dispatched", dispatched.get());
+        stats.put("failed_batches", failedBatches.get());
+        stats.put("last_dispatched_at", lastDispatchedAt);
+        stats.put("last_error", lastError == null ? "" : lastError);
+        return stats;
+    }
+    
+    private void run() {
+        long backoffMs = pollIntervalMs;
+        while (running) {
+            try {
+                List<EventModel> batch = eventOutbox.fetchPending(batchSize);
+                if (batch.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(pollIntervalMs);
+                    continue;
+                }
+                
+                int acknowledged = send(batch);
+                if (acknowledged > 0) {
+                    eventOutbox.markDispatched(batch.subList(0, acknowledged));
+                    dispatched.addAndGet(acknowledged);
+                    lastDispatchedAt = System.currentTimeMillis();
+                }
+                
+                if (acknowledged < batch.size()) {
+                    failedBatches.incrementAndGet();
+                    TimeUnit.MILLISECONDS.sleep(backoffMs);
+                    backoffMs = Math.min(backoffMs * 2, 5000);
+                } else {
+                    backoffMs = pollIntervalMs;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                lastError = e.getMessage();
+                log.error("Outbox relay error: {}", e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, 5000);
+            }
+        }
+    }
+    
+    /**
+     * Send a batch in rounds, each sending the next record of every aggregate still going, and
+     * wait for the acks
+     * @return The length of the acknowledged prefix of the batch
+     */
+    private int send(List<EventModel> batch) throws InterruptedException {
+        Map<String, List<Integer>> byAggregate = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            byAggregate.computeIfAbsent(batch.get(i).getAggregateIdentifier(), k -> new ArrayList<>()).add(i);
+        }
+        
+        boolean[] acknowledged = new boolean[batch.size()];
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        List<List<Integer>> sending = new ArrayList<>(byAggregate.values());
+        for (int round = 0; !sending.isEmpty(); round++) {
+            List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>(sending.size());
+            for (List<Integer> indexes : sending) {
+                EventModel eventModel = batch.get(indexes.get(round));
+                sends.add(publishTracker.track(() -> kafkaTemplate.send(toRecord(eventModel))));
+            }
+            
+            List<List<Integer>> next = new ArrayList<>(sending.size());
+            for (int i = 0; i < sends.size(); i++) {
+                List<Integer> indexes = sending.get(i);
+                int index = indexes.get(round);
+                try {
+                    sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    lastError = e.getMessage();
+                    log.warn("Outbox relay failed to publish event {} for aggregate: {} - {}",
+                            batch.get(index).getVersion(), batch.get(index).getAggregateIdentifier(), e.getMessage());
+                    continue;
+                }
+                acknowledged[index] = true;
+                if (round + 1 < indexes.size()) {
+                    next.add(indexes);
+                }
+            }
+            sending = next;
+        }
+        
+        int prefix = 0;
+        while (prefix < batch.size() && acknowledged[prefix]) {
+            prefix++;
+        }
+        return prefix;
+    }
+    
+    private static ProducerRecord<String, byte[]> toRecord(EventModel eventModel) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(
+                EventTopics.forEventType(eventModel.getEventType()),
+                eventModel.getAggregateIdentifier(),
+                eventModel.getEventData());
+        record.headers().add(new RecordHeader(EventTopics.TYPE_HEADER, utf8(eventModel.getEventType())));
+        record.headers().add(new RecordHeader(EventTopics.VERSION_HEADER, utf8(String.valueOf(eventModel.getVersion()))));
+        record.headers().add(new RecordHeader(EventTopics.COMMITTED_AT_HEADER, utf8(String.valueOf(eventModel.getTimeStamp().getTime()))));
+        return record;
+    }
+    
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -2,24 +2,58 @@ package com.bankcqrsexample.account.cmd.cmd.infrastructure;
 
 import com.distributedinventory.cqrs.core.commands.BaseCommand;
 import com.distributedinventory.cqrs.core.commands.CommandHandlerMethod;
+import com.distributedinventory.cqrs.core.commands.CommandResult;
+import com.distributedinventory.cqrs.core.exceptions.CommandRejectedException;
 import com.bankcqrsexample.account.cmd.cmd.api.commands.CommandHandler;
 import com.bankcqrsexample.account.cmd.cmd.api.commands.CreateProductCommand;
+import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockBatchCommand;
 import com.bankcqrsexample.account.cmd.cmd.api.commands.UpdateStockCommand;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs every command on a single-threaded lane chosen by hashing the aggregate id, so commands
+ * for one product are applied one at a time without locking while different products spread
+ * across all lanes. Each command is timed from submission to completion, tagged with its type
+ * and whether it succeeded, failed or was rejected (queue full or deadline expired).
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProductCommandDispatcher implements com.distributedinventory.cqrs.core.infrastructure.CommandDispatcher {
     
     private final CommandHandler commandHandler;
-    private final Map<Class<? extends BaseCommand>, CommandHandlerMethod<BaseCommand>> routes = new HashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Map<Class<? extends BaseCommand>, CommandHandlerMethod<BaseCommand>> routes = new ConcurrentHashMap<>();
+    private final Map<Class<? extends BaseCommand>, CommandTimers> timers = new ConcurrentHashMap<>();
+    
+    // 0 means one lane per available processor
+    @Value("${inventory.commands.lanes:0}")
+    private int laneCount;
+    
+    @Value("${inventory.commands.lane-queue-capacity:1024}")
+    private int laneQueueCapacity;
+    
+    private ThreadPoolExecutor[] lanes;
 
     @Override
     public <T extends BaseCommand> void registerHandler(Class<T> type, CommandHandlerMethod<T> handler) {
@@ -29,16 +63,114 @@ public class ProductCommandDispatcher implements com.distributedinventory.cqrs.c
 
     @Override
     public void send(BaseCommand command) {
+        try {
+            sendAsync(command).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<CommandResult> sendAsync(BaseCommand command) {
         var handler = routes.get(command.getClass());
         if (handler == null) {
             throw new RuntimeException("No command handler was registered!");
         }
-        handler.handle(command);
+        
+        long submitted = System.nanoTime();
+        CommandTimers commandTimers = timers.computeIfAbsent(command.getClass(), type -> new CommandTimers(type, meterRegistry));
+        CompletableFuture<CommandResult> result = new CompletableFuture<>();
+        result.whenComplete((commandResult, e) -> commandTimers.record(e, System.nanoTime() - submitted));
+        try {
+            laneFor(command.getId()).execute(() -> {
+                // Nobody is waiting for an expired command any more; running it would only
+                // delay the commands queued behind it
+                if (command.isExpired(Instant.now())) {
+                    result.completeExceptionally(new CommandRejectedException("Command deadline expired before it was processed"));
+                    return;
+                }
+                try {
+                    result.complete(handler.handle(command));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new CommandRejectedException("Command queue is full"));
+        }
+        return result;
+    }
+
+    public List<Integer> getQueueDepths() {
+        List<Integer> depths = new ArrayList<>(lanes.length);
+        for (ThreadPoolExecutor lane : lanes) {
+            depths.add(lane.getQueue().size());
+        }
+        return depths;
+    }
+
+    public int getLaneQueueCapacity() {
+        return laneQueueCapacity;
+    }
+
+    private ThreadPoolExecutor laneFor(String aggregateId) {
+        return lanes[Math.floorMod(aggregateId.hashCode(), lanes.length)];
     }
 
     @PostConstruct
     public void registerHandlers() {
         routes.put(CreateProductCommand.class, (CommandHandlerMethod<BaseCommand>) command -> commandHandler.handle((CreateProductCommand) command));
         routes.put(UpdateStockCommand.class, (CommandHandlerMethod<BaseCommand>) command -> commandHandler.handle((UpdateStockCommand) command));
+        routes.put(UpdateStockBatchCommand.class, (CommandHandlerMethod<BaseCommand>) command -> commandHandler.handle((UpdateStockBatchCommand) command));
+        
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        lanes = new ThreadPoolExecutor[count];
+        for (int i = 0; i < count; i++) {
+            String name = "command-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneQueueCapacity), runnable -> new Thread(runnable, name));
+        }
+        Gauge.builder("inventory.commands.queued", this, dispatcher -> dispatcher.getQueueDepths().stream().mapToInt(Integer::intValue).sum())
+                .description("Commands waiting in the lane queues")
+                .register(meterRegistry);
+        log.info("Started {} command lanes with queue capacity {}", count, laneQueueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static final class CommandTimers {
+        private final Timer succeeded;
+        private final Timer failed;
+        private final Timer rejected;
+
+        private CommandTimers(Class<?> type, MeterRegistry registry) {
+            succeeded = timer(type, "success", registry);
+            failed = timer(type, "failure", registry);
+            rejected = timer(type, "rejected", registry);
+        }
+
+        private void record(Throwable error, long nanos) {
+            Timer timer = error == null ? succeeded : error instanceof CommandRejectedException ? rejected : failed;
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        private static Timer timer(Class<?> type, String outcome, MeterRegistry registry) {
+            return Timer.builder("inventory.commands")
+                    .description("Time from a command's submission to its completion, lane queueing included")
+                    .tag("type", type.getSimpleName())
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.infrastructure.MeterStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Follows every Kafka send from the call to the broker's acknowledgement, for both the direct
+ * producer and the outbox relay. The send itself is timed separately from the ack, because it
+ * blocks when the producer is waiting for metadata or its buffer is full.
+ */
+@Component
+public class PublishTracker {
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final Timer sendTimer;
+    private final Timer ackTimer;
+    private final Counter errors;
+
+    public PublishTracker(MeterRegistry meterRegistry) {
+        sendTimer = Timer.builder("inventory.kafka.publish.send")
+                .description("Time spent in KafkaTemplate.send before it returns")
+                .register(meterRegistry);
+        ackTimer = Timer.builder("inventory.kafka.publish.ack")
+                .description("Time from a send to the broker's acknowledgement")
+                .register(meterRegistry);
+        errors = Counter.builder("inventory.kafka.publish.errors")
+                .description("Sends that failed, synchronously or when acknowledged")
+                .register(meterRegistry);
+        Gauge.builder("inventory.kafka.publish.in.flight", inFlight, AtomicLong::get)
+                .description("Sends waiting for the broker's acknowledgement")
+                .register(meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> track(Supplier<CompletableFuture<T>> send) {
+        long started = System.nanoTime();
+        inFlight.incrementAndGet();
+        CompletableFuture<T> future;
+        try {
+            future = send.get();
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            errors.increment();
+            throw e;
+        }
+        sendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+
+        future.whenComplete((result, ex) -> {
+            inFlight.decrementAndGet();
+            if (ex == null) {
+                ackTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            } else {
+                errors.increment();
+            }
+        });
+        return future;
+    }
+
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("in_flight", inFlight.get());
+        stats.put("acknowledged", ackTimer.count());
+        stats.put("failed", (long) errors.count());
+        stats.put("send_latency", MeterStats.timer(sendTimer));
+        stats.put("ack_latency", MeterStats.timer(ackTimer));
+        return stats;
+    }
+}
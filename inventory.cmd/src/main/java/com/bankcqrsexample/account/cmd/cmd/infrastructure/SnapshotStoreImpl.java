@@ -0,0 +1,30 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.domain.AggregateSnapshot;
+import com.distributedinventory.cqrs.core.infrastructure.SnapshotStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+public class SnapshotStoreImpl implements SnapshotStore {
+    
+    // Only the latest snapshot per aggregate is kept; older ones are never read
+    private final Map<String, AggregateSnapshot> snapshots = new ConcurrentHashMap<>();
+    
+    @Override
+    public void saveSnapshot(AggregateSnapshot snapshot) {
+        // Never let a late writer replace a newer snapshot
+        snapshots.merge(snapshot.getAggregateIdentifier(), snapshot,
+                (current, candidate) -> candidate.getVersion() > current.getVersion() ? candidate : current);
+    }
+    
+    @Override
+    public Optional<AggregateSnapshot> getLatestSnapshot(String aggregateId) {
+        return Optional.ofNullable(snapshots.get(aggregateId));
+    }
+}
@@ -0,0 +1,246 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.EventModel;
+import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.serialization.BinaryEventSerializer;
+import com.distributedinventory.cqrs.core.serialization.ProductCreatedEventCodec;
+import com.distributedinventory.cqrs.core.serialization.StockUpdatedEventCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Recovery and rollback of the file event store. A crash is simulated by closing the store and
+ * then tearing or wiping records in its segment files, as a write cut short would leave them.
+ */
+class FileEventStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<FileEventStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (FileEventStore store : opened) {
+            store.close();
+        }
+    }
+
+    @Test
+    void recoversEverythingBeforeARecordTornInTheMiddle() throws IOException {
+        FileEventStore store = open(1 << 20, "always");
+        store.saveEvents("product-a", List.of(created("product-a")), -1);
+        store.saveEvents("product-a", List.of(updated("product-a", 5)), 0);
+        store.saveEvents("product-b", List.of(created("product-b")), -1);
+        EventModel torn = last(store.findAll());
+        close(store);
+
+        // Only the first half of product-b's record made it to disk
+        int recordLength = LogSegment.HEADER_BYTES + recordPayloadLength(torn);
+        wipe(torn, recordLength / 2, 1 << 20);
+
+        store = open(1 << 20, "always");
+        assertThat(store.getCurrentVersion("product-a")).isEqualTo(1);
+        assertThat(store.getCurrentVersion("product-b")).isEqualTo(-1);
+        assertThat(store.getEvents("product-a")).extracting(BaseEvent::getVersion).containsExactly(0, 1);
+
+        // The torn space is reused, and what is written there survives the next restart
+        store.saveEvents("product-b", List.of(created("product-b")), -1);
+        close(store);
+        store = open(1 << 20, "always");
+        assertThat(store.getCurrentVersion("product-b")).isEqualTo(0);
+        assertThat(store.findAll()).hasSize(3);
+    }
+
+    @Test
+    void dropsAMultiEventAppendWhoseLastRecordNeverReachedTheDisk() throws IOException {
+        FileEventStore store = open(1 << 20, "always");
+        store.saveEvents("product-a", List.of(created("product-a")), -1);
+        store.saveEvents("product-a", List.of(updated("product-a", 1), updated("product-a", 2), updated("product-a", 3)), 0);
+        List<EventModel> records = store.findAll();
+        close(store);
+
+        // The first two records of the append are whole and valid; only the last is missing
+        wipe(last(records), 0, LogSegment.HEADER_BYTES + recordPayloadLength(last(records)));
+
+        store = open(1 << 20, "always");
+        assertThat(store.getCurrentVersion("product-a")).isEqualTo(0);
+        assertThat(store.findAll()).hasSize(1);
+
+        store.saveEvents("product-a", List.of(updated("product-a", 7)), 0);
+        close(store);
+        store = open(1 << 20, "always");
+        assertThat(store.getEvents("product-a")).extracting(BaseEvent::getVersion).containsExactly(0, 1);
+        assertThat(((StockUpdatedEvent) store.getEvents("product-a").get(1)).getNewAmount()).isEqualTo(7);
+    }
+
+    @Test
+    void cutsAnIncompleteAppendBackAcrossASegmentRoll() throws IOException {
+        FileEventStore store = open(1024, "always");
+        store.saveEvents("product-a", List.of(created("product-a")), -1);
+        List<BaseEvent> updates = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            updates.add(updated("product-a", i));
+        }
+        store.saveEvents("product-a", updates, 0);
+        List<EventModel> records = store.findAll();
+        assertThat(segmentId(last(records))).as("the append rolled the log").isGreaterThan(0);
+        close(store);
+
+        wipe(last(records), 0, LogSegment.HEADER_BYTES + recordPayloadLength(last(records)));
+
+        store = open(1024, "always");
+        assertThat(store.getCurrentVersion("product-a")).isEqualTo(0);
+        assertThat(store.findAll()).hasSize(1);
+
+        // Appends carry on from where the incomplete one started, and all of it is gone after a restart
+        store.saveEvents("product-a", List.of(updated("product-a", 20)), 0);
+        close(store);
+        store = open(1024, "always");
+        assertThat(store.getEvents("product-a")).extracting(BaseEvent::getVersion).containsExactly(0, 1);
+        assertThat(store.findAll()).hasSize(2);
+    }
+
+    @Test
+    void rollsBackAnAppendThatFailsAcrossASegmentRoll() throws IOException {
+        FileEventStore store = open(1024, "interval");
+        store.saveEvents("product-a", List.of(created("product-a")), -1);
+        // The next segment can't be created, so the append fails once it fills the first one
+        Path blocked = directory.resolve(LogSegment.fileName(1));
+        Files.createDirectory(blocked);
+        List<BaseEvent> updates = new ArrayList<>();
+        for (int i = 1; i <= 12; i++) {
+            updates.add(updated("product-a", i));
+        }
+
+        assertThatThrownBy(() -> store.saveEvents("product-a", updates, 0)).isInstanceOf(UncheckedIOException.class);
+        assertThat(store.getCurrentVersion("product-a")).isEqualTo(0);
+        assertThat(store.findAll()).hasSize(1);
+        assertThat(updates).extracting(BaseEvent::getVersion).containsOnly(0);
+
+        Files.delete(blocked);
+        store.saveEvents("product-a", updates, 0);
+        assertThat(updates).extracting(BaseEvent::getVersion).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+        close(store);
+
+        FileEventStore reopened = open(1024, "interval");
+        assertThat(reopened.getEvents("product-a")).extracting(BaseEvent::getVersion)
+                .containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+        assertThat(reopened.findAll()).hasSize(13);
+    }
+
+    @Test
+    void outboxOnlyReadsWhatIsOnDisk() throws IOException {
+        // Nothing flushes the log in the background within the test
+        FileEventStore interval = open(1 << 20, "interval", 3_600_000L);
+
+        interval.saveEvents("product-a", List.of(created("product-a")), -1);
+        assertThat(interval.fetchPending(100)).isEmpty();
+        ReflectionTestUtils.invokeMethod(interval, "flushPublished");
+        assertThat(interval.fetchPending(100)).extracting(EventModel::getAggregateIdentifier).containsExactly("product-a");
+        close(interval);
+
+        // With fsync never, the relay forces what it is about to read itself
+        FileEventStore never = open(1 << 20, "never");
+        never.saveEvents("product-b", List.of(created("product-b")), -1);
+        assertThat(never.fetchPending(100)).extracting(EventModel::getAggregateIdentifier).containsExactly("product-a", "product-b");
+    }
+
+    private FileEventStore open(int segmentBytes, String fsync) throws IOException {
+        return open(segmentBytes, fsync, 100L);
+    }
+
+    private FileEventStore open(int segmentBytes, String fsync, long fsyncIntervalMs) throws IOException {
+        var store = new FileEventStore(new BinaryEventSerializer(
+                List.of(new ProductCreatedEventCodec(), new StockUpdatedEventCodec()), List.of()));
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(store, "fsync", fsync);
+        ReflectionTestUtils.setField(store, "fsyncIntervalMs", fsyncIntervalMs);
+        store.open();
+        opened.add(store);
+        return store;
+    }
+
+    private void close(FileEventStore store) throws IOException {
+        opened.remove(store);
+        store.close();
+    }
+
+    private static EventModel last(List<EventModel> records) {
+        return records.get(records.size() - 1);
+    }
+
+    private static int segmentId(EventModel record) {
+        return (int) (record.getId() >>> 32);
+    }
+
+    private static int offset(EventModel record) {
+        return (int) record.getId().longValue();
+    }
+
+    private int recordPayloadLength(EventModel record) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(record), StandardOpenOption.READ)) {
+            ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+            channel.read(length, offset(record));
+            return length.flip().getInt();
+        }
+    }
+
+    // Zero the given range of a record and whatever follows it up to the end, relative to the record's start
+    private void wipe(EventModel record, int from, int to) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(record), StandardOpenOption.WRITE)) {
+            long start = offset(record) + (long) from;
+            long end = Math.min(channel.size(), offset(record) + (long) to);
+            channel.write(ByteBuffer.allocate((int) (end - start)), start);
+            channel.force(true);
+        }
+    }
+
+    private Path segmentPath(EventModel record) {
+        return directory.resolve(LogSegment.fileName(segmentId(record)));
+    }
+
+    private static ProductCreatedEvent created(String productId) {
+        return ProductCreatedEvent.builder()
+                .id(productId)
+                .name("File store product")
+                .description("Product used by the file store tests")
+                .category("tests")
+                .price(new BigDecimal("9.99"))
+                .storeId("store-1")
+                .initialAmount(100)
+                .createdDate(new Date())
+                .build();
+    }
+
+    private static StockUpdatedEvent updated(String productId, int newAmount) {
+        return StockUpdatedEvent.builder()
+                .id(productId)
+                .operation("set")
+                .amount(newAmount)
+                .newAmount(newAmount)
+                .reason("test")
+                .updatedDate(new Date())
+                .build();
+    }
+}
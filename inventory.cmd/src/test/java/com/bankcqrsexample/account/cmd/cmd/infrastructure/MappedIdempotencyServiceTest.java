@@ -0,0 +1,159 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService.Claim;
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService.IdempotencyResult;
+import com.distributedinventory.cqrs.core.infrastructure.IdempotencyService.IdempotencyStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The mapped idempotency store across restarts. A restart is a close followed by opening a new
+ * instance on the same directory, as a redeploy would.
+ */
+class MappedIdempotencyServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<MappedIdempotencyService> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (MappedIdempotencyService service : opened) {
+            service.close();
+        }
+    }
+
+    @Test
+    void keepsResultsAndInFlightKeysAcrossARestart() throws IOException {
+        MappedIdempotencyService service = open(1 << 20, 1000, 60, 86400);
+        complete(service, "key-1", 1L, 201, body("product-1"));
+        complete(service, "key-2", 2L, 409, body("conflict"));
+        assertThat(service.claim("key-3", 3L).isOwned()).isTrue();
+        close(service);
+
+        // A different configuration doesn't change the geometry of existing files
+        service = open(4096, 10, 60, 86400);
+        IdempotencyResult created = service.getResult("key-1");
+        assertThat(created.getStatus()).isEqualTo(IdempotencyStatus.SUCCESS);
+        assertThat(created.getHttpStatusCode()).isEqualTo(201);
+        assertThat(created.getContentType()).isEqualTo("application/json");
+        assertThat(created.getHeaders()).containsEntry("ETag", "\"1\"");
+        assertThat(created.getResponseBody()).isEqualTo(body("product-1"));
+        assertThat(created.matches(1L)).isTrue();
+        assertThat(service.getResult("key-2").getStatus()).isEqualTo(IdempotencyStatus.ERROR);
+
+        Claim retry = service.claim("key-3", 3L);
+        assertThat(retry.isOwned()).isFalse();
+        assertThat(retry.getExisting().getStatus()).isEqualTo(IdempotencyStatus.PROCESSING);
+        assertThat(service.getStats())
+                .containsEntry("size", 3)
+                .containsEntry("slots", 2048)
+                .containsEntry("response_bytes", 1 << 20);
+    }
+
+    @Test
+    void expiresEntriesWrittenBeforeARestart() throws IOException {
+        MappedIdempotencyService service = open(1 << 20, 1000, 0, 0);
+        complete(service, "key-1", 1L, 201, body("product-1"));
+        assertThat(service.claim("key-2", 2L).isOwned()).isTrue();
+        close(service);
+
+        // Expiry times are absolute, so a longer TTL after the restart doesn't bring them back
+        service = open(1 << 20, 1000, 60, 86400);
+        assertThat(service.getResult("key-1")).isNull();
+        assertThat(service.getResult("key-2")).isNull();
+
+        // Claiming sweeps them off the ring, and an expired key is claimed afresh
+        assertThat(service.claim("key-2", 2L).isOwned()).isTrue();
+        assertThat(service.getStats()).containsEntry("size", 1).containsEntry("response_bytes_used", 40L);
+    }
+
+    @Test
+    void wrapsTheResponseRingByEvictingTheOldestResults() throws IOException {
+        MappedIdempotencyService service = open(4096, 1000, 60, 86400);
+        for (int i = 0; i < 40; i++) {
+            complete(service, "key-" + i, i, 201, body("product-" + i + "-".repeat(150)));
+            assertThat((long) service.getStats().get("response_bytes_used")).isLessThanOrEqualTo(4096L);
+        }
+        assertThat(service.getResult("key-0")).isNull();
+        assertThat((long) service.getStats().get("evicted")).isGreaterThan(0L);
+        close(service);
+
+        service = open(4096, 1000, 60, 86400);
+        assertThat(service.getResult("key-39").getResponseBody()).isEqualTo(body("product-39" + "-".repeat(150)));
+        // Writing carries on around the ring from where it was before the restart
+        for (int i = 40; i < 80; i++) {
+            complete(service, "key-" + i, i, 201, body("product-" + i + "-".repeat(150)));
+        }
+        assertThat(service.getResult("key-39")).isNull();
+        assertThat(service.getResult("key-79").getResponseBody()).isEqualTo(body("product-79" + "-".repeat(150)));
+        assertThat(service.getResult("key-78").getResponseBody()).isEqualTo(body("product-78" + "-".repeat(150)));
+    }
+
+    @Test
+    void evictsCompletedKeysAtTheLimitButNeverInFlightOnes() throws IOException {
+        MappedIdempotencyService service = open(1 << 20, 512, 60, 86400);
+        for (int i = 0; i < 512; i++) {
+            complete(service, "key-" + i, i, 201, body("product-" + i));
+        }
+        // Each new key evicts the oldest completed one; slots freed by eviction are found again
+        for (int i = 512; i < 1024; i++) {
+            assertThat(service.claim("key-" + i, i).isOwned()).isTrue();
+        }
+        assertThat(service.getResult("key-511")).isNull();
+        for (int i = 512; i < 1024; i++) {
+            assertThat(service.getResult("key-" + i).getStatus()).isEqualTo(IdempotencyStatus.PROCESSING);
+        }
+        assertThat(service.claim("key-1024", 1024L).isRejected()).isTrue();
+
+        // A retry of an in-flight key still finds it at the limit
+        assertThat(service.claim("key-600", 600L).getExisting().getStatus()).isEqualTo(IdempotencyStatus.PROCESSING);
+        service.release("key-600");
+        close(service);
+
+        service = open(1 << 20, 512, 60, 86400);
+        assertThat(service.getStats()).containsEntry("size", 511).containsEntry("evicted", 0L);
+        assertThat(service.claim("key-1024", 1024L).isOwned()).isTrue();
+        assertThat(service.getResult("key-600")).isNull();
+        for (int i = 512; i < 1024; i++) {
+            if (i != 600) {
+                assertThat(service.getResult("key-" + i)).as("key-%d", i).isNotNull();
+            }
+        }
+    }
+
+    private MappedIdempotencyService open(long responseBytes, int maxKeys, long processingTtlSeconds,
+                                          long completedTtlSeconds) throws IOException {
+        var service = new MappedIdempotencyService(directory.toString(), responseBytes, maxKeys,
+                processingTtlSeconds, completedTtlSeconds);
+        service.open();
+        opened.add(service);
+        return service;
+    }
+
+    private void close(MappedIdempotencyService service) throws IOException {
+        opened.remove(service);
+        service.close();
+    }
+
+    private static void complete(MappedIdempotencyService service, String key, long requestHash, int httpStatus, byte[] body) {
+        assertThat(service.claim(key, requestHash).isOwned()).isTrue();
+        service.storeResult(key, IdempotencyResult.completed(httpStatus, "application/json",
+                Map.of("ETag", "\"1\""), body, requestHash));
+    }
+
+    private static byte[] body(String id) {
+        return ("{\"id\":\"" + id + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+}
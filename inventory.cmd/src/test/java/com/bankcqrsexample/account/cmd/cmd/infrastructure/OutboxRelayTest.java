@@ -0,0 +1,242 @@
+package com.bankcqrsexample.account.cmd.cmd.infrastructure;
+
+import com.bankcqrsexample.account.cmd.cmd.Application;
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.EventTopics;
+import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
+import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.infrastructure.EventOutbox;
+import com.distributedinventory.cqrs.core.infrastructure.EventStore;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The outbox relay against an embedded broker, on the file event store so that its outbox
+ * outlives a restart of the service
+ */
+@EmbeddedKafka(partitions = 1, topics = EventTopics.STOCK_EVENTS)
+class OutboxRelayTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @TempDir
+    Path directory;
+
+    private ConfigurableApplicationContext context;
+
+    @AfterEach
+    void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void relaysCommittedEventsInOrderAndMarksThemDispatched(EmbeddedKafkaBroker broker) {
+        context = start(broker);
+        String productId = UUID.randomUUID().toString();
+
+        context.getBean(EventStore.class).saveEvents(productId, history(productId, 4), -1);
+
+        assertThat(versionsOf(broker, productId, 4)).containsExactly(0, 1, 2, 3);
+        EventOutbox outbox = context.getBean(EventOutbox.class);
+        awaitTrue(() -> outbox.fetchPending(100).isEmpty());
+        assertThat(context.getBean(OutboxRelay.class).getStats()).containsEntry("dispatched", 4L);
+    }
+
+    @Test
+    void resumesFromItsCheckpointAfterARestartWithoutLosingEvents(EmbeddedKafkaBroker broker) throws InterruptedException {
+        context = start(broker);
+        String productId = UUID.randomUUID().toString();
+        List<BaseEvent> history = history(productId, 5);
+        EventStore eventStore = context.getBean(EventStore.class);
+        eventStore.saveEvents(productId, history.subList(0, 3), -1);
+        awaitTrue(() -> context.getBean(OutboxRelay.class).getStats().get("dispatched").equals(3L));
+
+        // Appended while the relay is down: committed, but not yet published
+        context.getBean(OutboxRelay.class).stop();
+        eventStore.saveEvents(productId, history.subList(3, 5), 2);
+        // Pending once the interval flush has them on disk
+        awaitTrue(() -> context.getBean(EventOutbox.class).fetchPending(100).size() == 2);
+        context.close();
+
+        context = start(broker);
+        // Everything is published, and what was dispatched before the restart isn't sent again
+        assertThat(versionsOf(broker, productId, 5)).containsExactly(0, 1, 2, 3, 4);
+        awaitTrue(() -> context.getBean(EventOutbox.class).fetchPending(100).isEmpty());
+    }
+
+    @Test
+    void neverPublishesAnAggregatesLaterEventsAheadOfARetriedOne(EmbeddedKafkaBroker broker) throws InterruptedException {
+        context = start(broker);
+        context.getBean(OutboxRelay.class).stop();
+        String failing = UUID.randomUUID().toString();
+        String other = UUID.randomUUID().toString();
+        EventStore eventStore = context.getBean(EventStore.class);
+        eventStore.saveEvents(failing, history(failing, 5), -1);
+        eventStore.saveEvents(other, history(other, 5), -1);
+
+        // The broker acknowledges every record of the first batch but the failing product's version 2
+        @SuppressWarnings("unchecked")
+        ProducerFactory<String, byte[]> producerFactory = context.getBean(ProducerFactory.class);
+        AtomicBoolean failed = new AtomicBoolean();
+        KafkaTemplate<String, byte[]> kafkaTemplate = new KafkaTemplate<>(producerFactory) {
+            @Override
+            public CompletableFuture<SendResult<String, byte[]>> send(ProducerRecord<String, byte[]> record) {
+                if (failing.equals(record.key()) && version(record.headers().lastHeader(EventTopics.VERSION_HEADER)) == 2
+                        && failed.compareAndSet(false, true)) {
+                    return CompletableFuture.failedFuture(new IllegalStateException("Not acknowledged"));
+                }
+                return super.send(record);
+            }
+        };
+        OutboxRelay relay = new OutboxRelay(context.getBean(EventOutbox.class), kafkaTemplate, context.getBean(PublishTracker.class));
+        ReflectionTestUtils.setField(relay, "batchSize", 500);
+        ReflectionTestUtils.setField(relay, "pollIntervalMs", 20L);
+        ReflectionTestUtils.setField(relay, "sendTimeoutMs", 30000L);
+        relay.start();
+        try {
+            // The retry starts at the failing product's version 2, the third record of the batch
+            awaitTrue(() -> relay.getStats().get("dispatched").equals(2L + 8L));
+            // Nothing after version 2 went out before its retry, so the failing product's records are in order
+            assertThat(versionsOf(broker, failing, 5)).containsExactly(0, 1, 2, 3, 4);
+            // The other product's records after the failure are sent again by the retry, but only as a whole run
+            assertInOrderWithWholeResends(versionsOf(broker, other, 5), 5);
+            assertThat(relay.getStats()).containsEntry("failed_batches", 1L);
+        } finally {
+            relay.stop();
+        }
+    }
+
+    /**
+     * The history in order, followed only by runs that each carry on to its last version: a
+     * resend, never an older version after a newer one within a run
+     */
+    private static void assertInOrderWithWholeResends(List<Integer> versions, int length) {
+        assertThat(versions).hasSizeGreaterThanOrEqualTo(length);
+        for (int i = 0; i < length; i++) {
+            assertThat(versions.get(i)).as("version at %d of %s", i, versions).isEqualTo(i);
+        }
+        for (int i = length; i < versions.size(); i++) {
+            int previous = versions.get(i - 1);
+            assertThat(versions.get(i) == previous + 1 || previous == length - 1)
+                    .as("%s resends whole runs", versions).isTrue();
+        }
+        assertThat(versions.get(versions.size() - 1)).isEqualTo(length - 1);
+    }
+
+    private ConfigurableApplicationContext start(EmbeddedKafkaBroker broker) {
+        return new SpringApplicationBuilder(Application.class)
+                .run("--spring.main.web-application-type=none",
+                        "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID(),
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.show_sql=false",
+                        "--spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+                        "--inventory.event-store.type=file",
+                        "--inventory.event-store.file.directory=" + directory,
+                        "--inventory.outbox.enabled=true",
+                        "--logging.level.root=WARN");
+    }
+
+    /**
+     * Read the topic from the start until it holds the expected number of records for the
+     * product, and a little longer in case there are more than expected
+     * @return The versions of the product's records, in topic order
+     */
+    private static List<Integer> versionsOf(EmbeddedKafkaBroker broker, String productId, int expected) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps(UUID.randomUUID().toString(), "false", broker);
+        List<Integer> versions = new ArrayList<>();
+        try (Consumer<String, byte[]> consumer = new DefaultKafkaConsumerFactory<>(props,
+                new StringDeserializer(), new ByteArrayDeserializer()).createConsumer()) {
+            broker.consumeFromAnEmbeddedTopic(consumer, EventTopics.STOCK_EVENTS);
+            long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while (versions.size() < expected && System.nanoTime() < deadline) {
+                collect(consumer, productId, versions, Duration.ofMillis(200));
+            }
+            collect(consumer, productId, versions, Duration.ofMillis(500));
+        }
+        return versions;
+    }
+
+    private static void collect(Consumer<String, byte[]> consumer, String productId, List<Integer> versions, Duration timeout) {
+        for (ConsumerRecord<String, byte[]> record : consumer.poll(timeout)) {
+            if (productId.equals(record.key())) {
+                versions.add(version(record.headers().lastHeader(EventTopics.VERSION_HEADER)));
+            }
+        }
+    }
+
+    private static int version(Header header) {
+        return Integer.parseInt(new String(header.value(), StandardCharsets.UTF_8));
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition within %s", TIMEOUT).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static List<BaseEvent> history(String productId, int length) {
+        List<BaseEvent> events = new ArrayList<>(length);
+        events.add(ProductCreatedEvent.builder()
+                .id(productId)
+                .name("Outbox product")
+                .description("Product used by the outbox tests")
+                .category("tests")
+                .price(new BigDecimal("9.99"))
+                .storeId("store-1")
+                .initialAmount(100)
+                .createdDate(new Date())
+                .build());
+        for (int i = 1; i < length; i++) {
+            events.add(StockUpdatedEvent.builder()
+                    .id(productId)
+                    .operation("set")
+                    .amount(i)
+                    .newAmount(i)
+                    .reason("test")
+                    .updatedDate(new Date())
+                    .build());
+        }
+        return events;
+    }
+}
@@ -1,57 +1,79 @@
 package com.bankcqrsexample.account.query.query.api.controllers;
 
+import com.bankcqrsexample.account.query.query.domain.AvailabilityProjection;
+import com.bankcqrsexample.account.query.query.domain.ProductSearchIndex;
+import com.bankcqrsexample.account.query.query.infrastructure.ProductReadCache;
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionDispatcher;
+import com.distributedinventory.cqrs.core.infrastructure.MeterStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * A readable summary of the meters Prometheus scrapes from /actuator/prometheus
+ */
 @Slf4j
 @RestController
 @RequestMapping
 @RequiredArgsConstructor
 public class MetricsController {
-    
+
+    private final MeterRegistry meterRegistry;
+    private final ProjectionDispatcher projectionDispatcher;
+    private final ProductReadCache readCache;
+    private final AvailabilityProjection availabilityProjection;
+    private final ProductSearchIndex searchIndex;
+
     @GetMapping("/metrics")
     public ResponseEntity<Map<String, Object>> getMetrics() {
-        // In a real implementation, you'd collect actual metrics from Micrometer, Prometheus, etc.
         var metrics = Map.<String, Object>of(
-                "jvm", Map.of(
-                        "memory", Map.of(
-                                "used", "128MB",
-                                "max", "256MB",
-                                "free", "128MB"
-                        ),
-                        "gc", Map.of(
-                                "collections", 25,
-                                "time", "75ms"
-                        )
-                ),
+                "jvm", MeterStats.jvm(meterRegistry),
                 "database", Map.of(
                         "connections", Map.of(
-                                "active", 5,
-                                "idle", 10,
-                                "max", 20
-                        ),
-                        "queries", Map.of(
-                                "total", 450,
-                                "avg_time", "12ms"
+                                "active", MeterStats.sum(meterRegistry, "hikaricp.connections.active"),
+                                "idle", MeterStats.sum(meterRegistry, "hikaricp.connections.idle"),
+                                "pending", MeterStats.sum(meterRegistry, "hikaricp.connections.pending"),
+                                "max", MeterStats.sum(meterRegistry, "hikaricp.connections.max")
                         )
                 ),
-                "http", Map.of(
-                        "requests_total", 890,
-                        "requests_per_second", 12.3,
-                        "avg_response_time", "25ms"
-                ),
-                "projections", Map.of(
-                        "events_processed", 67,
-                        "lag", "0ms",
-                        "last_updated", java.time.Instant.now().toString()
-                ),
+                "http", MeterStats.http(meterRegistry),
+                "projections", projections(),
+                "read_cache", readCache.getStats(),
+                "availability", availabilityProjection.getStats(),
+                "search", searchIndex.getStats(),
                 "timestamp", java.time.Instant.now().toString()
         );
-        
+
         return ResponseEntity.ok(metrics);
     }
+
+    private Map<String, Object> projections() {
+        Map<String, Object> records = new TreeMap<>();
+        for (Counter counter : meterRegistry.find("inventory.projection.records").counters()) {
+            records.put(counter.getId().getTag("type"), (long) counter.count());
+        }
+
+        Map<String, Object> projections = new LinkedHashMap<>();
+        projections.put("records", records);
+        projections.put("errors", (long) MeterStats.sum(meterRegistry, "inventory.projection.errors"));
+        projections.put("apply", MeterStats.timer(meterRegistry.get("inventory.projection.apply").timer()));
+        projections.put("lag", MeterStats.timer(meterRegistry.get("inventory.projection.lag").timer()));
+        projections.put("worker_apply", MeterStats.timer(meterRegistry.get("inventory.projection.worker.apply").timer()));
+        projections.put("worker_failures", (long) MeterStats.sum(meterRegistry, "inventory.projection.worker.failures"));
+        projections.put("worker_queue_capacity", projectionDispatcher.getWorkerQueueCapacity());
+        projections.put("worker_queue_depths", projectionDispatcher.getQueueDepths());
+        projections.put("batches_in_flight", (long) MeterStats.sum(meterRegistry, "inventory.projection.batches.in.flight"));
+        projections.put("behind_events", (long) MeterStats.sum(meterRegistry, "inventory.projection.behind.events"));
+        // From the consumer client: how many records the partitions it reads are behind by
+        projections.put("consumer_records_lag_max", MeterStats.sum(meterRegistry, "kafka.consumer.fetch.manager.records.lag.max"));
+        projections.put("consumer_records_consumed", MeterStats.sum(meterRegistry, "kafka.consumer.fetch.manager.records.consumed.total"));
+        return projections;
+    }
 }
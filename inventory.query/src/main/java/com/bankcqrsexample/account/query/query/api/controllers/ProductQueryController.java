@@ -1,23 +1,41 @@
 package com.bankcqrsexample.account.query.query.api.controllers;
 
+import com.bankcqrsexample.account.query.query.api.dto.AvailabilityResponse;
+import com.bankcqrsexample.account.query.query.api.dto.AvailabilityView;
 import com.bankcqrsexample.account.query.query.api.dto.ProductResponse;
 import com.bankcqrsexample.account.query.query.api.dto.ProductListResponse;
+import com.bankcqrsexample.account.query.query.api.dto.ProductSearchRequest;
+import com.bankcqrsexample.account.query.query.api.dto.ProductSearchResponse;
+import com.bankcqrsexample.account.query.query.domain.AvailabilityProjection;
+import com.bankcqrsexample.account.query.query.domain.ProductSearchIndex;
 import com.bankcqrsexample.account.query.query.domain.ProductView;
 import com.bankcqrsexample.account.query.query.domain.ProductViewRepository;
+import com.bankcqrsexample.account.query.query.infrastructure.ProductExporter;
+import com.bankcqrsexample.account.query.query.infrastructure.ProductReadCache;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+@Slf4j
 @RestController
 @RequestMapping(path = "/v1")
 @RequiredArgsConstructor
 public class ProductQueryController {
 
     private final ProductViewRepository productViewRepository;
+    private final ProductReadCache readCache;
+    private final AvailabilityProjection availabilityProjection;
+    private final ProductExporter productExporter;
+    private final ProductSearchIndex searchIndex;
 
     @GetMapping("/products")
     public ResponseEntity<ProductListResponse> getAllProducts() {
@@ -28,7 +46,7 @@ public class ProductQueryController {
         }
 
         List<ProductResponse> productResponses = products.stream()
-                .map(this::mapToProductResponse)
+                .map(ProductResponse::from)
                 .collect(Collectors.toList());
 
         return ResponseEntity.ok(ProductListResponse.builder()
@@ -37,36 +55,53 @@ public class ProductQueryController {
                 .build());
     }
 
+    // Catalog syncs ask for NDJSON, streamed a chunk at a time instead of built in memory; ?after=<id> resumes one
+    @GetMapping(path = "/products", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(required = false) String after) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> productExporter.export(after, out));
+    }
+
+    // Served from the search indexes, never the table; a page is continued with the nextCursor it returned
+    @GetMapping("/products/search")
+    public ResponseEntity<ProductSearchResponse> searchProducts(ProductSearchRequest search) {
+        try {
+            return ResponseEntity.ok(searchIndex.search(search));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ProductSearchResponse.builder()
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
     @GetMapping("/products/{id}")
     public ResponseEntity<ProductResponse> getProductById(@PathVariable String id) {
-        return productViewRepository.findById(id)
-                .map(product -> ResponseEntity.ok(mapToProductResponse(product)))
-                .orElse(ResponseEntity.noContent().build());
+        ProductResponse product = readCache.get(id, productViewRepository::findById);
+        return product != null ? ResponseEntity.ok(product) : ResponseEntity.noContent().build();
     }
 
+    // Storefronts poll this, so an unchanged SKU is answered with 304 against the ETag they hold
     @GetMapping("/availability")
-    public ResponseEntity<Map<String, Object>> getAvailability(
+    public ResponseEntity<AvailabilityResponse> getAvailability(
             @RequestParam String sku,
-            @RequestParam(required = false) String storeId) {
-        
-        // For now, return mock availability data
-        // In Phase 3, this will query the proper availability projections
-        var availability = Map.of(
-                "sku", sku,
-                "totalAvailable", 100,
-                "perStore", java.util.List.of(
-                        Map.of(
-                                "storeId", storeId != null ? storeId : "store1",
-                                "onHand", 120,
-                                "reserved", 20,
-                                "available", 100
-                        )
-                )
-        );
-        
+            @RequestParam(required = false) String storeId,
+            WebRequest request) {
+        AvailabilityResponse availability = availabilityProjection.get(sku, storeId);
+        if (availability == null) {
+            return ResponseEntity.noContent().build();
+        }
+
+        long version = 0;
+        for (AvailabilityView store : availability.getPerStore()) {
+            version = Math.max(version, store.getVersion());
+        }
+        String eTag = "\"" + version + "\"";
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
         return ResponseEntity.ok()
-                .header("X-Projection-Lag-ms", "0")
-                .header("ETag", "v1")
+                .eTag(eTag)
                 .body(availability);
     }
 
@@ -93,9 +128,13 @@ public class ProductQueryController {
                     .createdDate(java.time.LocalDateTime.now())
                     .updatedDate(java.time.LocalDateTime.now())
                     .build();
-            productViewRepository.save(testProduct);
+            ProductView saved = productViewRepository.save(overwriting(testProduct));
+            readCache.put(saved);
+            searchIndex.put(saved);
+            availabilityProjection.created(saved);
             return ResponseEntity.ok("Test product created successfully!");
         } catch (Exception e) {
+            log.error("Error creating test product", e);
             return ResponseEntity.status(500).body("Error creating test product: " + e.getMessage());
         }
     }
@@ -116,26 +155,22 @@ public class ProductQueryController {
                         java.time.LocalDateTime.now())
                     .updatedDate(java.time.LocalDateTime.now())
                     .build();
-            productViewRepository.save(productView);
-            System.out.println("Product synchronized successfully: " + productData.get("id"));
+            ProductView saved = productViewRepository.save(overwriting(productView));
+            readCache.put(saved);
+            searchIndex.put(saved);
+            availabilityProjection.created(saved);
+            log.info("Product synchronized: {}", saved.getId());
             return ResponseEntity.ok("Product synchronized successfully!");
         } catch (Exception e) {
-            System.out.println("Error synchronizing product: " + e.getMessage());
+            log.error("Error synchronizing product {}", productData.get("id"), e);
             return ResponseEntity.status(500).body("Error synchronizing product: " + e.getMessage());
         }
     }
 
-    private ProductResponse mapToProductResponse(ProductView product) {
-        return ProductResponse.builder()
-                .id(product.getId())
-                .name(product.getName())
-                .description(product.getDescription())
-                .category(product.getCategory())
-                .price(product.getPrice())
-                .storeId(product.getStoreId())
-                .amount(product.getAmount())
-                .createdDate(product.getCreatedDate())
-                .updatedDate(product.getUpdatedDate())
-                .build();
+    // A view built from scratch has no version, which would make saving it an insert; take over
+    // the stored one's so an existing view is replaced instead
+    private ProductView overwriting(ProductView view) {
+        productViewRepository.findById(view.getId()).ifPresent(existing -> view.setVersion(existing.getVersion()));
+        return view;
     }
 }
@@ -0,0 +1,25 @@
+package com.bankcqrsexample.account.query.query.api.controllers;
+
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionLagTracker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/v1/projections")
+@RequiredArgsConstructor
+public class ProjectionController {
+    
+    private final ProjectionLagTracker lagTracker;
+    
+    /**
+     * Per partition this instance reads: the last applied and the latest produced offset, the
+     * lag between them in events and milliseconds, and the apply rate
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getProjectionStatus() {
+        return ResponseEntity.ok(lagTracker.getStatus());
+    }
+}
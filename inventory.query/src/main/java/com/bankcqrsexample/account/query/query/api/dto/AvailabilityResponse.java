@@ -0,0 +1,18 @@
+package com.bankcqrsexample.account.query.query.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AvailabilityResponse {
+    private String sku;
+    private int totalAvailable;
+    private List<AvailabilityView> perStore;
+}
@@ -0,0 +1,22 @@
+package com.bankcqrsexample.account.query.query.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AvailabilityView {
+    private String sku;
+    private String storeId;
+    private int onHand;
+    private int reserved;
+    private int available;
+    private long version;
+    private Instant lastEventAt;
+}
@@ -1,5 +1,6 @@
 package com.bankcqrsexample.account.query.query.api.dto;
 
+import com.bankcqrsexample.account.query.query.domain.ProductView;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -22,4 +23,18 @@ public class ProductResponse {
     private Integer amount;
     private LocalDateTime createdDate;
     private LocalDateTime updatedDate;
+
+    public static ProductResponse from(ProductView product) {
+        return ProductResponse.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .category(product.getCategory())
+                .price(product.getPrice())
+                .storeId(product.getStoreId())
+                .amount(product.getAmount())
+                .createdDate(product.getCreatedDate())
+                .updatedDate(product.getUpdatedDate())
+                .build();
+    }
 }
@@ -0,0 +1,31 @@
+package com.bankcqrsexample.account.query.query.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Filters, order and page of a product search; every filter is optional and ranges are inclusive
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductSearchRequest {
+    private String storeId;
+    private String category;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private Integer minAmount;
+    private Integer maxAmount;
+    // price, amount or updatedDate; defaults to the field a range is given on, else updatedDate
+    private String sort;
+    // asc or desc
+    private String direction;
+    private Integer limit;
+    // nextCursor of the previous page
+    private String cursor;
+}
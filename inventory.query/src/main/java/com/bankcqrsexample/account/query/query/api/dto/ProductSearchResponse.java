@@ -0,0 +1,19 @@
+package com.bankcqrsexample.account.query.query.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProductSearchResponse {
+    private String message;
+    private List<ProductResponse> products;
+    // Passed back as cursor for the next page; null once there is nothing more
+    private String nextCursor;
+}
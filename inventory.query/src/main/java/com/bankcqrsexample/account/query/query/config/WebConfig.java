@@ -0,0 +1,21 @@
+package com.bankcqrsexample.account.query.query.config;
+
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionLagInterceptor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebConfig implements WebMvcConfigurer {
+    
+    private final ProjectionLagInterceptor projectionLagInterceptor;
+    
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(projectionLagInterceptor)
+                .addPathPatterns("/v1/**")
+                .excludePathPatterns("/v1/health", "/v1/projections/**");
+    }
+}
@@ -0,0 +1,302 @@
+package com.bankcqrsexample.account.query.query.domain;
+
+import com.bankcqrsexample.account.query.query.api.dto.AvailabilityResponse;
+import com.bankcqrsexample.account.query.query.api.dto.AvailabilityView;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Stock availability per SKU and store, kept in memory and updated by the projection as it
+ * applies product events. SKUs and stores are interned to int ids, and the counters live in flat
+ * int and long arrays: one fixed-width slot per SKU holding its running totals, and one per
+ * (SKU, store) row, chained from the SKU's slot. A SKU's total is read from its slot, never
+ * summed; a breakdown walks only that SKU's rows.
+ * <p>
+ * Writers (the projection workers and the startup load) are serialized by a lock. Readers take
+ * no lock: they read optimistically and only fall back to the read lock when a write overlapped.
+ * <p>
+ * A product is stocked in the store it was created for, so stock updates go to that row. Nothing
+ * in the event stream reserves stock yet, so reserved stays 0 and available equals on hand.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AvailabilityProjection {
+
+    // Per SKU: first row of its chain, the row stock updates go to, total on hand, total reserved
+    private static final int SKU_FIRST_ROW = 0;
+    private static final int SKU_HOME_ROW = 1;
+    private static final int SKU_ON_HAND = 2;
+    private static final int SKU_RESERVED = 3;
+    private static final int SKU_WIDTH = 4;
+    // Per row: store id, on hand, reserved, next row of the same SKU
+    private static final int ROW_STORE = 0;
+    private static final int ROW_ON_HAND = 1;
+    private static final int ROW_RESERVED = 2;
+    private static final int ROW_NEXT = 3;
+    private static final int ROW_WIDTH = 4;
+    // Per row: version of the last event applied, epoch millis of that event
+    private static final int ROW_VERSION = 0;
+    private static final int ROW_EVENT_AT = 1;
+    private static final int ROW_STAMP_WIDTH = 2;
+
+    private static final int NONE = -1;
+
+    private final ProductViewRepository productViewRepository;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Integer> skuIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> storeIds = new ConcurrentHashMap<>();
+    private final StampedLock lock = new StampedLock();
+
+    // Written under the write lock only; the arrays are replaced, never shrunk, when they fill up
+    private String[] storeNames = new String[16];
+    private int[] skus = new int[1024 * SKU_WIDTH];
+    private int[] rows = new int[1024 * ROW_WIDTH];
+    private long[] rowStamps = new long[1024 * ROW_STAMP_WIDTH];
+    private int skuCount;
+    private int storeCount;
+    private int rowCount;
+
+    /**
+     * Start from the views already projected, so a restart doesn't lose stock that hasn't
+     * changed since. Their event versions aren't stored, so they count as version 0.
+     */
+    @PostConstruct
+    public void load() {
+        for (ProductView view : productViewRepository.findAll()) {
+            created(view);
+        }
+        Gauge.builder("inventory.availability.skus", this, projection -> projection.skuIds.size())
+                .description("SKUs with availability")
+                .register(meterRegistry);
+        Gauge.builder("inventory.availability.rows", this, projection -> projection.rowCount)
+                .description("SKU and store pairs with availability")
+                .register(meterRegistry);
+        log.info("Loaded availability for {} SKUs", skuIds.size());
+    }
+
+    /**
+     * A view was saved directly rather than projected from events; like the views loaded at
+     * startup it counts as version 0, so it doesn't override stock a later event has set
+     */
+    public void created(ProductView view) {
+        long at = view.getUpdatedDate() == null ? 0 : view.getUpdatedDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        created(view.getId(), view.getStoreId(), view.getAmount() == null ? 0 : view.getAmount(), 0, at);
+    }
+
+    /**
+     * A product was created, or its creation replayed: its store's stock starts at the initial amount
+     */
+    public void created(String sku, String storeId, int initialAmount, int version, long eventAt) {
+        long stamp = lock.writeLock();
+        try {
+            int skuId = internSku(sku);
+            int row = rowFor(skuId, internStore(storeId == null ? "" : storeId));
+            skus[skuId * SKU_WIDTH + SKU_HOME_ROW] = row;
+            set(skuId, row, initialAmount, version, eventAt);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * The product's stock was set to a new amount in the store it is stocked in
+     * @return Whether the SKU was known
+     */
+    public boolean updated(String sku, int newAmount, int version, long eventAt) {
+        Integer skuId = skuIds.get(sku);
+        if (skuId == null) {
+            return false;
+        }
+        long stamp = lock.writeLock();
+        try {
+            set(skuId, skus[skuId * SKU_WIDTH + SKU_HOME_ROW], newAmount, version, eventAt);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param storeId Only this store's row, with the total being that store's; null for every store
+     * @return The SKU's availability, or null if it has none
+     */
+    public AvailabilityResponse get(String sku, String storeId) {
+        Integer skuId = skuIds.get(sku);
+        if (skuId == null) {
+            return null;
+        }
+        int store = NONE;
+        if (storeId != null) {
+            Integer id = storeIds.get(storeId);
+            if (id == null) {
+                return null;
+            }
+            store = id;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        AvailabilityResponse response = stamp == 0 ? null : read(sku, skuId, store);
+        if (stamp != 0 && lock.validate(stamp)) {
+            return response;
+        }
+        stamp = lock.readLock();
+        try {
+            return read(sku, skuId, store);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long stamp = lock.readLock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("skus", skuCount);
+            stats.put("stores", storeCount);
+            stats.put("rows", rowCount);
+            stats.put("bytes", 4L * (skus.length + rows.length) + 8L * rowStamps.length);
+            return stats;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Runs under the read lock or optimistically. Under an overlapping write the arrays can be
+    // mid-update, so every index is bounds-checked and chains are cut off at the row count; the
+    // result is thrown away in that case anyway.
+    private AvailabilityResponse read(String sku, int skuId, int store) {
+        int[] skus = this.skus;
+        int[] rows = this.rows;
+        long[] rowStamps = this.rowStamps;
+        String[] storeNames = this.storeNames;
+        int rowLimit = Math.min(rowCount, Math.min(rows.length / ROW_WIDTH, rowStamps.length / ROW_STAMP_WIDTH));
+        int slot = skuId * SKU_WIDTH;
+        if (slot + SKU_WIDTH > skus.length) {
+            return null;
+        }
+
+        List<AvailabilityView> perStore = new ArrayList<>(2);
+        int total = skus[slot + SKU_ON_HAND] - skus[slot + SKU_RESERVED];
+        int row = skus[slot + SKU_FIRST_ROW];
+        for (int steps = 0; row >= 0 && row < rowLimit && steps < rowLimit; steps++) {
+            int base = row * ROW_WIDTH;
+            int rowStore = rows[base + ROW_STORE];
+            if (store == NONE || rowStore == store) {
+                int onHand = rows[base + ROW_ON_HAND];
+                int reserved = rows[base + ROW_RESERVED];
+                perStore.add(AvailabilityView.builder()
+                        .sku(sku)
+                        .storeId(rowStore >= 0 && rowStore < storeNames.length ? storeNames[rowStore] : null)
+                        .onHand(onHand)
+                        .reserved(reserved)
+                        .available(onHand - reserved)
+                        .version(rowStamps[row * ROW_STAMP_WIDTH + ROW_VERSION])
+                        .lastEventAt(Instant.ofEpochMilli(rowStamps[row * ROW_STAMP_WIDTH + ROW_EVENT_AT]))
+                        .build());
+                if (store != NONE) {
+                    total = onHand - reserved;
+                    break;
+                }
+            }
+            row = rows[base + ROW_NEXT];
+        }
+        if (store != NONE && perStore.isEmpty()) {
+            return null;
+        }
+        return AvailabilityResponse.builder()
+                .sku(sku)
+                .totalAvailable(total)
+                .perStore(perStore)
+                .build();
+    }
+
+    // Caller holds the write lock. Events older than the row's last one are ignored, so replays
+    // after a rebalance don't move the counts backwards.
+    private void set(int skuId, int row, int onHand, int version, long eventAt) {
+        int stampBase = row * ROW_STAMP_WIDTH;
+        if (version < rowStamps[stampBase + ROW_VERSION]) {
+            return;
+        }
+        int base = row * ROW_WIDTH;
+        skus[skuId * SKU_WIDTH + SKU_ON_HAND] += onHand - rows[base + ROW_ON_HAND];
+        rows[base + ROW_ON_HAND] = onHand;
+        rowStamps[stampBase + ROW_VERSION] = version;
+        rowStamps[stampBase + ROW_EVENT_AT] = eventAt;
+    }
+
+    // Caller holds the write lock
+    private int internSku(String sku) {
+        Integer existing = skuIds.get(sku);
+        if (existing != null) {
+            return existing;
+        }
+        int skuId = skuCount;
+        if ((skuId + 1) * SKU_WIDTH > skus.length) {
+            skus = Arrays.copyOf(skus, skus.length * 2);
+        }
+        int slot = skuId * SKU_WIDTH;
+        skus[slot + SKU_FIRST_ROW] = NONE;
+        skus[slot + SKU_HOME_ROW] = NONE;
+        skuCount++;
+        // Published last, so a reader that finds the id also finds its slot
+        skuIds.put(sku, skuId);
+        return skuId;
+    }
+
+    // Caller holds the write lock
+    private int internStore(String storeId) {
+        Integer existing = storeIds.get(storeId);
+        if (existing != null) {
+            return existing;
+        }
+        int id = storeCount;
+        if (id == storeNames.length) {
+            storeNames = Arrays.copyOf(storeNames, storeNames.length * 2);
+        }
+        storeNames[id] = storeId;
+        storeCount++;
+        storeIds.put(storeId, id);
+        return id;
+    }
+
+    // Caller holds the write lock; the SKU's row for the store, added to its chain if new
+    private int rowFor(int skuId, int store) {
+        int slot = skuId * SKU_WIDTH;
+        for (int row = skus[slot + SKU_FIRST_ROW]; row != NONE; row = rows[row * ROW_WIDTH + ROW_NEXT]) {
+            if (rows[row * ROW_WIDTH + ROW_STORE] == store) {
+                return row;
+            }
+        }
+        int row = rowCount;
+        if ((row + 1) * ROW_WIDTH > rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+            rowStamps = Arrays.copyOf(rowStamps, rowStamps.length * 2);
+        }
+        int base = row * ROW_WIDTH;
+        rows[base + ROW_STORE] = store;
+        rows[base + ROW_ON_HAND] = 0;
+        rows[base + ROW_RESERVED] = 0;
+        rows[base + ROW_NEXT] = skus[slot + SKU_FIRST_ROW];
+        rowStamps[row * ROW_STAMP_WIDTH + ROW_VERSION] = Long.MIN_VALUE;
+        rowStamps[row * ROW_STAMP_WIDTH + ROW_EVENT_AT] = 0;
+        rowCount++;
+        skus[slot + SKU_FIRST_ROW] = row;
+        return row;
+    }
+}
@@ -0,0 +1,352 @@
+package com.bankcqrsexample.account.query.query.domain;
+
+import com.bankcqrsexample.account.query.query.api.dto.ProductResponse;
+import com.bankcqrsexample.account.query.query.api.dto.ProductSearchRequest;
+import com.bankcqrsexample.account.query.query.api.dto.ProductSearchResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted in-memory indexes for product search, kept current by the projection the same way as
+ * the read cache. There is one skip list per sort field for each combination of the equality
+ * filters (none, store, category, store and category), ordered by the filters' values, then the
+ * sort field, then id. A search picks the list matching its equality filters and sort field, so
+ * it only reads entries that pass those filters, in order, from the range on the sort field.
+ * A range on another field is checked per entry, and at most {@code max-scanned} entries are
+ * read per page; when that runs out the page comes back short with a cursor to go on from, so a
+ * search never walks the whole catalog.
+ * <p>
+ * The cursor is the sort value and id of the last entry read, which is where the next page
+ * starts; products moving in the order between pages are seen where they are then.
+ * <p>
+ * Writers are serialized. Readers take no lock: a product's current values are published before
+ * its new entries are added and its old ones removed, and an entry is only returned if it still
+ * matches the product's current values.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductSearchIndex {
+
+    public enum SortField {
+        PRICE("price"), AMOUNT("amount"), UPDATED_DATE("updatedDate");
+
+        private final String param;
+
+        SortField(String param) {
+            this.param = param;
+        }
+
+        private static SortField parse(String param) {
+            for (SortField field : values()) {
+                if (field.param.equals(param)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("sort must be one of price, amount or updatedDate");
+        }
+    }
+
+    // Which equality filters an index is grouped by
+    private static final int BY_NONE = 0;
+    private static final int BY_STORE = 1;
+    private static final int BY_CATEGORY = 2;
+    private static final int BY_STORE_AND_CATEGORY = 3;
+    private static final int GROUPINGS = 4;
+    private static final int FIELDS = SortField.values().length;
+
+    // Products without a price sort first and never match a price range
+    private static final long NO_PRICE = Long.MIN_VALUE;
+
+    private final ProductViewRepository productViewRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${inventory.search.max-limit:500}")
+    private int maxLimit;
+
+    // Entries read for one page before it is returned short
+    @Value("${inventory.search.max-scanned:10000}")
+    private int maxScanned;
+
+    private final Map<String, Indexed> products = new ConcurrentHashMap<>();
+    // The index grouped one way and sorted on one field is at grouping * FIELDS + field
+    private final List<NavigableSet<Key>> indexes = newIndexes();
+
+    private Timer searches;
+    private DistributionSummary scanned;
+
+    /**
+     * Start from the views already projected
+     */
+    @PostConstruct
+    public void load() {
+        putAll(productViewRepository.findAll());
+        searches = Timer.builder("inventory.search")
+                .description("Time to answer one page of a product search")
+                .register(meterRegistry);
+        scanned = DistributionSummary.builder("inventory.search.scanned")
+                .description("Index entries read to answer one page of a product search")
+                .register(meterRegistry);
+        Gauge.builder("inventory.search.products", products, Map::size)
+                .description("Products in the search indexes")
+                .register(meterRegistry);
+        log.info("Indexed {} products for search", products.size());
+    }
+
+    /**
+     * Index views that have just been written, once their transaction has committed
+     */
+    public synchronized void putAll(Collection<ProductView> views) {
+        for (ProductView view : views) {
+            index(view);
+        }
+    }
+
+    public void put(ProductView view) {
+        putAll(List.of(view));
+    }
+
+    /**
+     * @throws IllegalArgumentException If the sort, direction or cursor isn't valid
+     */
+    public ProductSearchResponse search(ProductSearchRequest request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        long[] min = new long[FIELDS];
+        long[] max = new long[FIELDS];
+        Arrays.fill(min, Long.MIN_VALUE);
+        Arrays.fill(max, Long.MAX_VALUE);
+        if (request.getMinPrice() != null || request.getMaxPrice() != null) {
+            min[SortField.PRICE.ordinal()] = request.getMinPrice() == null ? NO_PRICE + 1 : Math.max(NO_PRICE + 1, cents(request.getMinPrice(), RoundingMode.CEILING));
+            max[SortField.PRICE.ordinal()] = request.getMaxPrice() == null ? Long.MAX_VALUE : cents(request.getMaxPrice(), RoundingMode.FLOOR);
+        }
+        if (request.getMinAmount() != null) {
+            min[SortField.AMOUNT.ordinal()] = request.getMinAmount();
+        }
+        if (request.getMaxAmount() != null) {
+            max[SortField.AMOUNT.ordinal()] = request.getMaxAmount();
+        }
+
+        SortField sort = sortField(request);
+        boolean descending = descending(request.getDirection());
+        int limit = request.getLimit() == null ? 50 : Math.max(1, Math.min(request.getLimit(), maxLimit));
+        int grouping = request.getStoreId() != null
+                ? (request.getCategory() != null ? BY_STORE_AND_CATEGORY : BY_STORE)
+                : (request.getCategory() != null ? BY_CATEGORY : BY_NONE);
+        String group = group(grouping, request.getStoreId(), request.getCategory());
+
+        int field = sort.ordinal();
+        List<ProductResponse> page = new ArrayList<>(Math.min(limit, 64));
+        String nextCursor = null;
+        int read = 0;
+        if (min[field] <= max[field]) {
+            NavigableSet<Key> range = indexes.get(grouping * FIELDS + field)
+                    .subSet(new Key(group, min[field], ""), true, new Key(group, max[field], null), true);
+            if (request.getCursor() != null) {
+                Key after = decodeCursor(request.getCursor(), sort, descending, group);
+                range = descending ? range.headSet(after, false) : range.tailSet(after, false);
+            }
+            for (Key key : descending ? range.descendingSet() : range) {
+                read++;
+                Indexed product = products.get(key.id);
+                if (product != null && product.matches(key, grouping, field) && product.within(min, max)) {
+                    page.add(product.response);
+                    if (page.size() == limit) {
+                        nextCursor = encodeCursor(sort, descending, key);
+                        break;
+                    }
+                }
+                if (read == maxScanned) {
+                    nextCursor = encodeCursor(sort, descending, key);
+                    break;
+                }
+            }
+        }
+        scanned.record(read);
+        sample.stop(searches);
+
+        return ProductSearchResponse.builder()
+                .message("Successfully returned " + page.size() + " product(s)!")
+                .products(page)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("products", products.size());
+        stats.put("indexes", indexes.size());
+        stats.put("max_scanned", maxScanned);
+        stats.put("searches", searches.count());
+        stats.put("scanned_mean", scanned.mean());
+        stats.put("scanned_max", scanned.max());
+        return stats;
+    }
+
+    // Caller holds the lock. A view is only indexed if it is newer than the one indexed, so a load
+    // overlapping the projection can't put an older view back.
+    private void index(ProductView view) {
+        Indexed current = products.get(view.getId());
+        long version = view.getVersion() == null ? -1 : view.getVersion();
+        if (current != null && version <= current.version) {
+            return;
+        }
+
+        long[] values = new long[FIELDS];
+        values[SortField.PRICE.ordinal()] = view.getPrice() == null ? NO_PRICE : cents(view.getPrice(), RoundingMode.HALF_UP);
+        values[SortField.AMOUNT.ordinal()] = view.getAmount() == null ? 0 : view.getAmount();
+        values[SortField.UPDATED_DATE.ordinal()] = view.getUpdatedDate() == null ? Long.MIN_VALUE
+                : view.getUpdatedDate().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Indexed next = new Indexed(ProductResponse.from(view), view.getStoreId(), view.getCategory(), values, version);
+        products.put(view.getId(), next);
+
+        for (int grouping = 0; grouping < GROUPINGS; grouping++) {
+            for (int field = 0; field < FIELDS; field++) {
+                NavigableSet<Key> index = indexes.get(grouping * FIELDS + field);
+                Key key = next.key(grouping, field);
+                index.add(key);
+                if (current != null) {
+                    Key old = current.key(grouping, field);
+                    if (!old.equals(key)) {
+                        index.remove(old);
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<NavigableSet<Key>> newIndexes() {
+        List<NavigableSet<Key>> indexes = new ArrayList<>(GROUPINGS * FIELDS);
+        for (int i = 0; i < GROUPINGS * FIELDS; i++) {
+            indexes.add(new ConcurrentSkipListSet<>());
+        }
+        return indexes;
+    }
+
+    // Sorting on a field a range is given for lets the range bound the index read
+    private static SortField sortField(ProductSearchRequest request) {
+        if (request.getSort() != null) {
+            return SortField.parse(request.getSort());
+        }
+        if (request.getMinPrice() != null || request.getMaxPrice() != null) {
+            return SortField.PRICE;
+        }
+        if (request.getMinAmount() != null || request.getMaxAmount() != null) {
+            return SortField.AMOUNT;
+        }
+        return SortField.UPDATED_DATE;
+    }
+
+    private static boolean descending(String direction) {
+        if (direction == null || direction.equals("asc")) {
+            return false;
+        }
+        if (direction.equals("desc")) {
+            return true;
+        }
+        throw new IllegalArgumentException("direction must be asc or desc");
+    }
+
+    // Prices are stored to the cent
+    private static long cents(BigDecimal price, RoundingMode rounding) {
+        return price.movePointRight(2).setScale(0, rounding).longValue();
+    }
+
+    private static String group(int grouping, String storeId, String category) {
+        return switch (grouping) {
+            case BY_STORE -> nullToEmpty(storeId);
+            case BY_CATEGORY -> nullToEmpty(category);
+            case BY_STORE_AND_CATEGORY -> nullToEmpty(storeId) + '\u0000' + nullToEmpty(category);
+            default -> "";
+        };
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String encodeCursor(SortField sort, boolean descending, Key key) {
+        String cursor = sort.param + ':' + (descending ? "desc" : "asc") + ':' + key.value + ':' + key.id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Key decodeCursor(String cursor, SortField sort, boolean descending, String group) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 4);
+        } catch (IllegalArgumentException e) {
+            parts = new String[0];
+        }
+        if (parts.length != 4 || !parts[0].equals(sort.param) || !parts[1].equals(descending ? "desc" : "asc")) {
+            throw new IllegalArgumentException("cursor doesn't belong to a search with this sort and direction");
+        }
+        try {
+            return new Key(group, Long.parseLong(parts[2]), parts[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("cursor isn't valid");
+        }
+    }
+
+    /**
+     * An index entry. A null id sorts after every id, so it can bound a range inclusively.
+     */
+    private record Key(String group, long value, String id) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int byGroup = group.compareTo(other.group);
+            if (byGroup != 0) {
+                return byGroup;
+            }
+            int byValue = Long.compare(value, other.value);
+            if (byValue != 0) {
+                return byValue;
+            }
+            if (id == null || other.id == null) {
+                return id == null ? (other.id == null ? 0 : 1) : -1;
+            }
+            return id.compareTo(other.id);
+        }
+    }
+
+    private record Indexed(ProductResponse response, String storeId, String category, long[] values, long version) {
+
+        private Key key(int grouping, int field) {
+            return new Key(group(grouping, storeId, category), values[field], response.getId());
+        }
+
+        // Whether the entry is this product's current one in that index
+        private boolean matches(Key key, int grouping, int field) {
+            return key.value == values[field] && key.group.equals(group(grouping, storeId, category));
+        }
+
+        private boolean within(long[] min, long[] max) {
+            for (int field = 0; field < values.length; field++) {
+                if (values[field] < min[field] || values[field] > max[field]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -14,7 +14,11 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Builder
 @Entity
-@Table(name = "product_view")
+// Store and category are what the repository's lookups filter on
+@Table(name = "product_view", indexes = {
+        @Index(name = "idx_product_view_store_category", columnList = "storeId, category"),
+        @Index(name = "idx_product_view_category", columnList = "category")
+})
 public class ProductView {
     @Id
     private String id;
@@ -26,4 +30,8 @@ public class ProductView {
     private Integer amount;
     private LocalDateTime createdDate;
     private LocalDateTime updatedDate;
+    // Also tells Spring Data a view that has never been saved from one that has, so a new view is
+    // inserted without being looked up first
+    @Version
+    private Long version;
 }
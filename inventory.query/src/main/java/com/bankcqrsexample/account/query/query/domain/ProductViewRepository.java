@@ -1,6 +1,10 @@
 package com.bankcqrsexample.account.query.query.domain;
 
+import com.bankcqrsexample.account.query.query.api.dto.ProductResponse;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,4 +13,10 @@ import java.util.List;
 public interface ProductViewRepository extends JpaRepository<ProductView, String> {
     List<ProductView> findByStoreId(String storeId);
     List<ProductView> findByCategory(String category);
+
+    // Selected straight into responses rather than entities, so the rows read aren't kept in the persistence context
+    @Query("select new com.bankcqrsexample.account.query.query.api.dto.ProductResponse("
+            + "p.id, p.name, p.description, p.category, p.price, p.storeId, p.amount, p.createdDate, p.updatedDate) "
+            + "from ProductView p where p.id > :after order by p.id")
+    List<ProductResponse> findResponsesAfter(@Param("after") String after, Pageable page);
 }
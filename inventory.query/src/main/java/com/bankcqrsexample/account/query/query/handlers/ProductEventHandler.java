@@ -1,78 +1,321 @@
 package com.bankcqrsexample.account.query.query.handlers;
 
+import com.distributedinventory.cqrs.core.events.BaseEvent;
+import com.distributedinventory.cqrs.core.events.EventTopics;
 import com.distributedinventory.cqrs.core.events.ProductCreatedEvent;
 import com.distributedinventory.cqrs.core.events.StockUpdatedEvent;
+import com.distributedinventory.cqrs.core.serialization.EventSerializer;
+import com.bankcqrsexample.account.query.query.domain.AvailabilityProjection;
+import com.bankcqrsexample.account.query.query.domain.ProductSearchIndex;
 import com.bankcqrsexample.account.query.query.domain.ProductView;
 import com.bankcqrsexample.account.query.query.domain.ProductViewRepository;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.bankcqrsexample.account.query.query.infrastructure.ProductReadCache;
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionAppliedEvent;
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionDispatcher;
+import com.bankcqrsexample.account.query.query.infrastructure.ProjectionLagTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Projects product events into {@link ProductView}s a poll at a time. The events of a batch are
+ * coalesced per product first: a stock update carries the new amount, so only the last one per
+ * product matters. The {@link ProjectionDispatcher} then splits the products across its workers
+ * by id, and each worker loads its share of the views with one query and writes them back with
+ * one batched flush, in one transaction. The listener goes back to polling meanwhile; the batch's
+ * offsets are acknowledged once every worker has applied its share and every earlier batch is
+ * done, and the container commits them on its next pass.
+ * <p>
+ * Every record is counted by event type and its projection lag (time from its commit to the
+ * event store to its being applied) is timed; each partition's progress is reported to the
+ * {@link ProjectionLagTracker}, which reads and the status endpoint get the lag from, and a
+ * {@link ProjectionAppliedEvent} is published for the batch.
+ */
+@Slf4j
 @Service
 @RequiredArgsConstructor
-public class ProductEventHandler {
+public class ProductEventHandler implements ConsumerSeekAware {
 
     private final ProductViewRepository productViewRepository;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventSerializer eventSerializer;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ProjectionLagTracker lagTracker;
+    private final ProjectionDispatcher dispatcher;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ProductReadCache readCache;
+    private final AvailabilityProjection availability;
+    private final ProductSearchIndex searchIndex;
+    private final Map<String, Counter> recordCounters = new ConcurrentHashMap<>();
+    private Timer applyTimer;
+    private Timer lagTimer;
+    private DistributionSummary batchSizes;
+    private Counter coalesced;
+    private Counter errors;
+    // One instance, so the dispatcher can apply queued batches together
+    private final java.util.function.Consumer<List<PendingView>> applyShare = this::applyInTransaction;
 
-    @KafkaListener(topics = "ProductCreatedEvent", groupId = "inventoryConsumer")
-    public void handleProductCreated(ProductCreatedEvent event) {
-        System.out.println("=== RECEIVED PRODUCT CREATED EVENT: " + event + " ===");
-        try {
-            System.out.println("ProductEventHandler.handle() called for ProductCreatedEvent: " + event.getId());
-            var productView = ProductView.builder()
-                    .id(event.getId())
-                    .name(event.getName())
-                    .description(event.getDescription())
-                    .category(event.getCategory())
-                    .price(event.getPrice())
-                    .storeId(event.getStoreId())
-                    .amount(event.getInitialAmount())
-                    .createdDate(event.getCreatedDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime())
-                    .updatedDate(event.getCreatedDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime())
-                    .build();
-            productViewRepository.save(productView);
-            System.out.println("ProductView saved for product: " + event.getId());
-        } catch (Exception e) {
-            System.out.println("Error processing ProductCreatedEvent: " + e.getMessage());
-            e.printStackTrace();
+    @PostConstruct
+    public void registerMeters() {
+        applyTimer = Timer.builder("inventory.projection.apply")
+                .description("Time from receiving a batch of events to its being applied to the view")
+                .register(meterRegistry);
+        lagTimer = Timer.builder("inventory.projection.lag")
+                .description("Time from an event's commit to the event store to its being applied to the view")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("inventory.projection.batch.size")
+                .description("Records received in one batch")
+                .register(meterRegistry);
+        coalesced = Counter.builder("inventory.projection.coalesced")
+                .description("Events folded into a later event for the same product instead of being written")
+                .register(meterRegistry);
+        errors = Counter.builder("inventory.projection.errors")
+                .description("Events that could not be applied")
+                .register(meterRegistry);
+    }
+
+    // All product events share one topic keyed by product id; the type header says what the value is
+    @KafkaListener(topics = EventTopics.STOCK_EVENTS, groupId = "inventoryConsumer", batch = "true")
+    public void handle(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment, Consumer<?, ?> consumer) {
+        long start = System.nanoTime();
+
+        // A product's events all come from one partition, so they are in order here
+        Map<String, PendingView> pending = new LinkedHashMap<>();
+        int events = 0;
+        for (ConsumerRecord<String, byte[]> record : records) {
+            BaseEvent event = deserialize(record);
+            if (event instanceof ProductCreatedEvent productCreated) {
+                pending.computeIfAbsent(productCreated.getId(), PendingView::new).created(productCreated);
+                events++;
+            } else if (event instanceof StockUpdatedEvent stockUpdated) {
+                pending.computeIfAbsent(stockUpdated.getId(), PendingView::new).updated(stockUpdated);
+                events++;
+            }
         }
+        batchSizes.record(records.size());
+        coalesced.increment(events - pending.size());
+
+        // The consumer may only be used on this thread, so the end offsets are read now
+        Map<TopicPartition, Long> endOffsets = endOffsets(records, consumer);
+        dispatcher.dispatch(pending, applyShare, () -> {
+            acknowledgment.acknowledge();
+            applyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            report(records, endOffsets);
+            eventPublisher.publishEvent(new ProjectionAppliedEvent(records));
+        });
     }
 
-    // Generic listener to test if any messages are received
-    @KafkaListener(topics = {"ProductCreatedEvent", "StockUpdatedEvent"}, groupId = "inventoryConsumer")
-    public void handleAnyMessage(String message) {
-        System.out.println("=== GENERIC LISTENER RECEIVED: " + message + " ===");
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        lagTracker.assigned(assignments);
     }
 
-    // Test listener with different group ID
-    @KafkaListener(topics = "ProductCreatedEvent", groupId = "testConsumer")
-    public void handleTestMessage(String message) {
-        System.out.println("=== TEST CONSUMER RECEIVED: " + message + " ===");
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        // The workers have been waited for already, before the container's commit
+        // (ProjectionRebalanceListener)
+        lagTracker.revoked(partitions);
     }
 
-    @KafkaListener(topics = "StockUpdatedEvent", groupId = "inventoryConsumer")
-    public void handleStockUpdated(StockUpdatedEvent event) {
-        System.out.println("=== RECEIVED STOCK UPDATE EVENT: " + event + " ===");
-        try {
-            System.out.println("ProductEventHandler.handle() called for StockUpdatedEvent: " + event.getId());
-            var productView = productViewRepository.findById(event.getId()).orElse(null);
-            if (productView != null) {
-                productView.setAmount(event.getNewAmount());
-                productView.setUpdatedDate(event.getUpdatedDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime());
-                productViewRepository.save(productView);
-                System.out.println("Product synchronized successfully: " + event.getId());
+    // The share can span batches, so a product's pending changes are folded together first. The
+    // read cache, search index and availability get the changes only once they are committed, and
+    // before the batch can be acknowledged.
+    private void applyInTransaction(List<PendingView> share) {
+        Map<String, PendingView> pending = new LinkedHashMap<>();
+        for (PendingView update : share) {
+            pending.merge(update.id, update, PendingView::then);
+        }
+        List<ProductView> written = transactionTemplate.execute(status -> apply(pending));
+        readCache.putAll(written);
+        searchIndex.putAll(written);
+        pending.values().forEach(this::project);
+    }
+
+    /**
+     * Load every view the pending changes touch at once, bring each up to the last event for it
+     * and write the changed ones back together
+     * @return The views written
+     */
+    private List<ProductView> apply(Map<String, PendingView> pending) {
+        Map<String, ProductView> views = new HashMap<>();
+        for (ProductView view : productViewRepository.findAllById(pending.keySet())) {
+            views.put(view.getId(), view);
+        }
+
+        List<ProductView> changed = new ArrayList<>(pending.size());
+        pending.forEach((id, update) -> {
+            ProductView view = views.get(id);
+            if (update.created != null) {
+                view = created(view, update.created);
             }
-        } catch (Exception e) {
-            System.out.println("Error processing StockUpdatedEvent: " + e.getMessage());
-            e.printStackTrace();
+            if (update.lastUpdate != null) {
+                if (view == null) {
+                    log.warn("Skipping stock update for unknown product {}", id);
+                    return;
+                }
+                view.setAmount(update.lastUpdate.getNewAmount());
+                view.setUpdatedDate(toLocalDateTime(update.lastUpdate.getUpdatedDate()));
+            }
+            if (view != null) {
+                changed.add(view);
+            }
+        });
+        return productViewRepository.saveAll(changed);
+    }
+
+    private void project(PendingView update) {
+        if (update.created != null) {
+            ProductCreatedEvent event = update.created;
+            availability.created(event.getId(), event.getStoreId(), event.getInitialAmount() == null ? 0 : event.getInitialAmount(),
+                    event.getVersion(), event.getCreatedDate().getTime());
+        }
+        if (update.lastUpdate != null) {
+            StockUpdatedEvent event = update.lastUpdate;
+            availability.updated(event.getId(), event.getNewAmount(), event.getVersion(), event.getUpdatedDate().getTime());
+        }
+    }
+
+    // A replayed creation resets the view it finds rather than inserting a second one
+    private static ProductView created(ProductView view, ProductCreatedEvent event) {
+        if (view == null) {
+            view = new ProductView();
+            view.setId(event.getId());
+        }
+        view.setName(event.getName());
+        view.setDescription(event.getDescription());
+        view.setCategory(event.getCategory());
+        view.setPrice(event.getPrice());
+        view.setStoreId(event.getStoreId());
+        view.setAmount(event.getInitialAmount());
+        view.setCreatedDate(toLocalDateTime(event.getCreatedDate()));
+        view.setUpdatedDate(toLocalDateTime(event.getCreatedDate()));
+        return view;
+    }
+
+    // A record that can't be read is counted and skipped, so it doesn't hold up the rest of the batch
+    private BaseEvent deserialize(ConsumerRecord<String, byte[]> record) {
+        Header typeHeader = record.headers().lastHeader(EventTopics.TYPE_HEADER);
+        String eventType = typeHeader == null ? null : new String(typeHeader.value(), StandardCharsets.UTF_8);
+
+        BaseEvent event;
+        try {
+            // The payload names its own type; the header is only needed for payloads without one
+            event = eventSerializer.deserialize(eventType, record.value());
+        } catch (RuntimeException e) {
+            log.error("Could not read {} record at {}-{}@{}: {}", eventType, record.topic(), record.partition(), record.offset(), e.getMessage());
+            errors.increment();
+            return null;
+        }
+        if (!(event instanceof ProductCreatedEvent) && !(event instanceof StockUpdatedEvent)) {
+            log.warn("Skipping record with unknown event type {} at {}-{}@{}", eventType, record.topic(), record.partition(), record.offset());
+        }
+
+        recordCounters.computeIfAbsent(event == null ? String.valueOf(eventType) : event.getClass().getSimpleName(), type ->
+                Counter.builder("inventory.projection.records")
+                        .description("Event records consumed by the projection")
+                        .tag("type", type)
+                        .register(meterRegistry)).increment();
+        return event;
+    }
+
+    // Time every record's lag, and tell the tracker how far each partition has got
+    private void report(List<ConsumerRecord<String, byte[]>> records, Map<TopicPartition, Long> endOffsets) {
+        long now = System.currentTimeMillis();
+        Map<TopicPartition, ConsumerRecord<String, byte[]>> last = new HashMap<>();
+        Map<TopicPartition, Integer> counts = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            lagTimer.record(Math.max(0, now - committedAt(record)), TimeUnit.MILLISECONDS);
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            last.put(partition, record);
+            counts.merge(partition, 1, Integer::sum);
         }
+        last.forEach((partition, record) -> lagTracker.applied(record.topic(), record.partition(), record.offset(),
+                committedAt(record), endOffsets.getOrDefault(partition, -1L), counts.get(partition)));
+    }
+
+    private static Map<TopicPartition, Long> endOffsets(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            endOffsets.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), partition -> endOffset(consumer, partition));
+        }
+        return endOffsets;
+    }
+
+    // Records relayed from the outbox carry the commit time; otherwise the producer's timestamp is the closest
+    private static long committedAt(ConsumerRecord<String, byte[]> record) {
+        Header header = record.headers().lastHeader(EventTopics.COMMITTED_AT_HEADER);
+        return header == null ? record.timestamp() : Long.parseLong(new String(header.value(), StandardCharsets.US_ASCII));
+    }
+
+    // The consumer already knows the end offset from its last fetch; asking for it costs no round trip
+    private static long endOffset(Consumer<?, ?> consumer, TopicPartition partition) {
+        OptionalLong lag = consumer.currentLag(partition);
+        return lag.isPresent() ? consumer.position(partition) + lag.getAsLong() : -1;
+    }
+
+    private static LocalDateTime toLocalDateTime(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDateTime();
     }
 
+    /**
+     * What a batch does to one product: its creation if the batch has it, and the last stock update
+     * after that, which alone decides the amount
+     */
+    private static final class PendingView {
+        private final String id;
+        private ProductCreatedEvent created;
+        private StockUpdatedEvent lastUpdate;
+
+        private PendingView(String id) {
+            this.id = id;
+        }
+
+        private void created(ProductCreatedEvent event) {
+            created = event;
+            lastUpdate = null;
+        }
+
+        private void updated(StockUpdatedEvent event) {
+            lastUpdate = event;
+        }
 
+        // What this and a later batch do to the product together; the pending views are left as they are
+        private PendingView then(PendingView later) {
+            if (later.created != null) {
+                return later;
+            }
+            PendingView combined = new PendingView(id);
+            combined.created = created;
+            combined.lastUpdate = later.lastUpdate != null ? later.lastUpdate : lastUpdate;
+            return combined;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import com.bankcqrsexample.account.query.query.api.dto.ProductResponse;
+import com.bankcqrsexample.account.query.query.domain.ProductViewRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Writes the catalog as NDJSON, one product per line in id order. Products are read in chunks,
+ * each one starting after the last id written, so the export holds one chunk in memory however
+ * large the catalog is, and no transaction or connection stays open while the client reads.
+ * An export that stops part-way is resumed by passing the last id it got.
+ * <p>
+ * The export is not a snapshot: a product updated while it runs is written as it was when its
+ * chunk was read. Ids never change, so no product is skipped or written twice.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductExporter {
+
+    private static final int NEWLINE = '\n';
+
+    private final ProductViewRepository productViewRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${inventory.export.chunk-size:500}")
+    private int chunkSize;
+
+    private Counter products;
+    private Timer exports;
+
+    @PostConstruct
+    public void registerMeters() {
+        products = Counter.builder("inventory.export.products")
+                .description("Products written by catalog exports")
+                .register(meterRegistry);
+        exports = Timer.builder("inventory.export")
+                .description("Time to stream a catalog export, including the time the client takes to read it")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param after Last id of an earlier export to resume from, or null for the whole catalog
+     * @return Products written
+     */
+    public long export(String after, OutputStream out) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String last = after == null ? "" : after;
+        long written = 0;
+        try {
+            while (true) {
+                List<ProductResponse> chunk = productViewRepository.findResponsesAfter(last, PageRequest.of(0, chunkSize));
+                for (ProductResponse product : chunk) {
+                    out.write(objectMapper.writeValueAsBytes(product));
+                    out.write(NEWLINE);
+                }
+                out.flush();
+                written += chunk.size();
+                products.increment(chunk.size());
+                if (chunk.size() < chunkSize) {
+                    return written;
+                }
+                last = chunk.get(chunk.size() - 1).getId();
+            }
+        } finally {
+            sample.stop(exports);
+        }
+    }
+}
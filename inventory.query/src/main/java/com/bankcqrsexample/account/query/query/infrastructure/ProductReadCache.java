@@ -0,0 +1,235 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import com.bankcqrsexample.account.query.query.api.dto.ProductResponse;
+import com.bankcqrsexample.account.query.query.domain.ProductView;
+import com.distributedinventory.cqrs.core.infrastructure.ClockCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of product responses in front of the view table. The projection puts every view
+ * it writes once the write has committed, so an entry is never behind the table. Reads on a miss
+ * load the view themselves, one load per id however many requests miss on it at once.
+ * <p>
+ * Hits take no lock. Everything that changes the cache (puts, loads being stored, eviction) is
+ * serialized, which costs little because writes are a small fraction of reads. Eviction is the
+ * {@link ClockCache}'s, so entries written by the projection but never read go first.
+ * <p>
+ * A load can read a view just before the projection overwrites it and finish after the new value
+ * was put. Two checks stop it from replacing that value: an entry only ever moves to a higher view
+ * version, and a load is only stored, or shared with later misses, if no put touched its stripe
+ * of ids since it began, which also covers the new value having been evicted meanwhile.
+ */
+@Component
+public class ProductReadCache {
+
+    private static final int STRIPES = 1024;
+
+    private final MeterRegistry meterRegistry;
+    private final ClockCache<String, Cached> products;
+
+    private final Map<String, Load> loads = new ConcurrentHashMap<>();
+    // Guarded by itself; every store into products happens under it, so a version check and its put are one step
+    private final long[] writeStamps = new long[STRIPES];
+
+    private Counter hits;
+    private Counter misses;
+    private Counter sharedLoads;
+    private Counter discardedLoads;
+
+    /**
+     * @param maxBytes Estimated size of the cached responses; 0 turns the cache off
+     */
+    public ProductReadCache(MeterRegistry meterRegistry,
+                            @Value("${inventory.read-cache.max-bytes:67108864}") long maxBytes) {
+        this.meterRegistry = meterRegistry;
+        this.products = new ClockCache<>(maxBytes);
+    }
+
+    @PostConstruct
+    public void registerMeters() {
+        hits = requests("hit");
+        misses = requests("miss");
+        sharedLoads = Counter.builder("inventory.read.cache.loads.shared")
+                .description("Misses answered by another request's load of the same product")
+                .register(meterRegistry);
+        discardedLoads = Counter.builder("inventory.read.cache.loads.discarded")
+                .description("Loads not cached because the projection wrote the product while they ran")
+                .register(meterRegistry);
+        FunctionCounter.builder("inventory.read.cache.evictions", products, ClockCache::evictions)
+                .description("Entries evicted to stay within the size limit")
+                .register(meterRegistry);
+        Gauge.builder("inventory.read.cache.size", products, ClockCache::size)
+                .description("Products cached")
+                .register(meterRegistry);
+        Gauge.builder("inventory.read.cache.bytes", products, ClockCache::bytes)
+                .description("Estimated size of the cached responses")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param loader Reads the view on a miss
+     * @return The product, or null if there is no such product
+     */
+    public ProductResponse get(String id, Function<String, Optional<ProductView>> loader) {
+        Cached cached = products.get(id);
+        if (cached != null) {
+            hits.increment();
+            return cached.response();
+        }
+        misses.increment();
+        if (!products.isEnabled()) {
+            return loader.apply(id).map(ProductResponse::from).orElse(null);
+        }
+
+        long stamp = writeStamp(id);
+        Load load = new Load(stamp);
+        Load running = loads.putIfAbsent(id, load);
+        if (running != null) {
+            if (running.stamp == stamp) {
+                sharedLoads.increment();
+                return latest(id, join(running.result));
+            }
+            // That load began before the product was last written, so it may return the old view
+            return latest(id, load(id, loader, stamp));
+        }
+
+        try {
+            ProductResponse response = load(id, loader, stamp);
+            load.result.complete(response);
+            return latest(id, response);
+        } catch (RuntimeException e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(id, load);
+        }
+    }
+
+    /**
+     * Cache views that have just been written, once their transaction has committed
+     */
+    public void putAll(Collection<ProductView> views) {
+        if (!products.isEnabled()) {
+            return;
+        }
+        synchronized (writeStamps) {
+            for (ProductView view : views) {
+                writeStamps[stripe(view.getId())]++;
+                store(view, ProductResponse.from(view));
+            }
+        }
+    }
+
+    public void put(ProductView view) {
+        putAll(List.of(view));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", products.size());
+        stats.put("bytes", products.bytes());
+        stats.put("max_bytes", products.maxBytes());
+        stats.put("hits", (long) hits.count());
+        stats.put("misses", (long) misses.count());
+        stats.put("shared_loads", (long) sharedLoads.count());
+        stats.put("discarded_loads", (long) discardedLoads.count());
+        stats.put("evictions", products.evictions());
+        return stats;
+    }
+
+    private long writeStamp(String id) {
+        synchronized (writeStamps) {
+            return writeStamps[stripe(id)];
+        }
+    }
+
+    private ProductResponse load(String id, Function<String, Optional<ProductView>> loader, long stamp) {
+        Optional<ProductView> view = loader.apply(id);
+        ProductResponse response = view.map(ProductResponse::from).orElse(null);
+        view.ifPresent(loaded -> storeLoad(loaded, response, stamp));
+        return response;
+    }
+
+    private void storeLoad(ProductView view, ProductResponse response, long stamp) {
+        synchronized (writeStamps) {
+            if (writeStamps[stripe(view.getId())] != stamp) {
+                discardedLoads.increment();
+                return;
+            }
+            store(view, response);
+        }
+    }
+
+    // Caller holds the writeStamps lock
+    private void store(ProductView view, ProductResponse response) {
+        long version = view.getVersion() == null ? -1 : view.getVersion();
+        Cached current = products.peek(view.getId());
+        if (current == null || version > current.version()) {
+            products.put(view.getId(), new Cached(response, version), weigh(response));
+        }
+    }
+
+    // A load another request ran, or one this request ran, may have lost to a put; the cache has the newer value then
+    private ProductResponse latest(String id, ProductResponse loaded) {
+        Cached cached = products.peek(id);
+        return cached != null ? cached.response() : loaded;
+    }
+
+    private static ProductResponse join(CompletableFuture<ProductResponse> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static int stripe(String id) {
+        return Math.floorMod(id.hashCode(), STRIPES);
+    }
+
+    // Rough retained size: the response, its strings, price and dates, plus the entry, its version and the map node
+    private static int weigh(ProductResponse response) {
+        return 480 + 2 * (length(response.getId()) + length(response.getName()) + length(response.getDescription())
+                + length(response.getCategory()) + length(response.getStoreId()));
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private Counter requests(String result) {
+        return Counter.builder("inventory.read.cache.requests")
+                .description("Product reads by whether the cache had the product")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record Load(long stamp, CompletableFuture<ProductResponse> result) {
+        private Load(long stamp) {
+            this(stamp, new CompletableFuture<>());
+        }
+    }
+
+    private record Cached(ProductResponse response, long version) {
+    }
+}
@@ -0,0 +1,12 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.util.List;
+
+/**
+ * Published once a batch of event records has been applied to the views and its offsets
+ * acknowledged, in the order the batches were received
+ */
+public record ProjectionAppliedEvent(List<ConsumerRecord<String, byte[]>> records) {
+}
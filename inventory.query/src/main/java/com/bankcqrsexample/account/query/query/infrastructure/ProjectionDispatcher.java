@@ -0,0 +1,298 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Applies projection work on N single-threaded worker lanes chosen by hashing the product id,
+ * so one product's updates are applied one after another, in order, while different products
+ * are applied in parallel, whatever the number of partitions.
+ * <p>
+ * Work arrives a batch at a time. A worker takes every part queued for it at once and applies
+ * them together, so when the workers fall behind the many small batches a busy listener hands
+ * them are written in fewer, larger transactions. A batch is done once every lane has finished
+ * its part of it; its completion (acknowledging its offsets) only runs when every earlier batch
+ * is done too, so the committed position never passes work some lane has not finished. A full
+ * lane blocks the caller, which holds back the consumer instead of queueing without bound.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProjectionDispatcher {
+
+    private final MeterRegistry meterRegistry;
+
+    // 0 means one worker per available processor
+    @Value("${inventory.projection.workers:0}")
+    private int workerCount;
+
+    // Batches a worker can have queued before the listener waits for it
+    @Value("${inventory.projection.worker-queue-capacity:16}")
+    private int workerQueueCapacity;
+
+    // Queued batches a worker applies in one go
+    @Value("${inventory.projection.max-batches-per-apply:64}")
+    private int maxBatchesPerApply;
+
+    @Value("${inventory.projection.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${inventory.projection.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+
+    private Worker<?>[] workers;
+    // Batches not completed yet, oldest first; guarded by itself
+    private final Queue<Batch> inFlight = new ArrayDeque<>();
+    private Timer workTimer;
+    private Counter failures;
+    private volatile boolean running;
+
+    /**
+     * Apply a batch's work, each key's on its own lane. Returns once every part is queued.
+     * @param work The batch's work by product id
+     * @param apply Applies a lane's share of one or more batches, given in the order they were
+     *              dispatched, so the same key can come up more than once. Queued batches are only
+     *              applied together when they were dispatched with the same function.
+     * @param completion Runs once this batch and every earlier one are done, on the worker that finished last
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void dispatch(Map<String, T> work, Consumer<List<T>> apply, Runnable completion) {
+        List<List<T>> shares = new ArrayList<>(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            shares.add(new ArrayList<>());
+        }
+        work.forEach((key, item) -> shares.get(laneFor(key)).add(item));
+
+        int parts = (int) shares.stream().filter(share -> !share.isEmpty()).count();
+        Batch batch = new Batch(parts, completion);
+        synchronized (inFlight) {
+            inFlight.add(batch);
+        }
+        if (parts == 0) {
+            completeDone();
+            return;
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            List<T> share = shares.get(i);
+            if (share.isEmpty()) {
+                continue;
+            }
+            ((Worker<T>) workers[i]).submit(new Part<>(share, apply, batch));
+        }
+    }
+
+    /**
+     * Wait until every batch dispatched so far is done, e.g. before partitions are given up
+     * @return Whether they all finished within the timeout
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (inFlight) {
+            while (!inFlight.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(inFlight, remaining);
+            }
+        }
+        return true;
+    }
+
+    public List<Integer> getQueueDepths() {
+        List<Integer> depths = new ArrayList<>(workers.length);
+        for (Worker<?> worker : workers) {
+            depths.add(worker.queue.size());
+        }
+        return depths;
+    }
+
+    public int getWorkerQueueCapacity() {
+        return workerQueueCapacity;
+    }
+
+    private int laneFor(String key) {
+        return Math.floorMod(key.hashCode(), workers.length);
+    }
+
+    // Batches can finish out of order; complete those at the head, in order, under the lock so
+    // that their acknowledgments are made in order too
+    private void completeDone() {
+        synchronized (inFlight) {
+            while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+                Batch batch = inFlight.poll();
+                try {
+                    batch.completion.run();
+                } catch (RuntimeException e) {
+                    log.error("Completing a projection batch failed: {}", e.getMessage(), e);
+                }
+            }
+            inFlight.notifyAll();
+        }
+    }
+
+    // Transient failures (a lock timeout, a lost connection) are retried; a part that keeps
+    // failing is logged and given up on, as the container's error handler would, so it can't
+    // hold back every later batch
+    private <T> void applyWithRetries(Consumer<List<T>> apply, List<T> share) {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                apply.accept(share);
+                workTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    failures.increment();
+                    log.error("Giving up on {} projection updates after {} attempts: {}", share.size(), attempt, e.getMessage(), e);
+                    return;
+                }
+                log.warn("Projection update failed (attempt {} of {}), retrying: {}", attempt, maxAttempts, e.getMessage());
+                try {
+                    Thread.sleep(retryBackoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        workTimer = Timer.builder("inventory.projection.worker.apply")
+                .description("Time for one worker to apply its share of the batches it took")
+                .register(meterRegistry);
+        failures = Counter.builder("inventory.projection.worker.failures")
+                .description("Times a worker gave up on its share of the batches it took after every attempt failed")
+                .register(meterRegistry);
+        Gauge.builder("inventory.projection.batches.in.flight", inFlight, queue -> {
+                    synchronized (queue) {
+                        return queue.size();
+                    }
+                })
+                .description("Batches handed to the workers and not yet completed")
+                .register(meterRegistry);
+
+        int count = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        running = true;
+        workers = new Worker<?>[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Worker<>("projection-worker-" + i);
+        }
+        log.info("Started {} projection workers with queue capacity {}", count, workerQueueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        for (Worker<?> worker : workers) {
+            worker.thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    /**
+     * One lane: a thread applying the parts queued for it in order, as many at a time as are waiting
+     */
+    private final class Worker<T> {
+        private final BlockingQueue<Part<T>> queue = new ArrayBlockingQueue<>(workerQueueCapacity);
+        private final Thread thread;
+
+        private Worker(String name) {
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void submit(Part<T> part) {
+            try {
+                queue.put(part);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a projection worker", e);
+            }
+        }
+
+        private void run() {
+            List<Part<T>> parts = new ArrayList<>(maxBatchesPerApply);
+            // Parts still queued at shutdown are left; their batches were never acknowledged and are read again
+            while (running) {
+                try {
+                    Part<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    parts.add(first);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                queue.drainTo(parts, maxBatchesPerApply - 1);
+
+                // Runs of parts with the same function are applied together
+                for (int start = 0; start < parts.size(); ) {
+                    Consumer<List<T>> apply = parts.get(start).apply;
+                    List<T> share = new ArrayList<>();
+                    int end = start;
+                    while (end < parts.size() && parts.get(end).apply == apply) {
+                        share.addAll(parts.get(end).share);
+                        end++;
+                    }
+                    applyWithRetries(apply, share);
+                    start = end;
+                }
+
+                boolean anyDone = false;
+                for (Part<T> part : parts) {
+                    anyDone |= part.batch.partDone();
+                }
+                parts.clear();
+                if (anyDone) {
+                    completeDone();
+                }
+            }
+        }
+    }
+
+    private record Part<T>(List<T> share, Consumer<List<T>> apply, Batch batch) {
+    }
+
+    private static final class Batch {
+        private final AtomicInteger remaining;
+        private final Runnable completion;
+
+        private Batch(int parts, Runnable completion) {
+            this.remaining = new AtomicInteger(parts);
+            this.completion = completion;
+        }
+
+        /** @return Whether that was the last part */
+        private boolean partDone() {
+            return remaining.decrementAndGet() == 0;
+        }
+
+        private boolean isDone() {
+            return remaining.get() == 0;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Tells every read how stale the projection it is served from may be, measured when the
+ * request comes in
+ */
+@Component
+@RequiredArgsConstructor
+public class ProjectionLagInterceptor implements HandlerInterceptor {
+
+    static final String LAG_HEADER = "X-Projection-Lag-ms";
+
+    private final ProjectionLagTracker lagTracker;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        response.setHeader(LAG_HEADER, Long.toString(lagTracker.lagMillis()));
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How far the projection is behind the event topics, per partition it reads. The listener
+ * reports each applied event's offset and commit time, and the partition's end offset as of the
+ * consumer's last fetch; the difference is the lag in events. The lag in milliseconds is the age
+ * of the last applied event when the partition is behind (an upper bound on how stale a read
+ * can be) and 0 when it has caught up.
+ */
+@Component
+@RequiredArgsConstructor
+public class ProjectionLagTracker {
+
+    // Apply rates are averaged over this many whole seconds
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<TopicPartition, PartitionProgress> partitions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerMeters() {
+        Gauge.builder("inventory.projection.behind.events", this, ProjectionLagTracker::lagEvents)
+                .description("Events produced to the partitions this instance reads but not applied yet")
+                .register(meterRegistry);
+        Gauge.builder("inventory.projection.staleness", this, tracker -> tracker.lagMillis() / 1000.0)
+                .description("Age of the last applied event on the partition furthest behind, 0 when caught up")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Partitions assigned to the listener, with the offset it will read next
+     */
+    public void assigned(Map<TopicPartition, Long> positions) {
+        positions.forEach((partition, position) ->
+                partitions.computeIfAbsent(partition, key -> new PartitionProgress(position)));
+    }
+
+    public void revoked(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+
+    /**
+     * @param offset Offset of the last event applied
+     * @param committedAt Epoch millis at which that event was committed to the event store
+     * @param endOffset The partition's end offset as of the consumer's last fetch, or -1 if unknown
+     * @param count Events applied from the partition since the last call
+     */
+    public void applied(String topic, int partition, long offset, long committedAt, long endOffset, int count) {
+        PartitionProgress progress = partitions.computeIfAbsent(new TopicPartition(topic, partition), key -> new PartitionProgress(offset));
+        progress.applied(offset, committedAt, endOffset, count, System.currentTimeMillis());
+    }
+
+    /**
+     * @return The lag in milliseconds of the partition furthest behind
+     */
+    public long lagMillis() {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (PartitionProgress progress : partitions.values()) {
+            lag = Math.max(lag, progress.lagMillis(now));
+        }
+        return lag;
+    }
+
+    public long lagEvents() {
+        long lag = 0;
+        for (PartitionProgress progress : partitions.values()) {
+            lag += progress.lagEvents();
+        }
+        return lag;
+    }
+
+    public Map<String, Object> getStatus() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> perPartition = new ArrayList<>();
+        long lagEvents = 0;
+        long lagMillis = 0;
+        double applyRate = 0;
+        List<Map.Entry<TopicPartition, PartitionProgress>> entries = new ArrayList<>(partitions.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<TopicPartition, PartitionProgress> entry) -> entry.getKey().topic())
+                .thenComparingInt(entry -> entry.getKey().partition()));
+        for (Map.Entry<TopicPartition, PartitionProgress> entry : entries) {
+            PartitionProgress progress = entry.getValue();
+            double rate = progress.applyRate(now);
+            lagEvents += progress.lagEvents();
+            lagMillis = Math.max(lagMillis, progress.lagMillis(now));
+            applyRate += rate;
+
+            Map<String, Object> partition = new LinkedHashMap<>();
+            partition.put("topic", entry.getKey().topic());
+            partition.put("partition", entry.getKey().partition());
+            partition.put("appliedOffset", progress.appliedOffset);
+            partition.put("endOffset", progress.endOffset);
+            partition.put("lagEvents", progress.lagEvents());
+            partition.put("lagMs", progress.lagMillis(now));
+            partition.put("lastEventCommittedAt", progress.committedAt > 0 ? Instant.ofEpochMilli(progress.committedAt).toString() : null);
+            partition.put("lastAppliedAt", progress.appliedAt > 0 ? Instant.ofEpochMilli(progress.appliedAt).toString() : null);
+            partition.put("applied", progress.appliedCount);
+            partition.put("applyRatePerSecond", rate);
+            perPartition.add(partition);
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", perPartition.isEmpty() ? "STARTING" : "UP");
+        status.put("lagEvents", lagEvents);
+        status.put("lagMs", lagMillis);
+        status.put("applyRatePerSecond", applyRate);
+        status.put("rateWindowSeconds", RATE_WINDOW_SECONDS);
+        status.put("partitions", perPartition);
+        status.put("timestamp", Instant.ofEpochMilli(now).toString());
+        return status;
+    }
+
+    /**
+     * One partition's progress. Written by one projection worker at a time, as batches complete
+     * in order, read by any request thread.
+     */
+    private static final class PartitionProgress {
+        // Offset of the last applied event; one less than the position for a partition not read from yet
+        private volatile long appliedOffset;
+        private volatile long endOffset = -1;
+        private volatile long committedAt;
+        private volatile long appliedAt;
+        private volatile long appliedCount;
+        // Events applied in each of the last seconds, indexed by epoch second modulo the ring size
+        private final long[] seconds = new long[RATE_WINDOW_SECONDS + 1];
+        private final long[] counts = new long[RATE_WINDOW_SECONDS + 1];
+
+        private PartitionProgress(long position) {
+            this.appliedOffset = position - 1;
+        }
+
+        private synchronized void applied(long offset, long committedAt, long endOffset, int count, long now) {
+            this.committedAt = committedAt;
+            this.appliedAt = now;
+            this.endOffset = Math.max(endOffset, offset + 1);
+            this.appliedOffset = offset;
+            this.appliedCount += count;
+
+            long second = now / 1000;
+            int slot = (int) (second % seconds.length);
+            if (seconds[slot] != second) {
+                seconds[slot] = second;
+                counts[slot] = 0;
+            }
+            counts[slot] += count;
+        }
+
+        private long lagEvents() {
+            long end = endOffset;
+            return end < 0 ? 0 : Math.max(0, end - appliedOffset - 1);
+        }
+
+        private long lagMillis(long now) {
+            return lagEvents() == 0 || committedAt == 0 ? 0 : Math.max(0, now - committedAt);
+        }
+
+        // Over the last whole seconds, leaving out the one in progress
+        private synchronized double applyRate(long now) {
+            long current = now / 1000;
+            long total = 0;
+            for (int i = 0; i < seconds.length; i++) {
+                if (seconds[i] < current && seconds[i] >= current - RATE_WINDOW_SECONDS) {
+                    total += counts[i];
+                }
+            }
+            return (double) total / RATE_WINDOW_SECONDS;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets the projection workers finish what was handed to them before partitions move, so that
+ * their acknowledgments are among the ones the container commits on revocation. The container
+ * commits pending acknowledgments after this callback and before the listener's own
+ * {@code onPartitionsRevoked}, which would be too late to wait in. Anything acknowledged after
+ * the wait times out is read again by the new owner, which is harmless as applying an event
+ * twice leaves the view the same.
+ * <p>
+ * Boot sets the one bean of this type on the listener container factory.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProjectionRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private final ProjectionDispatcher dispatcher;
+
+    @Value("${inventory.projection.revoke-timeout-ms:30000}")
+    private long revokeTimeoutMs;
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        try {
+            if (!dispatcher.awaitCompletion(revokeTimeoutMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Projection workers still busy while giving up partitions {}", partitions);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -29,6 +29,12 @@ public class SimpleEventStore implements EventStore {
         return new ArrayList<>();
     }
     
+    @Override
+    public List<BaseEvent> getEvents(String aggregateId, int fromVersion) {
+        // Return empty list for demo purposes
+        return new ArrayList<>();
+    }
+    
     @Override
     public List<String> getAggregateIds() {
         return new ArrayList<>(eventStore.keySet());
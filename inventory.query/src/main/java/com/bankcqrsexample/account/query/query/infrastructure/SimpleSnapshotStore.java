@@ -0,0 +1,22 @@
+package com.bankcqrsexample.account.query.query.infrastructure;
+
+import com.distributedinventory.cqrs.core.domain.AggregateSnapshot;
+import com.distributedinventory.cqrs.core.infrastructure.SnapshotStore;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+@Service
+public class SimpleSnapshotStore implements SnapshotStore {
+    
+    @Override
+    public void saveSnapshot(AggregateSnapshot snapshot) {
+        // This is a read-only service, so we don't implement saving
+        throw new UnsupportedOperationException("Query service is read-only");
+    }
+    
+    @Override
+    public Optional<AggregateSnapshot> getLatestSnapshot(String aggregateId) {
+        return Optional.empty();
+    }
+}